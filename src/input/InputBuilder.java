@@ -31,7 +31,13 @@ public class InputBuilder {
 		OUTPUT_MODE,
 		OWNER_DESIRES,
 		OWNER_USER_PREFERENCE,
-		CONSTRAINTS;
+		CONSTRAINTS,
+		SOLVE_MODE,
+		SOLVER_BACKEND, //name of the solver.SolverBackend to use, AUTO by default
+		MODEL_EXPORT, //writes the model of each solve, see ModelExport
+		MODEL_FORMULATION, //see ModelFormulation, INSTANCE by default
+		SYMMETRY_BREAKING, //true for ordering the copies of each resource type, false by default
+		TIME_BUDGET; //wall-clock budget in seconds of SOLVE_MODE:LNS, 60 by default
 		
 
 		public static String toLatexString(ParameterTypes pt) {
@@ -1,104 +1,75 @@
 package input;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.IllegalFormatException;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
 import input.InputBuilder.ParameterTypes;
 import model.ResourceType;
 import model.ResourceOwner;
+import model.Symbols;
 import model.User;
 import model.UserResourceTypeAllocation;
 import model.UserGroup;
 
 public class InputParser {
 
-	public static Map<UserResourceTypeAllocation, Double> parseUserPreference(String file) {
+	/**
+	 * Reads the preference file once, line by line, and extracts both the 
+	 * preferences of users and the user groups.
+	 * Lines are tokenized in place (no intermediate arrays) and users, resources 
+	 * and groups are interned in a new symbol table, so that the memory consumed 
+	 * stays proportional to the result rather than to the file.
+	 * 
+	 * Line format: RESOURCE_TYPE;USER(;USER)*;VALUE
+	 * @param file
+	 * @return
+	 */
+	public static ParsedPreferences parsePreferenceFile(String file) {
 		Map<UserResourceTypeAllocation, Double>absoluteValuePerAllocation = new HashMap<>();
-		try {
-			for(String s: Files.readAllLines(Paths.get(file)))
+		Map<User, UserGroup> groupsPerUsers = new HashMap<>();
+		Symbols symbols = Symbols.newInstance();
+		
+		try(BufferedReader reader = Files.newBufferedReader(Paths.get(file)))
+		{
+			for(String s = reader.readLine(); s != null; s = reader.readLine())
 			{
-				String[] split = s.split(";");
-				
-				List<String> userNames = new ArrayList<>();
-				userNames.addAll(Arrays.asList(split));
-				userNames.remove(0);
-				userNames.remove(userNames.size()-1);
+				if(s.isEmpty()) continue;
 				
-				UserGroup usergroup = 
-						UserGroup.newInstance(
-						userNames
-						.stream()
-						.map(x-> User.newInstance(x))
-						.collect(Collectors.toSet()));
-	
-				Double associatedValue = 
-						Double.parseDouble(split[split.length-1]);
+				int firstSeparator = s.indexOf(';');
+				int lastSeparator = s.lastIndexOf(';');
+				if(firstSeparator < 0 || firstSeparator == lastSeparator)
+					throw new IllegalArgumentException("Each line should be formatted as "
+							+ "RESOURCE_TYPE;USERS;PREFERENCE, but the following line is not:"+s);
 				
+				ResourceType resource = symbols.getResourceType(s.substring(0, firstSeparator));
 				
-				for(User u: usergroup.getUsers())
+				Set<User> users = new HashSet<>();
+				for(int begin = firstSeparator + 1; begin <= lastSeparator;)
 				{
-					UserResourceTypeAllocation ua = UserResourceTypeAllocation.newInstance(u, 
-							ResourceType.newInstance(split[0]));
-	
-					if(absoluteValuePerAllocation.containsKey(ua))
-						throw new IllegalArgumentException(
-								"Each allocation should be associated a score once, but "
-										+ "the allocation:"+ua+" is assigned a score at least twice!");
-					absoluteValuePerAllocation.put(ua,associatedValue);
+					int end = s.indexOf(';', begin);
+					users.add(symbols.getUser(s.substring(begin, end)));
+					begin = end + 1;
 				}
-			}
-		} catch (IOException e) {
-			e.printStackTrace();
-			throw new Error();
-		}
-		
-		return absoluteValuePerAllocation;
-	}
-
-	public static Set<UserGroup> parseUserGroups(String file) {
-		Map<User, UserGroup> groupsPerUsers = new HashMap<>();
-
-		Map<UserResourceTypeAllocation, Double>absoluteValuePerAllocation = new HashMap<>();
-		try {
-			for(String s: Files.readAllLines(Paths.get(file)))
-			{
-				String[] split = s.split(";");
 				
-				List<String> userNames = new ArrayList<>();
-				userNames.addAll(Arrays.asList(split));
-				userNames.remove(0);
-				userNames.remove(userNames.size()-1);
-				
-				UserGroup usergroup = 
-						UserGroup.newInstance(
-						userNames
-						.stream()
-						.map(x-> User.newInstance(x))
-						.collect(Collectors.toSet()));
+				UserGroup usergroup = symbols.getUserGroup(users);
 				checkForInconsistencies(groupsPerUsers, usergroup);
-				
 				for(User u: usergroup.getUsers())
 					groupsPerUsers.put(u, usergroup);
 	
 				Double associatedValue = 
-						Double.parseDouble(split[split.length-1]);
-				
+						Double.parseDouble(s.substring(lastSeparator + 1));
 				
 				for(User u: usergroup.getUsers())
 				{
 					UserResourceTypeAllocation ua = UserResourceTypeAllocation.newInstance(u, 
-							ResourceType.newInstance(split[0]));
+							resource);
 	
 					if(absoluteValuePerAllocation.containsKey(ua))
 						throw new IllegalArgumentException(
@@ -112,7 +83,10 @@ public class InputParser {
 			throw new Error();
 		}
 		
-		return groupsPerUsers.values().stream().collect(Collectors.toSet());
+		return ParsedPreferences.newInstance(
+				absoluteValuePerAllocation,
+				new HashSet<>(groupsPerUsers.values()),
+				symbols);
 	}
 	
 	private static void checkForInconsistencies(
@@ -138,9 +112,18 @@ public class InputParser {
 			
 	}
 
-	public static Function<ResourceType, ResourceOwner> parseProviderPerResource(String input) {
+	/**
+	 * @param input
+	 * @param symbols the symbols of the instance, see parsePreferenceFile
+	 * @return
+	 */
+	public static Function<ResourceType, ResourceOwner> parseProviderPerResource(String input,
+			Symbols symbols) {
 		if(input.equals(ResourceOwnershipMode.Enum.DISABLED.toString()))
-			return x->ResourceOwner.newInstance("everybody");
+		{
+			ResourceOwner everybody = symbols.getResourceOwner("everybody");
+			return x->everybody;
+		}
 			
 		if(input.startsWith(ResourceOwnershipMode.Enum.FILE_BASED.toString()))
 		{
@@ -153,11 +136,11 @@ public class InputParser {
 				for(String s: Files.readAllLines(Paths.get(fileName)))
 				{
 					String[] split = s.split(";");
-					ResourceOwner rp = ResourceOwner.newInstance(split[ownerCol]);
+					ResourceOwner rp = symbols.getResourceOwner(split[ownerCol]);
 					for(int i = 1 ; i < split.length; i++)
 						if(i!=ownerCol)
 						providerPerResource.put(
-								ResourceType.newInstance(split[i]),rp);
+								symbols.getResourceType(split[i]),rp);
 				}
 			} catch (IOException e) {
 				e.printStackTrace();
@@ -173,7 +156,13 @@ public class InputParser {
 	}
 
 
-	public static Function<ResourceType, Integer> parseAmountPerResource(String value) {
+	/**
+	 * @param value
+	 * @param symbols the symbols of the instance, see parsePreferenceFile
+	 * @return
+	 */
+	public static Function<ResourceType, Integer> parseAmountPerResource(String value,
+			Symbols symbols) {
 
 		if(value.equals("ONE_OF_EACH"))
 			return x->1;
@@ -204,7 +193,7 @@ public class InputParser {
 							throw new Error();
 							
 						}
-						res.put(ResourceType.newInstance(split[resourceNameColumn]), 
+						res.put(symbols.getResourceType(split[resourceNameColumn]), 
 								Integer.parseInt(resourceNumberS));
 					}
 				} catch (IOException e) {
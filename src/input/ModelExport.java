@@ -0,0 +1,10 @@
+package input;
+
+public enum ModelExport {
+	NONE,//no export (default)
+	SUMMARY,//row and column counts, non-zeros and coefficient ranges of each solved model
+	LP,
+	LP_GZIP,
+	MPS,
+	MPS_GZIP
+}
@@ -0,0 +1,6 @@
+package input;
+
+public enum ModelFormulation {
+	INSTANCE,//one column per user and resource instance (default)
+	TYPE//one column per user and resource type, plus the number of opened instances of each type
+}
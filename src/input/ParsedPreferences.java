@@ -0,0 +1,52 @@
+package input;
+
+import java.util.Map;
+import java.util.Set;
+
+import model.Symbols;
+import model.UserGroup;
+import model.UserResourceTypeAllocation;
+
+/**
+ * Everything that is extracted from the preference file in a single pass:
+ * the score of each user for each resource type and the groups of users,
+ * together with the symbols interned while parsing, which the other files
+ * of the same instance are to be parsed with.
+ */
+public class ParsedPreferences {
+
+	private final Map<UserResourceTypeAllocation, Double> preferences;
+	private final Set<UserGroup> userGroups;
+	private final Symbols symbols;
+
+	private ParsedPreferences(Map<UserResourceTypeAllocation, Double> preferences,
+			Set<UserGroup> userGroups, Symbols symbols) {
+		this.preferences = preferences;
+		this.userGroups = userGroups;
+		this.symbols = symbols;
+	}
+
+	public static ParsedPreferences newInstance(
+			Map<UserResourceTypeAllocation, Double> preferences,
+			Set<UserGroup> userGroups, Symbols symbols) {
+		return new ParsedPreferences(preferences, userGroups, symbols);
+	}
+
+	public Map<UserResourceTypeAllocation, Double> getPreferences() {
+		return preferences;
+	}
+
+	public Set<UserGroup> getUserGroups() {
+		return userGroups;
+	}
+
+	public Symbols getSymbols() {
+		return symbols;
+	}
+
+	public String toString()
+	{
+		return userGroups.size()+" groups, "+preferences.size()+" preferences";
+	}
+
+}
@@ -4,6 +4,7 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -11,6 +12,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BinaryOperator;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -20,9 +22,14 @@ import input.InputBuilder.ParameterTypes;
 import main.Main;
 import model.ResourceType;
 import model.ResourceOwner;
+import model.Symbols;
 import model.User;
 import model.UserResourceTypeAllocation;
+import solver.FeasibilityOracle;
+import solver.InfeasibilityCertificate;
+import solver.InsatisfactionBounds;
 import solver.ResourceInstance;
+import solver.SolverBackends;
 import solver.UserResourceInstanceAllocation;
 import model.UserGroup;
 
@@ -32,14 +39,46 @@ public class ProblemInstance {
 	
 	private final int minNbUsersPerResource;
 	private final int maxNbUsersPerResource;
-	private final Map<UserResourceInstanceAllocation, Integer> relativePrefPerResourceAllocation;
+	private final Symbols symbols;
+	private final RankTable ranks;
 	private final Set<UserGroup> userGroups;
 	private final Function<ResourceType, ResourceOwner> providerPerResource;	
 	private final Function<ResourceType, Integer> amountOfInstancesPerResourceType;
 	private final OwnerDesire od;
 	private final OutputType ot;
+	private final SolveMode sm;
+	private final String solverBackend;
+	private final ModelExport me;
+	private final ModelFormulation mf;
+	private final boolean isBreakingSymmetries;
+	private final int timeBudget;
+	
+	/*
+	 * Derived views, computed once at construction and never modified afterwards,
+	 * so that a single instance can be shared by concurrent solvers and printers.
+	 */
+	private final Set<User> users;
+	private final Set<ResourceType> resourceTypes;
+	private final Set<ResourceOwner> resourceOwners;
+	private final Map<User, UserGroup> groupPerUser;
+	private final List<ResourceInstance> resourceInstances;
+	private final Map<ResourceType, List<ResourceInstance>> instancesPerResourceType;
+	private final Map<ResourceOwner, Set<ResourceType>> resourceTypesPerOwner;
+	private final Map<ResourceOwner, Set<ResourceInstance>> instancesPerOwner;
+	private final Map<UserResourceTypeAllocation, Integer> allocationsPerResourceType;
+	private final Map<UserResourceInstanceAllocation, Integer> allocationsPerResourceInstance;
+	
+	/*
+	 * Indexes of the allocations per resource instance and per user, built on first 
+	 * request (they grow with users x resource instances) and shared afterwards
+	 */
+	private final Map<ResourceInstance, Set<UserResourceInstanceAllocation>> allocationsPerResource =
+			new ConcurrentHashMap<>();
+	private final Map<User, Set<UserResourceInstanceAllocation>> allocationsPerUser =
+			new ConcurrentHashMap<>();
 		
 	private ProblemInstance(
+			Symbols symbols,
 			Map<UserResourceTypeAllocation, Double> baseValues,
 			int numberOfUsersPerResource,
 			int maxNbUsersPerResource,
@@ -48,59 +87,103 @@ public class ProblemInstance {
 			Function<ResourceType, Integer> amountPerResource,
 			UserPreferenceMeaning upm,
 			OutputType ot,
-			OwnerDesire od
+			OwnerDesire od,
+			SolveMode sm,
+			String solverBackend,
+			ModelExport me,
+			ModelFormulation mf,
+			boolean isBreakingSymmetries,
+			int timeBudget
 			) {
+		this.symbols = symbols;
 		this.od = od;
+		this.sm = sm;
+		this.solverBackend = solverBackend;
+		this.me = me;
+		this.mf = mf;
+		this.isBreakingSymmetries = isBreakingSymmetries;
+		this.timeBudget = timeBudget;
 		this.ot = ot;
 		this.amountOfInstancesPerResourceType = amountPerResource;
 		this.minNbUsersPerResource = numberOfUsersPerResource;
 		this.maxNbUsersPerResource = maxNbUsersPerResource;
-		 relativePrefPerResourceAllocation = 
-					toRelativePreferences(baseValues,upm, amountPerResource);
-		 this.userGroups = userGroups;
+		 ranks = 
+					toRelativePreferences(baseValues,upm, amountPerResource, symbols.getNbUsers());
+		 this.userGroups = Collections.unmodifiableSet(new HashSet<>(userGroups));
 		 this.providerPerResource = providerPerResource;
 		 
-		 check();
+		 users = Collections.unmodifiableSet(new HashSet<>(ranks.getUsers()));
+		 resourceTypes = Collections.unmodifiableSet(new HashSet<>(ranks.getResourceTypes()));
+		 
+		 Map<User, UserGroup> groupPerUser = new HashMap<>();
+		 for(UserGroup ug: userGroups)
+			 for(User u: ug.getUsers())
+				 groupPerUser.put(u, ug);
+		 this.groupPerUser = Collections.unmodifiableMap(groupPerUser);
+		 
+		 Map<ResourceType, List<ResourceInstance>> instancesPerResourceType = new HashMap<>();
+		 Map<ResourceOwner, Set<ResourceType>> resourceTypesPerOwner = new HashMap<>();
+		 Map<ResourceOwner, Set<ResourceInstance>> instancesPerOwner = new HashMap<>();
+		 List<ResourceInstance> allInstances = new ArrayList<>();
+		 for(ResourceType rt: ranks.getResourceTypes())
+		 {
+			 List<ResourceInstance> instances = new ArrayList<>();
+			 for(int i = 0 ; i < ranks.getAmountOf(rt); i++)
+				 instances.add(ResourceInstance.newInstance(rt, i));
+			 instancesPerResourceType.put(rt, Collections.unmodifiableList(instances));
+			 allInstances.addAll(instances);
+			 
+			 ResourceOwner owner = getOwner(rt);
+			 resourceTypesPerOwner.computeIfAbsent(owner, x->new HashSet<>()).add(rt);
+			 instancesPerOwner.computeIfAbsent(owner, x->new HashSet<>()).addAll(instances);
+		 }
+		 resourceTypesPerOwner.replaceAll((x,y)->Collections.unmodifiableSet(y));
+		 instancesPerOwner.replaceAll((x,y)->Collections.unmodifiableSet(y));
+		 this.instancesPerResourceType = Collections.unmodifiableMap(instancesPerResourceType);
+		 this.resourceTypesPerOwner = Collections.unmodifiableMap(resourceTypesPerOwner);
+		 this.instancesPerOwner = Collections.unmodifiableMap(instancesPerOwner);
+		 this.resourceOwners = this.resourceTypesPerOwner.keySet();
+		 this.resourceInstances = Collections.unmodifiableList(allInstances);
+		 
+		 allocationsPerResourceType = ranks.asTypeAllocationMap();
+		 allocationsPerResourceInstance = ranks.asInstanceAllocationMap();
+		 
+		 checkCoherenceOf(this);
 
 	}
 	
-	private void check() {
-		if(getNbAllocableSlots() < getAllUsers().size())
-			throw new Error("Not enough slots for satisfying all users. Available slots:"+getNbAllocableSlots()+
-					"Nb Users:"+getAllUsers());
-	}
-	
 	public int getAmountOf(ResourceType r)
 	{
+		if(instancesPerResourceType.containsKey(r))
+			return instancesPerResourceType.get(r).size();
 		return amountOfInstancesPerResourceType.apply(r);
 	}
 
-	private int getNbAllocableSlots() {
-		return getResourceTypes()
-				.stream()
-				.map(x->getAmountOf(x))
-				.reduce(0, (x,y)->x+y)
-				*
-				getMaxNbUsersPerResource();
-	}
-
+	/**
+	 * @param symbols the table the users, resource types, owners and groups 
+	 * given below were interned in
+	 */
 	public static ProblemInstance newInstance
 	(
+			Symbols symbols,
 			Map<UserResourceTypeAllocation, Double> baseValues,
 			int numberOfUsersPerResource,
 			int maxNbUsersPerResource,
 			Set<UserGroup> groups, 
 			Function<ResourceType, ResourceOwner> providerPerResource,
 			Function<ResourceType, Integer> amountPerResource,
-			UserPreferenceMeaning upm, OutputType ot, OwnerDesire od)
+			UserPreferenceMeaning upm, OutputType ot, OwnerDesire od, SolveMode sm,
+			String solverBackend, ModelExport me, ModelFormulation mf, boolean isBreakingSymmetries,
+			int timeBudget)
 	{
 		return new ProblemInstance(
+				symbols,
 				baseValues,
 				numberOfUsersPerResource,
 				maxNbUsersPerResource, 
 				groups,
 				providerPerResource, amountPerResource, upm,
-				ot, od);
+				ot, od, sm, solverBackend, me, mf, isBreakingSymmetries, timeBudget);
 	}
 	
 	public int getMaxNbUsersPerResource() {
@@ -110,181 +193,217 @@ public class ProblemInstance {
 		return minNbUsersPerResource;
 	}
 	public Set<ResourceType> getResourceTypes() {
-		return 
-				relativePrefPerResourceAllocation.keySet()
-				.stream()
-				.map(x->x.getResource().getResourceType())
-				.collect(Collectors.toSet());
+		return resourceTypes;
 	}
 	
-	
-	private Map<UserResourceTypeAllocation, Integer> cache=null;
 	public Map<UserResourceTypeAllocation, Integer> getAllocationsPerResourceType() {
-		/*BinaryOperator<Integer> bo = new BinaryOperator<Integer>() {
-			@Override
-			public Integer apply(Integer arg0, Integer arg1) {
-				assert(arg0 == arg1);return arg0;
-			}
-		};*/
-		
-		if(cache==null)
-			cache = relativePrefPerResourceAllocation.keySet()
-				.stream()
-				.collect(
-						Collectors.toMap
-						(
-								x->UserResourceTypeAllocation.newInstance(x),
-								x->relativePrefPerResourceAllocation.get(x),
-								(x,y)->{assert(x.equals(y));return x;})
-						);
-		return cache;
+		return allocationsPerResourceType;
 	}
 	
 	public Set<User> getAllUsers() {
-		return relativePrefPerResourceAllocation.keySet()
-				.stream()
-				.map(x->x.getUser())
-				.collect(Collectors.toSet());
+		return users;
 	}
 	
-	private static Map<UserResourceInstanceAllocation,Integer> 
+	/**
+	 * Turns the raw scores into ranks.
+	 * Scores are first grouped per user in a single pass, then each user is
+	 * ranked independently (and in parallel) by sorting primitive arrays.
+	 */
+	private static RankTable 
 	toRelativePreferences(
 			Map<UserResourceTypeAllocation, Double> baseValues,
 			UserPreferenceMeaning pt,
-			Function<ResourceType, Integer> resourceInstancePerResourceType
+			Function<ResourceType, Integer> resourceInstancePerResourceType,
+			int nbUsers
 			)
 	{
-		Set<User> requesters = 
-				baseValues
-				.keySet()
-				.stream()
-				.map(x->x.getUser())
-				.collect(Collectors.toSet());
-		
-		Set<ResourceType> resources = 
-				baseValues.keySet()
-				.stream()
-				.map(x->x.getResource())
-				.collect(Collectors.toSet());
+		switch(pt)
+		{
+		case PERSONAL_INSATISFACTION: break;
+		case COMPARATIVE_INSATISFACTION:throw new Error();
+		}
 		
-		Map<UserResourceInstanceAllocation, Integer> res = new HashMap<>();
+		Set<User> requesters = new HashSet<>();
+		Set<ResourceType> resources = new HashSet<>();
+		int[] nbPreferencesPerUser = new int[nbUsers];
+		for(UserResourceTypeAllocation ua: baseValues.keySet())
+		{
+			requesters.add(ua.getUser());
+			resources.add(ua.getResource());
+			nbPreferencesPerUser[ua.getUser().getId()]++;
+		}
 		
-		for(User s: requesters)
+		//group by user: the preferences of user u lie in [firstPreference[u], firstPreference[u+1])
+		int[] firstPreference = new int[nbPreferencesPerUser.length + 1];
+		for(int u = 0 ; u < nbPreferencesPerUser.length; u++)
+			firstPreference[u + 1] = firstPreference[u] + nbPreferencesPerUser[u];
+		int[] nbFilledPerUser = new int[nbPreferencesPerUser.length];
+		int[] resourcePerPreference = new int[baseValues.size()];
+		double[] valuePerPreference = new double[baseValues.size()];
+		for(Map.Entry<UserResourceTypeAllocation, Double> e: baseValues.entrySet())
 		{
-			Map<ResourceType, Integer> orderedPreferences =
-					getOrderedPreferencesFor(s, baseValues, resources, pt);
-			
-			for(ResourceType rt: resources)
-				for(ResourceInstance ri: ResourceInstance.newInstancesFrom(rt, 
-						resourceInstancePerResourceType.apply(rt)))
-					res.put(UserResourceInstanceAllocation.newInstance(s, ri), 
-							orderedPreferences.get(rt));
-
+			int u = e.getKey().getUser().getId();
+			int preference = firstPreference[u] + nbFilledPerUser[u]++;
+			resourcePerPreference[preference] = e.getKey().getResource().getId();
+			valuePerPreference[preference] = e.getValue();
 		}
+		
+		RankTable res = RankTable.newInstance(requesters, resources, 
+				resourceInstancePerResourceType);
+		
+		int nbResources = resources.size();
+		res.getUsers().parallelStream().forEach(u->
+				setOrderedPreferencesFor(u, 
+						resourcePerPreference, valuePerPreference,
+						firstPreference[u.getId()], firstPreference[u.getId() + 1],
+						nbResources, res));
+		res.buildIndex();
 		return res;
 	}
 	
-	private static Map<ResourceType, Integer> getOrderedPreferencesFor(
+	/**
+	 * Sets the ranks of s in res, given the preferences of s that lie in [from, to).
+	 * Only the resource types s mentioned are ranked individually, all the other 
+	 * ones share the same rank.
+	 * 
+	 * A resource type is ranked after all the ones that are strictly preferred
+	 * (i.e. ties share the same rank and are followed by a gap), 
+	 * positive resource types first, then unmentioned ones, then negative ones. 
+	 */
+	private static void setOrderedPreferencesFor(
 			User s,
-			Map<UserResourceTypeAllocation, Double> baseValues, 
-			Set<ResourceType> resources,
-			UserPreferenceMeaning meaning) {
+			int[] resourcePerPreference,
+			double[] valuePerPreference,
+			int from, int to,
+			int nbResources,
+			RankTable res) {
 		
-		Supplier<Integer> incrementPerEachAddedResourceType= null;
-		switch(meaning)
-		{
-		case PERSONAL_INSATISFACTION: incrementPerEachAddedResourceType = ()->1;break;
-		case COMPARATIVE_INSATISFACTION:throw new Error();
-		}
+		int nbPositives = 0;
+		int nbNegatives = 0;
+		for(int i = from ; i < to ; i++)
+			if(valuePerPreference[i] > 0) nbPositives++;
+			else if(valuePerPreference[i] < 0) nbNegatives++;
 		
-		Map<ResourceType, Integer> valuePerResourceType = new HashMap<>();
-			
-		//sort by decreasing order
-		Set<UserResourceTypeAllocation> sortedPositiveValues = new TreeSet<>((x, y)-> {
-			if(baseValues.get(x).equals(baseValues.get(y)))
-				return x.toString().compareTo(y.toString());
-			return -Double.compare(baseValues.get(x), 
-					baseValues.get(y));});
+		int nbMentioned = nbPositives + nbNegatives;
+		int[] mentionedResources = new int[nbMentioned];
+		double[] values = new double[nbMentioned];
+		int positive = 0;
+		int negative = nbPositives;
+		for(int i = from ; i < to ; i++)
+			if(valuePerPreference[i] > 0) 
+			{
+				mentionedResources[positive] = resourcePerPreference[i];
+				values[positive++] = valuePerPreference[i];
+			}
+			else if(valuePerPreference[i] < 0)
+			{
+				mentionedResources[negative] = resourcePerPreference[i];
+				values[negative++] = valuePerPreference[i];
+			}
 		
-		sortedPositiveValues.addAll(baseValues.keySet().stream()
-				.filter(x->x.getUser().equals(s) && baseValues.get(x)> 0)
-				.collect(Collectors.toSet()));
+		//sort by decreasing order
+		sortByDecreasingValue(mentionedResources, values, 0, nbPositives);
+		sortByDecreasingValue(mentionedResources, values, nbPositives, nbMentioned);
 		
+		int[] ranks = new int[nbMentioned];
+		for(int i = 0 ; i < nbPositives ; i++)
+			ranks[i] = (i > 0 && values[i] == values[i - 1]) ? ranks[i - 1] : i;
 		
+		//all the unmentioned resources share the same rank
+		int unmentionedRank = nbPositives;
+		int nbUnmentioned = nbResources - nbMentioned;
 		
-		Set<UserResourceTypeAllocation> sortedNegativeValues = new TreeSet<>(
-				(x, y)-> {
-					if(baseValues.get(x).equals(baseValues.get(y))) return x.toString().compareTo(y.toString());
-					return -Double.compare(baseValues.get(x), 
-							baseValues.get(y));});
-		sortedNegativeValues.addAll(baseValues.keySet().stream()
-				.filter(x->x.getUser().equals(s) && baseValues.get(x)< 0).collect(Collectors.toSet()));
-				
-		Set<ResourceType> nonAllocatedResources = new HashSet<>();
-		nonAllocatedResources.addAll(resources);
-		nonAllocatedResources.removeAll(sortedPositiveValues.stream().map(x->x.getResource()).collect(Collectors.toList()));
-		nonAllocatedResources.removeAll(sortedNegativeValues.stream().map(x->x.getResource()).collect(Collectors.toList()));
+		for(int i = nbPositives ; i < nbMentioned ; i++)
+			ranks[i] = (i > nbPositives && values[i] == values[i - 1]) ? 
+					ranks[i - 1] : i + nbUnmentioned;
 		
-		int currentClaimedInsatisfaction = 0;
-		int currentPotentialInsatisfaction = 0;
-		UserResourceTypeAllocation prev = null;
-		for(UserResourceTypeAllocation a:sortedPositiveValues)
+		res.setRanks(s, mentionedResources, ranks, nbPositives, unmentionedRank);
+	}
+	
+	/**
+	 * Sorts [from, to) by decreasing value, then by increasing resource id.
+	 * Insertion sort, as users typically mention a handful of resources,
+	 * with a merge sort for the longest lists.
+	 */
+	private static void sortByDecreasingValue(int[] resources, double[] values, int from, int to)
+	{
+		if(to - from <= 16)
 		{
-			if(prev != null && !baseValues.get(a).equals(baseValues.get(prev)))
-				currentClaimedInsatisfaction = currentPotentialInsatisfaction;
-			prev = a;
-			currentPotentialInsatisfaction+=incrementPerEachAddedResourceType.get();
-			
-			valuePerResourceType.put(a.getResource(), currentClaimedInsatisfaction);
+			for(int i = from + 1 ; i < to ; i++)
+			{
+				int resource = resources[i];
+				double value = values[i];
+				int j = i - 1;
+				for(; j >= from && isBefore(resource, value, resources[j], values[j]); j--)
+				{
+					resources[j + 1] = resources[j];
+					values[j + 1] = values[j];
+				}
+				resources[j + 1] = resource;
+				values[j + 1] = value;
+			}
+			return;
 		}
 		
-		currentClaimedInsatisfaction = currentPotentialInsatisfaction;
-		for(ResourceType allocatee:nonAllocatedResources)
-		{
-			currentPotentialInsatisfaction+=incrementPerEachAddedResourceType.get();
-			valuePerResourceType.put(allocatee, currentClaimedInsatisfaction);
-		}
-		currentClaimedInsatisfaction = currentPotentialInsatisfaction;
-		for(UserResourceTypeAllocation a:sortedNegativeValues)
-		{
-			if(prev != null && !baseValues.get(a).equals(baseValues.get(prev)))
-				currentClaimedInsatisfaction = currentPotentialInsatisfaction;
-			prev = a;
-			currentPotentialInsatisfaction+=incrementPerEachAddedResourceType.get();
-			valuePerResourceType.put(a.getResource(), currentClaimedInsatisfaction);
-		}
+		int middle = (from + to) >>> 1;
+		sortByDecreasingValue(resources, values, from, middle);
+		sortByDecreasingValue(resources, values, middle, to);
 		
-		return valuePerResourceType;
+		int[] mergedResources = new int[to - from];
+		double[] mergedValues = new double[to - from];
+		for(int i = from, j = middle, k = 0; k < mergedResources.length; k++)
+			if(j >= to || (i < middle && !isBefore(resources[j], values[j], resources[i], values[i])))
+			{
+				mergedResources[k] = resources[i];
+				mergedValues[k] = values[i++];
+			}
+			else
+			{
+				mergedResources[k] = resources[j];
+				mergedValues[k] = values[j++];
+			}
+		System.arraycopy(mergedResources, 0, resources, from, mergedResources.length);
+		System.arraycopy(mergedValues, 0, values, from, mergedValues.length);
+	}
+	
+	private static boolean isBefore(int resource1, double value1, int resource2, double value2)
+	{
+		if(value1 != value2) return value1 > value2;
+		return resource1 < resource2;
 	}
 
 	public Set<UserGroup> getUserGroups() {
 		return userGroups;
 	}
 
+	/**
+	 * @param resource
+	 * @return the allocations of resource to every user, computed once per resource
+	 */
 	public Set<UserResourceInstanceAllocation> getAllocationsForResource(ResourceInstance resource) 
 	{
-		return 
-				getAllocationsInstances().stream()
-				.filter(x->x.getResource().equals(resource))
-				.collect(Collectors.toSet());
-	}
-
-	private Set<UserResourceInstanceAllocation> getAllocationsInstances() {
-		
-		return 
-		getAllocationsPerResourceType()
-		.keySet().stream()
-		.map(x->UserResourceInstanceAllocation.newInstances(
-				x.getUser(),
-				ResourceInstance.newInstancesFrom(x.getResource(), 
-						getAmountOfInstancesFor(x.getResource()))))
-		.reduce(new HashSet<>(), (x,y)->{x.addAll(y); return x;});
+		return allocationsPerResource.computeIfAbsent(resource, r->
+				Collections.unmodifiableSet(ranks.getUsers().stream()
+						.map(x->UserResourceInstanceAllocation.newInstance(x, r))
+						.collect(Collectors.toSet())));
 	}
 	
-	
+	/**
+	 * @param resource
+	 * @param maxInsatisfaction
+	 * @return the allocations of resource of insatisfaction at most maxInsatisfaction
+	 */
+	public Set<UserResourceInstanceAllocation> getAllocationsForResource(ResourceInstance resource,
+			int maxInsatisfaction) 
+	{
+		Set<UserResourceInstanceAllocation> res = new HashSet<>();
+		ranks.forEachUserWithin(resource.getResourceType(), maxInsatisfaction, 
+				id->res.add(UserResourceInstanceAllocation.newInstance(ranks.getUser(id), resource)));
+		return res;
+	}
 
-	private int getAmountOfInstancesFor(ResourceType resource) {
-		return amountOfInstancesPerResourceType.apply(resource);
+	public List<ResourceInstance> getResourceInstancesOf(ResourceType rt) {
+		return instancesPerResourceType.get(rt);
 	}
 
 	public ResourceOwner getOwner(ResourceType r) {
@@ -295,34 +414,30 @@ public class ProblemInstance {
 
 	
 	public Set<ResourceOwner> getAllResourceOwners() {
-		return 
-				relativePrefPerResourceAllocation.keySet()
-				.stream()
-				.map(x->providerPerResource.apply(x.getResource().getResourceType()))
-				.collect(Collectors.toSet());
+		return resourceOwners;
 	}
 
 	public Set<ResourceType> getResourcesTypesFrom(ResourceOwner rp) {
-		return getResourceTypes()
-				.stream().filter(x->providerPerResource.apply(x).equals(rp))
-				.collect(Collectors.toSet());
+		return resourceTypesPerOwner.getOrDefault(rp, Collections.emptySet());
 	}
 	
 	public UserGroup getUserGroupOf(User u)
 	{
-		Set<UserGroup>groups = userGroups.stream().filter(x->x.getUsers().contains(u))
-				.collect(Collectors.toSet());
-		assert(groups.size()==1);
-		return groups.iterator().next();
+		assert(groupPerUser.containsKey(u));
+		return groupPerUser.get(u);
 	}
 
+	/**
+	 * Checks that the users can be given resources at all, whatever their insatisfaction
+	 * @param in
+	 */
 	public static void checkCoherenceOf(ProblemInstance in) {
-		if(in.getAllUsers().size() > in.getResourceTypes()
-				.size()*in.getMaxNbUsersPerResource()) 
-			throw new IllegalArgumentException("Not enough resources for satisfying all requesters. #requesters="+in.getAllUsers().size()
-			+", #allocable_resources="+in.getResourceTypes().size()*in.getMinNumUsersPerResource()+" (#resources:"
-					+in.getResourceTypes().size()+" x #userPerResource:"+in.getMaxNbUsersPerResource()+")"
-			+"\nUsers:" +in.getAllUsers()+"\nResources:"+in.getResourceTypes());
+		Optional<InfeasibilityCertificate> certificate = 
+				FeasibilityOracle.newInstance(in)
+				.getInfeasibilityCertificate(InsatisfactionBounds.getMaxRank(in));
+		if(certificate.isPresent())
+			throw new IllegalArgumentException("Not enough resources for satisfying all requesters: "
+					+certificate.get());
 	}
 
 	
@@ -339,37 +454,67 @@ public class ProblemInstance {
 	private static ProblemInstance newInstance(InputBuilder ib) {
 		if(!ib.has(ParameterTypes.PREFERENCE_FILE))
 			throw new Error("Please enter as input the preference file");
-		Map<UserResourceTypeAllocation, Double> baseValues = 
-				InputParser.parseUserPreference(
+		ParsedPreferences preferences = 
+				InputParser.parsePreferenceFile(
 						ib.get(ParameterTypes.PREFERENCE_FILE));
 		
 		int minNbUsersPerResource = Integer.parseInt(ib.get(ParameterTypes.MIN_NB_USER_PER_RESOURCE));
 		int maxNbUsersPerResource = Integer.parseInt(ib.get(ParameterTypes.MAX_NB_USER_PER_RESOURCE));
 		
-		Set<UserGroup> userGroups = InputParser.parseUserGroups(ib.get(ParameterTypes.PREFERENCE_FILE));
-		
 		Function<ResourceType, ResourceOwner> providerPerResource =
-				InputParser.parseProviderPerResource(ib.get(ParameterTypes.RESOURCE_OWNERSHIP_MODE));
+				InputParser.parseProviderPerResource(ib.get(ParameterTypes.RESOURCE_OWNERSHIP_MODE),
+						preferences.getSymbols());
 
 		Function<ResourceType,Integer> amountPerResource = 
-				InputParser.parseAmountPerResource(ib.get(ParameterTypes.RESOURCE_DUPLICATE_MODE));
+				InputParser.parseAmountPerResource(ib.get(ParameterTypes.RESOURCE_DUPLICATE_MODE),
+						preferences.getSymbols());
 		UserPreferenceMeaning upm = InputParser.parseUserPreferenceMeaning(ib.get(ParameterTypes.PREFERENCE_MEANING));
 		
 		OwnerDesire desire = OwnerDesire.NO_DESIRE;
 		if(ib.has(ParameterTypes.OWNER_DESIRES))
 			desire = OwnerDesire.valueOf(ib.get(ParameterTypes.OWNER_DESIRES));
 		
+		SolveMode mode = SolveMode.WEIGHTED;
+		if(ib.has(ParameterTypes.SOLVE_MODE))
+			mode = SolveMode.valueOf(ib.get(ParameterTypes.SOLVE_MODE));
+		
+		String solverBackend = SolverBackends.AUTO;
+		if(ib.has(ParameterTypes.SOLVER_BACKEND))
+			solverBackend = ib.get(ParameterTypes.SOLVER_BACKEND);
+		
+		ModelExport export = ModelExport.NONE;
+		if(ib.has(ParameterTypes.MODEL_EXPORT))
+			export = ModelExport.valueOf(ib.get(ParameterTypes.MODEL_EXPORT));
+		
+		ModelFormulation formulation = ModelFormulation.INSTANCE;
+		if(ib.has(ParameterTypes.MODEL_FORMULATION))
+			formulation = ModelFormulation.valueOf(ib.get(ParameterTypes.MODEL_FORMULATION));
+		
+		boolean isBreakingSymmetries = ib.has(ParameterTypes.SYMMETRY_BREAKING)
+				&& Boolean.parseBoolean(ib.get(ParameterTypes.SYMMETRY_BREAKING));
+		
+		int timeBudget = 60;
+		if(ib.has(ParameterTypes.TIME_BUDGET))
+			timeBudget = Integer.parseInt(ib.get(ParameterTypes.TIME_BUDGET));
+		
 				
 		return newInstance(
-				baseValues,
+				preferences.getSymbols(),
+				preferences.getPreferences(),
 				minNbUsersPerResource,
 				maxNbUsersPerResource, 
-				userGroups, 
+				preferences.getUserGroups(), 
 				providerPerResource, 
 				amountPerResource,
 				upm,
 				OutputType.valueOf(ib.get(ParameterTypes.OUTPUT_MODE)),
-				desire
+				desire,
+				mode,
+				solverBackend,
+				export,
+				formulation,
+				isBreakingSymmetries,
+				timeBudget
 				)
 				;
 		
@@ -377,21 +522,21 @@ public class ProblemInstance {
 
 	public Set<UserResourceInstanceAllocation> getAllocationsFilteredBy(int maxInsatisfaction)
 	{
-		return getAllocationsInstances()
-				.stream()
-				.filter(x->getInsatisfactionFor(x)<=maxInsatisfaction)
-				.collect(Collectors.toSet());
+		Set<UserResourceInstanceAllocation> res = new HashSet<>();
+		for(User u: ranks.getUsers())
+			addResourceInstanceAllocationsFor(u, maxInsatisfaction, res);
+		return res;
 	}
 
 	public int getInsatisfactionFor(UserResourceInstanceAllocation alloc) {
-		assert(relativePrefPerResourceAllocation.containsKey(alloc));
-		return relativePrefPerResourceAllocation.get(alloc);
+		assert(ranks.contains(alloc.getUser(), alloc.getResource()));
+		return ranks.getRank(alloc.getUser(), alloc.getResource().getResourceType());
 
 	}
 
 	public int getInsatisfactionFor(UserResourceTypeAllocation alloc) {
-		return getInsatisfactionFor(UserResourceInstanceAllocation.newInstance(
-				alloc.getUser(), ResourceInstance.newInstance(alloc.getResource(),0)));
+		assert(ranks.contains(alloc.getUser(), alloc.getResource()));
+		return ranks.getRank(alloc.getUser(), alloc.getResource());
 	}
 
 	public Map<UserResourceInstanceAllocation, Integer> getRelativeInsatisfactionFor(
@@ -407,22 +552,56 @@ public class ProblemInstance {
 		return new HashSet<>();
 	}
 
+	/**
+	 * @param u
+	 * @return the allocations to u of every resource instance, computed once per user
+	 */
 	public Set<UserResourceInstanceAllocation> getResouceInstanceAllocationsFor(User u) {
-		return getAllocationsInstances()
-				.stream()
-				.filter(x->x.getUser().equals(u))
-				.collect(Collectors.toSet());
+		return allocationsPerUser.computeIfAbsent(u, x->
+				Collections.unmodifiableSet(resourceInstances.stream()
+						.map(ri->UserResourceInstanceAllocation.newInstance(x, ri))
+						.collect(Collectors.toSet())));
+	}
+	
+	/**
+	 * @param u
+	 * @param maxInsatisfaction
+	 * @return the allocations to u of insatisfaction at most maxInsatisfaction
+	 */
+	public Set<UserResourceInstanceAllocation> getResouceInstanceAllocationsFor(User u, 
+			int maxInsatisfaction) {
+		Set<UserResourceInstanceAllocation> res = new HashSet<>();
+		addResourceInstanceAllocationsFor(u, maxInsatisfaction, res);
+		return res;
+	}
+	
+	private void addResourceInstanceAllocationsFor(User u, int maxInsatisfaction,
+			Set<UserResourceInstanceAllocation> res) {
+		ranks.forEachResourceTypeWithin(u, maxInsatisfaction, id->
+		{
+			for(ResourceInstance ri: instancesPerResourceType.get(ranks.getResourceType(id)))
+				res.add(UserResourceInstanceAllocation.newInstance(u, ri));
+		});
 	}
 
 	public Set<ResourceInstance> getResourceInstancesFrom(ResourceOwner rp) {
-		return getResourcesTypesFrom(rp)
-				.stream()
-				.map(x->ResourceInstance.newInstancesFrom(x, amountOfInstancesPerResourceType.apply(x)))
-				.reduce(new HashSet<ResourceInstance>(), (x,y)->{x.addAll(y); return x;});
+		return instancesPerOwner.getOrDefault(rp, Collections.emptySet());
 	}
 
 	public Map<UserResourceInstanceAllocation, Integer> getAllocationsPerResourceInstance() {
-		return relativePrefPerResourceAllocation;
+		return allocationsPerResourceInstance;
+	}
+	
+	public RankTable getRanks() {
+		return ranks;
+	}
+	
+	/**
+	 * @return the symbols of this instance, which bound the ids of its users, 
+	 * resource types, owners and groups
+	 */
+	public Symbols getSymbols() {
+		return symbols;
 	}
 
 	public ResourceOwner getOwner(ResourceInstance s) {
@@ -443,19 +622,43 @@ public class ProblemInstance {
 	public Map<ResourceOwner, Set<ResourceInstance>> getOwnershipForInstances(
 			Set<ResourceInstance> instances) {
 		
-		Set<ResourceOwner>owners = instances.stream().map(x->getOwner(x))
-		.collect(Collectors.toSet());
-		Map<ResourceOwner, Set<ResourceInstance>> res = new HashMap<ResourceOwner, Set<ResourceInstance>>();
-		for(ResourceOwner ro: owners)
-			res.put(ro, instances.stream()
-					.filter(x->getOwner(x).equals(ro)).collect(Collectors.toSet()));
-			
-		return res;
+		return instances.stream()
+				.collect(Collectors.groupingBy(x->getOwner(x), Collectors.toSet()));
 	}
 
 	public OwnerDesire getOwnerAllocationPreferences() {
 		return od;
 	}
+	
+	public SolveMode getSolveMode() {
+		return sm;
+	}
+	
+	public String getSolverBackend() {
+		return solverBackend;
+	}
+	
+	public ModelExport getModelExport() {
+		return me;
+	}
+	
+	public ModelFormulation getModelFormulation() {
+		return mf;
+	}
+	
+	/**
+	 * @return true if the copies of a resource type are to be ordered in the model
+	 */
+	public boolean isBreakingSymmetries() {
+		return isBreakingSymmetries;
+	}
+	
+	/**
+	 * @return the wall-clock budget of SOLVE_MODE:LNS, in seconds
+	 */
+	public int getTimeBudget() {
+		return timeBudget;
+	}
 
 	public boolean isMinimizingTheWorkloadOfTheMostLoaded() {
 		return false;
@@ -0,0 +1,431 @@
+package input;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import model.ResourceType;
+import model.User;
+import model.UserResourceTypeAllocation;
+import solver.ResourceInstance;
+import solver.UserResourceInstanceAllocation;
+
+/**
+ * Rank (i.e. relative insatisfaction) of each user for each resource type.
+ *
+ * Users typically mention a handful of resource types out of many, all
+ * the others sharing the same rank. Ranks are therefore stored sparsely, per user:
+ * --the mentioned resource types, positive ones first then negative ones,
+ * by increasing rank;
+ * --a single rank for all the resource types that are not mentioned
+ * (which lies between the ranks of positive and negative ones).
+ * Memory thus grows with the number of stated preferences rather than with
+ * users x resource types.
+ *
+ * The instances of a resource type are not stored: they all share the rank of their type.
+ * Map-based views are offered for code working on allocation objects.
+ */
+public class RankTable {
+
+	private static final int NO_RANK = -1;
+
+	private static class Row {
+		private final int[] resourceTypePerEntry;
+		private final int[] rankPerEntry;
+		private final int nbPositiveEntries;
+		private final int unmentionedRank;
+		private final int[] sortedResourceTypes;
+		private final int[] rankPerSortedResourceType;
+
+		private Row(int[] resourceTypePerEntry, int[] rankPerEntry,
+				int nbPositiveEntries, int unmentionedRank) {
+			this.resourceTypePerEntry = resourceTypePerEntry;
+			this.rankPerEntry = rankPerEntry;
+			this.nbPositiveEntries = nbPositiveEntries;
+			this.unmentionedRank = unmentionedRank;
+
+			Integer[] order = new Integer[resourceTypePerEntry.length];
+			for(int i = 0 ; i < order.length; i++) order[i] = i;
+			Arrays.sort(order, (x,y)->Integer.compare(
+					resourceTypePerEntry[x], resourceTypePerEntry[y]));
+			this.sortedResourceTypes = new int[order.length];
+			this.rankPerSortedResourceType = new int[order.length];
+			for(int i = 0 ; i < order.length; i++)
+			{
+				sortedResourceTypes[i] = resourceTypePerEntry[order[i]];
+				rankPerSortedResourceType[i] = rankPerEntry[order[i]];
+			}
+		}
+
+		private int getRank(int resourceTypeId)
+		{
+			int index = Arrays.binarySearch(sortedResourceTypes, resourceTypeId);
+			if(index < 0) return unmentionedRank;
+			return rankPerSortedResourceType[index];
+		}
+
+		private boolean isMentioned(int resourceTypeId)
+		{
+			return Arrays.binarySearch(sortedResourceTypes, resourceTypeId) >= 0;
+		}
+	}
+
+	private final List<User> users;
+	private final List<ResourceType> resourceTypes;
+	private final Row[] rowPerUser;
+	private final User[] userPerId;
+	private final ResourceType[] resourceTypePerId;
+	private final boolean[] isResourceType;
+	private final int[] amountPerResourceType;
+	
+	//inverted index, built once all rows are set
+	private int[][] mentioningUsersPerResourceType;
+	private int[][] mentionedRankPerResourceType;
+	private int[] usersByUnmentionedRank;
+	private int[] sortedUnmentionedRanks;
+
+	private RankTable(List<User> users, List<ResourceType> resourceTypes,
+			Function<ResourceType, Integer> amountPerResourceType) {
+		this.users = users;
+		this.resourceTypes = resourceTypes;
+		this.rowPerUser = new Row[users.stream().mapToInt(User::getId).max().orElse(-1) + 1];
+		this.userPerId = new User[rowPerUser.length];
+		for(User u: users)
+			this.userPerId[u.getId()] = u;
+		int nbColumns = resourceTypes.stream().mapToInt(ResourceType::getId).max().orElse(-1) + 1;
+		this.isResourceType = new boolean[nbColumns];
+		this.resourceTypePerId = new ResourceType[nbColumns];
+		this.amountPerResourceType = new int[nbColumns];
+		for(ResourceType rt: resourceTypes)
+		{
+			this.isResourceType[rt.getId()] = true;
+			this.resourceTypePerId[rt.getId()] = rt;
+			this.amountPerResourceType[rt.getId()] = amountPerResourceType.apply(rt);
+		}
+	}
+
+	static RankTable newInstance(Collection<User> users,
+			Collection<ResourceType> resourceTypes,
+			Function<ResourceType, Integer> amountPerResourceType) {
+		List<User> sortedUsers = new ArrayList<>(users);
+		sortedUsers.sort(Comparator.comparingInt(User::getId));
+		List<ResourceType> sortedResourceTypes = new ArrayList<>(resourceTypes);
+		sortedResourceTypes.sort(Comparator.comparingInt(ResourceType::getId));
+		return new RankTable(
+				Collections.unmodifiableList(sortedUsers),
+				Collections.unmodifiableList(sortedResourceTypes),
+				amountPerResourceType);
+	}
+
+	/**
+	 * Sets the ranks of u
+	 * @param u
+	 * @param mentionedResourceTypes the mentioned resource types, positive ones first, by increasing rank
+	 * @param ranks the rank of each mentioned resource type
+	 * @param nbPositives the number of positive resource types, which come first
+	 * @param unmentionedRank the rank of all the resource types that are not mentioned
+	 */
+	void setRanks(User u, int[] mentionedResourceTypes, int[] ranks,
+			int nbPositives, int unmentionedRank)
+	{
+		rowPerUser[u.getId()] = new Row(mentionedResourceTypes, ranks, nbPositives, unmentionedRank);
+	}
+
+	/**
+	 * Builds the inverted index (users per resource type, by increasing rank).
+	 * To be called once all the ranks are set.
+	 */
+	void buildIndex()
+	{
+		int[] nbMentionsPerResourceType = new int[isResourceType.length];
+		for(User u: users)
+			for(int rt: getRow(u).resourceTypePerEntry)
+				nbMentionsPerResourceType[rt]++;
+		
+		mentioningUsersPerResourceType = new int[isResourceType.length][];
+		mentionedRankPerResourceType = new int[isResourceType.length][];
+		for(int rt = 0 ; rt < isResourceType.length; rt++)
+		{
+			mentioningUsersPerResourceType[rt] = new int[nbMentionsPerResourceType[rt]];
+			mentionedRankPerResourceType[rt] = new int[nbMentionsPerResourceType[rt]];
+		}
+		
+		int[] nbFilledPerResourceType = new int[isResourceType.length];
+		for(User u: users)
+		{
+			Row row = getRow(u);
+			for(int entry = 0; entry < row.resourceTypePerEntry.length; entry++)
+			{
+				int rt = row.resourceTypePerEntry[entry];
+				mentioningUsersPerResourceType[rt][nbFilledPerResourceType[rt]] = u.getId();
+				mentionedRankPerResourceType[rt][nbFilledPerResourceType[rt]++] = row.rankPerEntry[entry];
+			}
+		}
+		for(int rt = 0 ; rt < isResourceType.length; rt++)
+			sortByRank(mentioningUsersPerResourceType[rt], mentionedRankPerResourceType[rt]);
+		
+		usersByUnmentionedRank = users.stream().mapToInt(User::getId).toArray();
+		sortedUnmentionedRanks = users.stream().mapToInt(u->getRow(u).unmentionedRank).toArray();
+		sortByRank(usersByUnmentionedRank, sortedUnmentionedRanks);
+	}
+	
+	private static void sortByRank(int[] userIds, int[] ranks)
+	{
+		Integer[] order = new Integer[userIds.length];
+		for(int i = 0 ; i < order.length; i++) order[i] = i;
+		Arrays.sort(order, (x,y)->Integer.compare(ranks[x], ranks[y]));
+		int[] sortedUserIds = new int[order.length];
+		int[] sortedRanks = new int[order.length];
+		for(int i = 0 ; i < order.length; i++)
+		{
+			sortedUserIds[i] = userIds[order[i]];
+			sortedRanks[i] = ranks[order[i]];
+		}
+		System.arraycopy(sortedUserIds, 0, userIds, 0, order.length);
+		System.arraycopy(sortedRanks, 0, ranks, 0, order.length);
+	}
+
+	private Row getRow(User u)
+	{
+		if(u.getId() >= rowPerUser.length) return null;
+		return rowPerUser[u.getId()];
+	}
+
+	/**
+	 * @param u
+	 * @param rt
+	 * @return the rank of rt for u, or -1 if u or rt do not belong to the table
+	 */
+	public int getRank(User u, ResourceType rt)
+	{
+		Row row = getRow(u);
+		if(row == null || !isResourceType(rt)) return NO_RANK;
+		return row.getRank(rt.getId());
+	}
+
+	/**
+	 * @param u
+	 * @return the rank shared by all the resource types u did not mention
+	 */
+	public int getUnmentionedRank(User u)
+	{
+		return getRow(u).unmentionedRank;
+	}
+
+	/**
+	 * Costs O(#mentioned resource types)
+	 * @param u
+	 * @return the worst rank u gives to a resource type
+	 */
+	public int getWorstRank(User u)
+	{
+		Row row = getRow(u);
+		int res = row.rankPerEntry.length < resourceTypes.size() ? row.unmentionedRank : 0;
+		for(int rank: row.rankPerEntry)
+			res = Integer.max(res, rank);
+		return res;
+	}
+
+	public boolean isMentioned(User u, ResourceType rt)
+	{
+		return getRow(u).isMentioned(rt.getId());
+	}
+
+	/**
+	 * Lists the resource types that u ranks at most maxRank, by increasing rank
+	 * (resource types sharing the unmentioned rank are listed by increasing id).
+	 * Costs O(#mentioned resource types), plus O(#resource types) if the
+	 * unmentioned ones are within maxRank.
+	 * @param u
+	 * @param maxRank
+	 * @param action called on the id of each listed resource type
+	 */
+	public void forEachResourceTypeWithin(User u, int maxRank, IntConsumer action)
+	{
+		Row row = getRow(u);
+		int entry = 0;
+		for(; entry < row.nbPositiveEntries && row.rankPerEntry[entry] <= maxRank; entry++)
+			action.accept(row.resourceTypePerEntry[entry]);
+
+		if(row.unmentionedRank > maxRank) return;
+
+		for(ResourceType rt: resourceTypes)
+			if(!row.isMentioned(rt.getId()))
+				action.accept(rt.getId());
+
+		for(entry = row.nbPositiveEntries;
+				entry < row.rankPerEntry.length && row.rankPerEntry[entry] <= maxRank;
+				entry++)
+			action.accept(row.resourceTypePerEntry[entry]);
+	}
+
+	/**
+	 * Lists the resource types u mentioned, positive ones first, by increasing rank
+	 * (the others have getUnmentionedRank(u)).
+	 * Costs O(#mentioned resource types).
+	 * @param u
+	 * @param action called on the id of each listed resource type
+	 */
+	public void forEachMentionedResourceType(User u, IntConsumer action)
+	{
+		for(int rt: getRow(u).resourceTypePerEntry)
+			action.accept(rt);
+	}
+
+	/**
+	 * Lists the users that rank rt at most maxRank.
+	 * Costs O(#users listed + #users that mention rt).
+	 * @param rt
+	 * @param maxRank
+	 * @param action called on the id of each listed user
+	 */
+	public void forEachUserWithin(ResourceType rt, int maxRank, IntConsumer action)
+	{
+		int[] mentioningUsers = mentioningUsersPerResourceType[rt.getId()];
+		int[] mentionedRanks = mentionedRankPerResourceType[rt.getId()];
+		for(int i = 0 ; i < mentioningUsers.length && mentionedRanks[i] <= maxRank; i++)
+			action.accept(mentioningUsers[i]);
+		
+		for(int i = 0 ; i < usersByUnmentionedRank.length && sortedUnmentionedRanks[i] <= maxRank; i++)
+			if(!rowPerUser[usersByUnmentionedRank[i]].isMentioned(rt.getId()))
+				action.accept(usersByUnmentionedRank[i]);
+	}
+
+	public boolean contains(User u, ResourceType rt)
+	{
+		return getRank(u, rt) != NO_RANK;
+	}
+
+	public boolean contains(User u, ResourceInstance ri)
+	{
+		return contains(u, ri.getResourceType())
+				&& ri.getInstanceNumber() < amountPerResourceType[ri.getResourceType().getId()];
+	}
+
+	private boolean isResourceType(ResourceType rt)
+	{
+		return rt.getId() < isResourceType.length && isResourceType[rt.getId()];
+	}
+
+	public int getAmountOf(ResourceType rt)
+	{
+		return amountPerResourceType[rt.getId()];
+	}
+
+	public User getUser(int id)
+	{
+		return userPerId[id];
+	}
+
+	public ResourceType getResourceType(int id)
+	{
+		return resourceTypePerId[id];
+	}
+
+	public List<User> getUsers() {
+		return users;
+	}
+
+	public List<ResourceType> getResourceTypes() {
+		return resourceTypes;
+	}
+
+	/**
+	 * @return a read-only view of the table, with one entry per user and resource instance
+	 */
+	public Map<UserResourceInstanceAllocation, Integer> asInstanceAllocationMap()
+	{
+		return new AbstractMap<UserResourceInstanceAllocation, Integer>() {
+
+			public Integer get(Object o)
+			{
+				if(!containsKey(o)) return null;
+				UserResourceInstanceAllocation ua = (UserResourceInstanceAllocation)o;
+				return getRank(ua.getUser(), ua.getResource().getResourceType());
+			}
+
+			public boolean containsKey(Object o)
+			{
+				if(!(o instanceof UserResourceInstanceAllocation)) return false;
+				UserResourceInstanceAllocation ua = (UserResourceInstanceAllocation)o;
+				return contains(ua.getUser(), ua.getResource());
+			}
+
+			public Set<Entry<UserResourceInstanceAllocation, Integer>> entrySet() {
+				return new AbstractSet<Entry<UserResourceInstanceAllocation,Integer>>() {
+					public Iterator<Entry<UserResourceInstanceAllocation, Integer>> iterator() {
+						return users.stream()
+								.flatMap(u->resourceTypes.stream()
+										.flatMap(rt->IntStream.range(0, getAmountOf(rt))
+												.mapToObj(i->
+												(Entry<UserResourceInstanceAllocation, Integer>)
+												new SimpleImmutableEntry<>(
+														UserResourceInstanceAllocation.newInstance(u,
+																ResourceInstance.newInstance(rt, i)),
+														getRank(u, rt)))))
+								.iterator();
+					}
+
+					public int size() {
+						return users.size() *
+								resourceTypes.stream().mapToInt(rt->getAmountOf(rt)).sum();
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * @return a read-only view of the table, with one entry per user and resource type
+	 */
+	public Map<UserResourceTypeAllocation, Integer> asTypeAllocationMap()
+	{
+		return new AbstractMap<UserResourceTypeAllocation, Integer>() {
+
+			public Integer get(Object o)
+			{
+				if(!containsKey(o)) return null;
+				UserResourceTypeAllocation ua = (UserResourceTypeAllocation)o;
+				return getRank(ua.getUser(), ua.getResource());
+			}
+
+			public boolean containsKey(Object o)
+			{
+				if(!(o instanceof UserResourceTypeAllocation)) return false;
+				UserResourceTypeAllocation ua = (UserResourceTypeAllocation)o;
+				return contains(ua.getUser(), ua.getResource());
+			}
+
+			public Set<Entry<UserResourceTypeAllocation, Integer>> entrySet() {
+				return new AbstractSet<Entry<UserResourceTypeAllocation,Integer>>() {
+					public Iterator<Entry<UserResourceTypeAllocation, Integer>> iterator() {
+						return users.stream()
+								.flatMap(u->resourceTypes.stream()
+										.map(rt->
+										(Entry<UserResourceTypeAllocation, Integer>)
+										new SimpleImmutableEntry<>(
+												UserResourceTypeAllocation.newInstance(u, rt),
+												getRank(u, rt))))
+								.iterator();
+					}
+
+					public int size() {
+						return users.size() * resourceTypes.size();
+					}
+				};
+			}
+		};
+	}
+
+}
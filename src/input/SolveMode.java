@@ -0,0 +1,8 @@
+package input;
+
+public enum SolveMode {
+	WEIGHTED,//a single solve, each rank being weighted by a power of the number of users 
+	LEXIMIN,//one solve per rank, from the worst one down, fixing the number of users at each rank
+	HEURISTIC,//no solve, the allocation of LocalSearch
+	LNS //the allocation of LocalSearch, improved by LargeNeighborhoodSearch for TIME_BUDGET seconds
+}
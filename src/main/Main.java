@@ -14,7 +14,20 @@ public class Main {
 	 * Command line example:
 	 * PREFERENCE_FILE:/export/home/vanhee/Téléchargements/file_of_preferences.txt MIN_NB_USER_PER_RESOURCE:2 MAX_NB_USER_PER_RESOURCE:2 RESOURCE_DUPLICATE_MODE:FILE_BASED("/export/home/vanhee/Téléchargements/all_projects.csv",0,4) RESOURCE_OWNERSHIP_MODE:FILE_BASED("/export/home/vanhee/Téléchargements/all_projects.csv",0,3) PREFERENCE_MEANING:PERSONAL_INSATISFACTION OWNER_DESIRES:AT_LEAST_ONE_INSTANCE_PER_OWNER OUTPUT_MODE:LATEX_REPORT	 *  
 	 * Java parameters example:
-	 * -ea -Djava.library.path=/export/home/vanhee/Documents/software/cplex/cplex_studio/cplex/bin/x86-64_linux
+	 * -ea --add-modules cplex -Djava.library.path=/export/home/vanhee/Documents/software/cplex/cplex_studio/cplex/bin/x86-64_linux
+	 * Without CPLEX, SOLVER_BACKEND:BRANCH_AND_BOUND solves small instances in pure Java
+	 * (SOLVER_BACKEND:AUTO, the default, picks CPLEX whenever its native library is found).
+	 * MODEL_EXPORT:LP_GZIP (or SUMMARY, LP, MPS, MPS_GZIP) writes the model of each solve
+	 * in its own model_<number>_<stage> file, for diagnosis.
+	 * MODEL_FORMULATION:TYPE solves over resource types rather than over their interchangeable
+	 * instances, which are numbered afterwards (only without groups of several users).
+	 * SYMMETRY_BREAKING:true orders the copies of each resource type in the INSTANCE formulation
+	 * (a copy can only be used if the previous one is; the users of the copies are not ordered,
+	 * only the start allocation is renumbered to meet that order).
+	 * SOLVE_MODE:HEURISTIC skips the exact solves and returns the allocation of the local search,
+	 * which is otherwise used as a start (fast, but not guaranteed to be optimal).
+	 * SOLVE_MODE:LNS improves that allocation by re-optimizing fragments of it for TIME_BUDGET
+	 * seconds (60 by default).
 	 *  
 	 * 
 	 * Contents of input.csv:
@@ -79,6 +92,7 @@ public class Main {
 	 * Then, on a new program, set as a constraint that exactly pn projects should be 
 	 * allocated for rank n and seek to minimize p(n-1).
 	 * Proceed like this until setting all the values.
+	 * This approach is available with SOLVE_MODE:LEXIMIN (SOLVE_MODE:WEIGHTED being the default).
 	 *  
 	 * PREFERENCE_FILE:/export/home/vanhee/Téléchargements/file_of_preferences.txt MIN_NB_USER_PER_RESOURCE:2 MAX_NB_USER_PER_RESOURCE:2 RESOURCE_DUPLICATE_MODE:FILE_BASED("/export/home/vanhee/Téléchargements/all_projects.csv",0,4) RESOURCE_OWNERSHIP_MODE:FILE_BASED("/export/home/vanhee/Téléchargements/all_projects.csv",0,3) PREFERENCE_MEANING:PERSONAL_INSATISFACTION OWNER_DESIRES:AT_LEAST_ONE_INSTANCE_PER_OWNER OUTPUT_MODE:LATEX_REPORT
 	 *  
@@ -11,7 +11,7 @@ public class AllocationImpl<T,T2> implements Allocation<T,T2> {
 	
 	public int hashCode()
 	{
-		int res = receiver.hashCode()+resource.hashCode();
+		int res = 31 * receiver.hashCode() + resource.hashCode();
 		return res;
 	}
 	
@@ -1,21 +1,20 @@
 package model;
 
-import java.util.Set;
-
 public class ResourceOwner {
-
+	
 	private final String name;
-	private ResourceOwner(String string) {
-		this.name = string;
+	private final int id;
+	private final int hash;
+	
+	ResourceOwner(String name, int id) {
+		this.name = name;
+		this.id = id;
+		this.hash = name.hashCode();
 	}
 
-	public static ResourceOwner newInstance(String string) {
-		return new ResourceOwner(string);
-	}
-	
-	public String toString()
+	public int getId()
 	{
-		return name;
+		return id;
 	}
 
 	public String getName() {
@@ -24,12 +23,17 @@ public class ResourceOwner {
 	
 	public int hashCode()
 	{
-		return name.hashCode();
+		return hash;
 	}
 	
 	public boolean equals(Object o)
 	{
-		return ((ResourceOwner)o).name.equals(name);
+		return this == o;
+	}
+	
+	public String toString()
+	{
+		return name;
 	}
 
 }
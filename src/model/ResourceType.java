@@ -3,23 +3,28 @@ package model;
 public class ResourceType {
 	
 	private final String name;
-
-	private ResourceType(String name) {
+	private final int id;
+	private final int hash;
+	
+	ResourceType(String name, int id) {
 		this.name = name;
+		this.id = id;
+		this.hash = name.hashCode();
 	}
 
-	public static ResourceType newInstance(String name) {
-		return new ResourceType(name);
+	public int getId()
+	{
+		return id;
 	}
 	
 	public int hashCode()
 	{
-		return name.hashCode();
+		return hash;
 	}
 	
 	public boolean equals(Object o)
 	{
-		return ((ResourceType)o).name.equals(name);
+		return this == o;
 	}
 	
 	public String toString()
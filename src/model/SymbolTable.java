@@ -0,0 +1,60 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/**
+ * Interns symbols of one kind so that each key is represented by a single 
+ * object, associated a dense integer id (0, 1, 2... in order of creation).
+ * 
+ * Interned objects can then be compared by identity and used as array indexes
+ * through their id. See Symbols for the tables of one problem instance.
+ */
+class SymbolTable<K, T> {
+
+	private final Map<K, T> symbolPerKey = new HashMap<>();
+	private final List<T> symbolPerId = new ArrayList<>();
+
+	private SymbolTable() {
+	}
+
+	static<K, T> SymbolTable<K, T> newInstance() {
+		return new SymbolTable<>();
+	}
+
+	/**
+	 * @param key
+	 * @param factory builds the symbol from its key and its id, only called for unknown keys
+	 * @return the unique symbol associated to key
+	 */
+	public synchronized T intern(K key, BiFunction<K, Integer, T> factory) {
+		T res = symbolPerKey.get(key);
+		if(res == null)
+		{
+			res = factory.apply(key, symbolPerId.size());
+			symbolPerId.add(res);
+			symbolPerKey.put(key, res);
+		}
+		return res;
+	}
+
+	public synchronized T get(int id) {
+		return symbolPerId.get(id);
+	}
+
+	/**
+	 * @return the number of symbols interned so far, i.e. the bound on ids
+	 */
+	public synchronized int size() {
+		return symbolPerId.size();
+	}
+	
+	public String toString()
+	{
+		return symbolPerId.toString();
+	}
+
+}
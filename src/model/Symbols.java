@@ -0,0 +1,103 @@
+package model;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The users, resource types, owners and groups of one problem instance.
+ * 
+ * A table is built while parsing the files of an instance and is then owned by
+ * that instance: ids are dense within it (0, 1, 2...) and arrays indexed by ids
+ * can be sized by its counts. Symbols of two tables are never equal, even 
+ * when they have the same name.
+ */
+public class Symbols {
+
+	private final SymbolTable<String, User> users = SymbolTable.newInstance();
+	private final SymbolTable<String, ResourceType> resourceTypes = SymbolTable.newInstance();
+	private final SymbolTable<String, ResourceOwner> resourceOwners = SymbolTable.newInstance();
+	private final SymbolTable<Set<User>, UserGroup> userGroups = SymbolTable.newInstance();
+
+	private Symbols() {
+	}
+
+	public static Symbols newInstance() {
+		return new Symbols();
+	}
+
+	/**
+	 * @param name
+	 * @return the unique user with this name
+	 */
+	public User getUser(String name)
+	{
+		return users.intern(name, User::new);
+	}
+
+	/**
+	 * @param name
+	 * @return the unique resource type with this name
+	 */
+	public ResourceType getResourceType(String name)
+	{
+		return resourceTypes.intern(name, ResourceType::new);
+	}
+
+	/**
+	 * @param name
+	 * @return the unique resource owner with this name
+	 */
+	public ResourceOwner getResourceOwner(String name)
+	{
+		return resourceOwners.intern(name, ResourceOwner::new);
+	}
+
+	/**
+	 * @param users
+	 * @return the unique group made of exactly these users
+	 */
+	public UserGroup getUserGroup(Set<User> users)
+	{
+		return userGroups.intern(Collections.unmodifiableSet(new HashSet<>(users)), UserGroup::new);
+	}
+
+	/**
+	 * @return the number of users interned so far, all user ids are below this number
+	 */
+	public int getNbUsers()
+	{
+		return users.size();
+	}
+
+	/**
+	 * @return the number of resource types interned so far, all their ids are below this number
+	 */
+	public int getNbResourceTypes()
+	{
+		return resourceTypes.size();
+	}
+
+	/**
+	 * @return the number of resource owners interned so far, all their ids are below this number
+	 */
+	public int getNbResourceOwners()
+	{
+		return resourceOwners.size();
+	}
+
+	/**
+	 * @return the number of groups interned so far, all group ids are below this number
+	 */
+	public int getNbUserGroups()
+	{
+		return userGroups.size();
+	}
+
+	public String toString()
+	{
+		return getNbUsers()+" users, "+getNbResourceTypes()+" resource types, "
+				+getNbResourceOwners()+" owners, "+getNbUserGroups()+" groups";
+	}
+
+}
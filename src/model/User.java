@@ -3,24 +3,28 @@ package model;
 public class User {
 	
 	private final String name;
+	private final int id;
+	private final int hash;
 	
-	private User(String name2) {
-		this.name = name2;
+	User(String name, int id) {
+		this.name = name;
+		this.id = id;
+		this.hash = name.hashCode();
 	}
 
-	public static User newInstance(String name)
+	public int getId()
 	{
-		return new User(name);
+		return id;
 	}
 	
 	public int hashCode()
 	{
-		return name.hashCode();
+		return hash;
 	}
 	
 	public boolean equals(Object o)
 	{
-		return ((User)o).name.equals(name);
+		return this == o;
 	}
 	
 	public String toString()
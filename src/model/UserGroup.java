@@ -4,19 +4,24 @@ import java.util.Set;
 public class UserGroup {
 	
 	private final Set<User>users;
+	private final int id;
+	private final int hash;
 
-	private UserGroup(Set<User> users) {
-		this.users = users;		
-	}
-
-	public static UserGroup newInstance(Set<User> users) {
-		return new UserGroup(users);
+	UserGroup(Set<User> users, int id) {
+		this.users = users;
+		this.id = id;
+		this.hash = users.hashCode();
 	}
 
 	public Set<User> getUsers() {
 		return users;
 	}
 	
+	public int getId()
+	{
+		return id;
+	}
+	
 	public String toString()
 	{
 		return users.toString();
@@ -24,12 +29,12 @@ public class UserGroup {
 	
 	public int hashCode()
 	{
-		return users.hashCode();
+		return hash;
 	}
 	
 	public boolean equals(Object o)
 	{
-		return ((UserGroup)o).users.equals(users);
+		return this == o;
 	}
 
 }
@@ -11,6 +11,11 @@ module ResourceAllocator {
 	exports model;
 	exports solver;
 
-	requires cplex;
+	requires static cplex;
 	requires java.desktop;
+	
+	uses solver.SolverBackend;
+	provides solver.SolverBackend with 
+		solver.cplex.CplexBackend, 
+		solver.branchandbound.BranchAndBoundBackend;
 }
\ No newline at end of file
@@ -26,6 +26,7 @@ import model.ResourceOwner;
 import model.ResourceType;
 import model.User;
 import model.UserResourceTypeAllocation;
+import solver.RankHistogram;
 import solver.ResourceInstance;
 import solver.UserResourceInstanceAllocation;
 import model.UserGroup;
@@ -50,9 +51,10 @@ public class Printer {
 		else if(ot.equals(OutputType.CONSOLE_PRINT)) res +="\n\nGeneral stats:";
 		else throw new Error();
 		
-		int maxUnhapiness = prefsPerAllocation.keySet().stream()
-				.filter(x->s.contains(x))
-				.map(x->prefsPerAllocation.get(x)).max(Integer::compareTo).get();
+		RankHistogram nbPerHappiness = RankHistogram.newInstance(0);
+		for(UserResourceInstanceAllocation x: s)
+			nbPerHappiness.add(prefsPerAllocation.get(x));
+		int maxUnhapiness = nbPerHappiness.getWorstRank();
 				
 		if(ot.equals(OutputType.LATEX_REPORT))
 		{
@@ -67,9 +69,7 @@ public class Printer {
 		
 		for(int i = 0; i <= maxUnhapiness; i++)
 		{
-			final int count = i;
-			long nbOfThatHappiness=
-					s.stream().filter(x->prefsPerAllocation.get(x).equals(count)).count();
+			int nbOfThatHappiness = nbPerHappiness.getNbUsersAt(i);
 			if(ot.equals(OutputType.LATEX_REPORT))
 				res+=i+"&"+nbOfThatHappiness+"\\\\\n";
 			else if(ot.equals(OutputType.CONSOLE_PRINT))
@@ -236,25 +236,25 @@ public class Printer {
 						Collectors.toMap(x->x, 
 								x->new LinkedList()));
 
-		for(int i = 0 ; i < inF.getResourceTypes().size();i++)
-			for(ResourceType resource:inF.getResourceTypes())
+		int nbResourceTypes = inF.getResourceTypes().size();
+		for(ResourceType resource:inF.getResourceTypes())
+		{
+			long[] nbUsersPerPreferenceLevel = new long[nbResourceTypes];
+			for(User u: inF.getAllUsers())
 			{
-				final int temp = i;
-				long count = inF.getAllocationsPerResourceType()
-						.keySet()
-						.stream()
-						.filter(x->x.getResource().equals(resource))
-						.filter(x->inF.getAllocationsPerResourceType().get(x)<=temp)
-						.count();
-
-				/*	System.out.println(exhaustivePrefsPerAllocation
-		.keySet()
-		.stream()
-		.filter(x->x.resource.equals(resource))
-		.filter(x->exhaustivePrefsPerAllocation.get(x)<=temp)
-		.collect(Collectors.toSet()));*/
+				int level = inF.getInsatisfactionFor(UserResourceTypeAllocation.newInstance(u, resource));
+				if(level < nbResourceTypes)
+					nbUsersPerPreferenceLevel[level]++;
+			}
+			
+			//cumulative: the number of users ranking resource at level i or below
+			long count = 0;
+			for(int i = 0 ; i < nbResourceTypes;i++)
+			{
+				count += nbUsersPerPreferenceLevel[i];
 				numberOfDesirePerPreferenceLevelPerProject.get(resource).add(count);
 			}
+		}
 		return numberOfDesirePerPreferenceLevelPerProject;
 	}
 
@@ -508,10 +508,7 @@ public class Printer {
 
 	private static int getWorseInsatisfaction(ProblemInstance inF,
 			Set<UserResourceInstanceAllocation> allocations) {
-		return
-				allocations.stream().map(x->inF.getInsatisfactionFor(x))
-				.collect(Collectors.toSet())
-				.stream().max(Integer::compare).get();
+		return RankHistogram.newInstance(allocations, inF).getWorstRank();
 	}
 
 	private static String getResultSection(
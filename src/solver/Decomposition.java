@@ -0,0 +1,89 @@
+package solver;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import input.ProblemInstance;
+import input.ProblemInstance.OwnerDesire;
+import model.ResourceOwner;
+import model.ResourceType;
+import model.User;
+
+/**
+ * Splits the units (see FeasibilityOracle.getUnitsOf) into components that share no
+ * resource type within a threshold, by union-find over the units and the resource types
+ * linked by getAllocationsFilteredBy(threshold) and by the hard constraints.
+ * No row and no objective term spans two components, hence each of them can be solved
+ * on its own, as long as:
+ * --the resource types of an owner are kept together when owners wish at least one
+ * allocated instance, as the owner term of the objective couples them;
+ * --the AtMostOneJoker row is left aside: it couples nothing, as the joker rows are
+ * implied by the linking rows (see RedundantRows).
+ */
+class Decomposition {
+
+	private final int[] parent;
+
+	private Decomposition(int nbNodes) {
+		parent = new int[nbNodes];
+		for(int i = 0 ; i < nbNodes; i++)
+			parent[i] = i;
+	}
+
+	/**
+	 * @param input
+	 * @param units
+	 * @param maxInsatisfaction
+	 * @return the components, each listing its units in the order of units
+	 */
+	static List<List<List<User>>> getComponents(ProblemInstance input, List<List<User>> units,
+			int maxInsatisfaction)
+	{
+		List<ResourceType> types = input.getRanks().getResourceTypes();
+		Map<ResourceType, Integer> nodePerType = new HashMap<>();
+		for(ResourceType type: types)
+			nodePerType.put(type, units.size() + nodePerType.size());
+		Map<User, Integer> unitPerUser = new HashMap<>();
+		for(int unit = 0 ; unit < units.size(); unit++)
+			for(User u: units.get(unit))
+				unitPerUser.put(u, unit);
+
+		Decomposition res = new Decomposition(units.size() + types.size());
+		for(UserResourceInstanceAllocation a: input.getAllocationsFilteredBy(maxInsatisfaction))
+			res.union(unitPerUser.get(a.getUser()), nodePerType.get(a.getResource().getResourceType()));
+		for(UserResourceInstanceAllocation hc: input.getHardConstraints())
+			res.union(unitPerUser.get(hc.getUser()), nodePerType.get(hc.getResource().getResourceType()));
+		if(input.getOwnerAllocationPreferences().equals(OwnerDesire.AT_LEAST_ONE_INSTANCE_PER_OWNER))
+			for(ResourceOwner ro: input.getAllResourceOwners())
+			{
+				int first = -1;
+				for(ResourceType type: input.getResourcesTypesFrom(ro))
+					if(first < 0) first = nodePerType.get(type);
+					else res.union(first, nodePerType.get(type));
+			}
+
+		Map<Integer, List<List<User>>> unitsPerRoot = new LinkedHashMap<>();
+		for(int unit = 0 ; unit < units.size(); unit++)
+			unitsPerRoot.computeIfAbsent(res.find(unit), x->new ArrayList<>()).add(units.get(unit));
+		return new ArrayList<>(unitsPerRoot.values());
+	}
+
+	private int find(int node)
+	{
+		while(parent[node] != node)
+		{
+			parent[node] = parent[parent[node]];
+			node = parent[node];
+		}
+		return node;
+	}
+
+	private void union(int node1, int node2)
+	{
+		parent[find(node1)] = find(node2);
+	}
+
+}
@@ -0,0 +1,279 @@
+package solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import input.ProblemInstance;
+import input.RankTable;
+import model.ResourceType;
+import model.User;
+import model.UserGroup;
+
+/**
+ * Tells, without any MIP, whether users can be given resources of rank at most k,
+ * as a max-flow (Dinic) from the users to the resource types:
+ * --each group is contracted into a single node bringing all its members,
+ * and only accepts resource types that all its members rank at most k;
+ * --each resource type hosts at most #instances x getMaxNbUsersPerResource() users.
+ *
+ * This is a relaxation (min sizes are ignored and groups may be spread over
+ * several types), hence a negative answer proves that no allocation exists and
+ * comes with a certificate, a positive one does not guarantee that one exists.
+ */
+public class FeasibilityOracle {
+
+	private static final int INFINITY = Integer.MAX_VALUE;
+
+	private final ProblemInstance input;
+	private final List<List<User>> units;
+	private final List<ResourceType> resourceTypes;
+	private final int[] capacityPerResourceType;
+	private final int nbUsers;
+
+	private FeasibilityOracle(ProblemInstance input, List<List<User>> units) {
+		this.input = input;
+		this.units = units;
+		this.resourceTypes = input.getRanks().getResourceTypes();
+		this.capacityPerResourceType = new int[resourceTypes.size()];
+		for(int t = 0 ; t < resourceTypes.size(); t++)
+			capacityPerResourceType[t] = input.getRanks().getAmountOf(resourceTypes.get(t))
+			* input.getMaxNbUsersPerResource();
+		this.nbUsers = units.stream().mapToInt(List::size).sum();
+	}
+
+	public static FeasibilityOracle newInstance(ProblemInstance input)
+	{
+		return new FeasibilityOracle(input, getUnitsOf(input));
+	}
+
+	/**
+	 * @param input
+	 * @param units
+	 * @return the oracle for giving resources to units only (e.g. a Decomposition component)
+	 */
+	static FeasibilityOracle newInstance(ProblemInstance input, List<List<User>> units)
+	{
+		return new FeasibilityOracle(input, units);
+	}
+
+	/**
+	 * @param input
+	 * @return the users that must be given the same resource instance, groups first
+	 * (largest first), then each of the remaining users on its own
+	 */
+	static List<List<User>> getUnitsOf(ProblemInstance input)
+	{
+		List<List<User>> units = new ArrayList<>();
+		Set<User> grouped = new HashSet<>();
+		input.getUserGroups().stream()
+		.sorted(Comparator.comparingInt((UserGroup x)->-x.getUsers().size())
+				.thenComparingInt(UserGroup::getId))
+		.forEach(x->{
+			List<User> members = new ArrayList<>(x.getUsers());
+			members.removeIf(grouped::contains);
+			grouped.addAll(members);
+			if(!members.isEmpty()) units.add(members);
+		});
+		for(User u: input.getRanks().getUsers())
+			if(!grouped.contains(u))
+			{
+				List<User> single = new ArrayList<>();
+				single.add(u);
+				units.add(single);
+			}
+		return units;
+	}
+
+	public boolean isFeasible(int maxInsatisfaction)
+	{
+		return !getInfeasibilityCertificate(maxInsatisfaction).isPresent();
+	}
+
+	/**
+	 * @param maxInsatisfaction
+	 * @return a set of users whose resources of rank at most maxInsatisfaction
+	 * cannot host them all, if any
+	 */
+	public Optional<InfeasibilityCertificate> getInfeasibilityCertificate(int maxInsatisfaction)
+	{
+		FlowNetwork network = buildNetwork(maxInsatisfaction);
+		if(network.getMaxFlow() == nbUsers)
+			return Optional.empty();
+
+		boolean[] reachable = network.getNodesReachableFromSource();
+		Set<User> users = new HashSet<>();
+		for(int unit = 0 ; unit < units.size(); unit++)
+			if(reachable[getUnitNode(unit)])
+				users.addAll(units.get(unit));
+		Set<ResourceType> types = new HashSet<>();
+		int nbSlots = 0;
+		for(int t = 0 ; t < resourceTypes.size(); t++)
+			if(reachable[getResourceTypeNode(t)])
+			{
+				types.add(resourceTypes.get(t));
+				nbSlots += capacityPerResourceType[t];
+			}
+		return Optional.of(InfeasibilityCertificate.newInstance(
+				maxInsatisfaction, users, types, nbSlots));
+	}
+
+	private FlowNetwork buildNetwork(int maxInsatisfaction)
+	{
+		RankTable ranks = input.getRanks();
+		int[] positionPerResourceTypeId = new int[input.getSymbols().getNbResourceTypes()];
+		for(int t = 0 ; t < resourceTypes.size(); t++)
+			positionPerResourceTypeId[resourceTypes.get(t).getId()] = t;
+
+		FlowNetwork res = new FlowNetwork(units.size() + resourceTypes.size() + 2);
+		for(int unit = 0 ; unit < units.size(); unit++)
+		{
+			List<User> members = units.get(unit);
+			int unitNode = getUnitNode(unit);
+			res.addEdge(getSource(), unitNode, members.size());
+			if(members.size() > input.getMaxNbUsersPerResource()) continue;
+			ranks.forEachResourceTypeWithin(members.get(0), maxInsatisfaction, id->
+			{
+				for(User u: members)
+					if(ranks.getRank(u, ranks.getResourceType(id)) > maxInsatisfaction)
+						return;
+				res.addEdge(unitNode, getResourceTypeNode(positionPerResourceTypeId[id]), INFINITY);
+			});
+		}
+		for(int t = 0 ; t < resourceTypes.size(); t++)
+			res.addEdge(getResourceTypeNode(t), getSink(), capacityPerResourceType[t]);
+		return res;
+	}
+
+	private int getSource()
+	{
+		return 0;
+	}
+
+	private int getUnitNode(int unit)
+	{
+		return 1 + unit;
+	}
+
+	private int getResourceTypeNode(int t)
+	{
+		return 1 + units.size() + t;
+	}
+
+	private int getSink()
+	{
+		return 1 + units.size() + resourceTypes.size();
+	}
+
+	/**
+	 * Adjacency arrays, each edge being followed by its reverse edge
+	 */
+	private static class FlowNetwork {
+		private final int nbNodes;
+		private int[] firstEdgePerNode;
+		private int[] nextEdge = new int[16];
+		private int[] target = new int[16];
+		private int[] residualCapacity = new int[16];
+		private int nbEdges = 0;
+
+		private FlowNetwork(int nbNodes) {
+			this.nbNodes = nbNodes;
+			this.firstEdgePerNode = new int[nbNodes];
+			Arrays.fill(firstEdgePerNode, -1);
+		}
+
+		private void addEdge(int from, int to, int capacity)
+		{
+			if(nbEdges + 2 > target.length)
+			{
+				nextEdge = Arrays.copyOf(nextEdge, 2 * target.length);
+				residualCapacity = Arrays.copyOf(residualCapacity, 2 * target.length);
+				target = Arrays.copyOf(target, 2 * target.length);
+			}
+			addHalfEdge(from, to, capacity);
+			addHalfEdge(to, from, 0);
+		}
+
+		private void addHalfEdge(int from, int to, int capacity)
+		{
+			target[nbEdges] = to;
+			residualCapacity[nbEdges] = capacity;
+			nextEdge[nbEdges] = firstEdgePerNode[from];
+			firstEdgePerNode[from] = nbEdges++;
+		}
+
+		private int getMaxFlow()
+		{
+			int source = 0, sink = nbNodes - 1;
+			int res = 0;
+			int[] level = new int[nbNodes];
+			int[] currentEdge = new int[nbNodes];
+			while(computeLevels(source, sink, level))
+			{
+				System.arraycopy(firstEdgePerNode, 0, currentEdge, 0, nbNodes);
+				for(int pushed = push(source, sink, INFINITY, level, currentEdge);
+						pushed > 0;
+						pushed = push(source, sink, INFINITY, level, currentEdge))
+					res += pushed;
+			}
+			return res;
+		}
+
+		private boolean computeLevels(int source, int sink, int[] level)
+		{
+			Arrays.fill(level, -1);
+			int[] queue = new int[nbNodes];
+			int head = 0, tail = 0;
+			level[source] = 0;
+			queue[tail++] = source;
+			while(head < tail)
+			{
+				int node = queue[head++];
+				for(int e = firstEdgePerNode[node]; e >= 0; e = nextEdge[e])
+					if(residualCapacity[e] > 0 && level[target[e]] < 0)
+					{
+						level[target[e]] = level[node] + 1;
+						queue[tail++] = target[e];
+					}
+			}
+			return level[sink] >= 0;
+		}
+
+		/**
+		 * Blocking flow step, the network has only four layers so recursion stays shallow
+		 */
+		private int push(int node, int sink, int amount, int[] level, int[] currentEdge)
+		{
+			if(node == sink) return amount;
+			for(; currentEdge[node] >= 0; currentEdge[node] = nextEdge[currentEdge[node]])
+			{
+				int e = currentEdge[node];
+				int next = target[e];
+				if(residualCapacity[e] <= 0 || level[next] != level[node] + 1) continue;
+				int pushed = push(next, sink, Integer.min(amount, residualCapacity[e]), level, currentEdge);
+				if(pushed > 0)
+				{
+					residualCapacity[e] -= pushed;
+					residualCapacity[e ^ 1] += pushed;
+					return pushed;
+				}
+			}
+			return 0;
+		}
+
+		private boolean[] getNodesReachableFromSource()
+		{
+			int[] level = new int[nbNodes];
+			computeLevels(0, nbNodes - 1, level);
+			boolean[] res = new boolean[nbNodes];
+			for(int i = 0 ; i < nbNodes; i++)
+				res[i] = level[i] >= 0;
+			return res;
+		}
+	}
+
+}
@@ -0,0 +1,217 @@
+package solver;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import input.ProblemInstance;
+import model.ResourceType;
+import model.User;
+
+/**
+ * The relaxation of an allocation model (as built by Solver) to a MinCostFlow from the units
+ * to the resource types, each type receiving at most its number of instances times
+ * getMaxNbUsersPerResource() users:
+ * --the minimal numbers of users per instance, the owner rows and the hard constraints
+ * are dropped, as well as the packing of the units in the instances;
+ * --each unit of flow costs the objective coefficient of the column of its unit for its type,
+ * divided by the size of the unit (a group may then be spread over several types).
+ *
+ * The cost of the flow is thus a lower bound of the objective of the model,
+ * found in milliseconds, as the linear relaxation of a network.
+ * When no group is spread, the units of each type are packed in its instances:
+ * if the model accepts this allocation, it is optimal.
+ */
+public class FlowRelaxation {
+
+	private static final double MAX_EXACT_COST = 1L << 53;
+	private static final Comparator<ResourceType> TYPE_ORDER = 
+			Comparator.comparingInt(ResourceType::getId);
+
+	private final double lowerBound;
+	private final Optional<Set<UserResourceInstanceAllocation>> allocation;
+
+	private FlowRelaxation(double lowerBound, Optional<Set<UserResourceInstanceAllocation>> allocation) {
+		this.lowerBound = lowerBound;
+		this.allocation = allocation;
+	}
+
+	/**
+	 * @param input
+	 * @param units the units of the model
+	 * @param lp the model, whose objective is already set
+	 * @param allocToVar the column of each allocation, those of a unit sharing it;
+	 * columns with a zero upper bound are left aside
+	 * @return the relaxation, empty if the objective is not integral on the allocation columns
+	 * or too large for the costs of the flow to be exact
+	 */
+	public static Optional<FlowRelaxation> newInstance(ProblemInstance input, List<List<User>> units,
+			LinearModel lp, Map<UserResourceInstanceAllocation, Integer> allocToVar)
+	{
+		Map<User, List<UserResourceInstanceAllocation>> allocationsPerUser = new HashMap<>();
+		allocToVar.forEach((a, column)->{
+			if(lp.getColumnUpperBound(column) > 0)
+				allocationsPerUser.computeIfAbsent(a.getUser(), x->new ArrayList<>()).add(a);
+		});
+		Set<Integer> allocationColumns = new HashSet<>(allocToVar.values());
+
+		int scale = 1;
+		int nbUsers = 0;
+		for(List<User> unit: units)
+		{
+			scale = scale / gcd(scale, unit.size()) * unit.size();
+			nbUsers += unit.size();
+		}
+
+		SortedSet<ResourceType> types = new TreeSet<>(TYPE_ORDER);
+		List<Map<ResourceType, Long>> costPerTypePerUnit = new ArrayList<>();
+		for(List<User> unit: units)
+		{
+			Map<ResourceType, Long> costPerType = new TreeMap<>(TYPE_ORDER);
+			for(UserResourceInstanceAllocation a:
+				allocationsPerUser.getOrDefault(unit.get(0), new ArrayList<>()))
+			{
+				double coefficient = lp.getObjective(allocToVar.get(a));
+				if(coefficient < 0 || coefficient != Math.rint(coefficient))
+					return Optional.empty();
+				if(coefficient * scale * nbUsers >= MAX_EXACT_COST)
+				{
+					System.out.println("Min-cost flow relaxation skipped: the cost "+coefficient
+							+" of a column, times "+nbUsers+" users and the scale "+scale
+							+" of the groups, is beyond the exact integers of a double");
+					return Optional.empty();
+				}
+				ResourceType type = a.getResource().getResourceType();
+				costPerType.merge(type, (long)coefficient * (scale / unit.size()), Long::min);
+				types.add(type);
+			}
+			costPerTypePerUnit.add(costPerType);
+		}
+
+		//the source, then the units, the types and the sink
+		int source = 0;
+		Map<ResourceType, Integer> nodePerType = new HashMap<>();
+		for(ResourceType type: types)
+			nodePerType.put(type, units.size() + nodePerType.size() + 1);
+		int sink = units.size() + types.size() + 1;
+		MinCostFlow network = MinCostFlow.newInstance(sink + 1);
+		List<Map<ResourceType, Integer>> edgePerTypePerUnit = new ArrayList<>();
+		for(int unit = 0 ; unit < units.size(); unit++)
+		{
+			int size = units.get(unit).size();
+			network.addEdge(source, unit + 1, size, 0);
+			Map<ResourceType, Integer> edgePerType = new TreeMap<>(TYPE_ORDER);
+			for(Map.Entry<ResourceType, Long> e: costPerTypePerUnit.get(unit).entrySet())
+				edgePerType.put(e.getKey(),
+						network.addEdge(unit + 1, nodePerType.get(e.getKey()), size, e.getValue()));
+			edgePerTypePerUnit.add(edgePerType);
+		}
+		for(ResourceType type: types)
+			network.addEdge(nodePerType.get(type), sink,
+					input.getAmountOf(type) * input.getMaxNbUsersPerResource(), 0);
+
+		if(network.push(source, sink, nbUsers) < nbUsers)
+			return Optional.of(new FlowRelaxation(Double.POSITIVE_INFINITY, Optional.empty()));
+
+		double lowerBound = lp.getObjectiveConstant() + (double)network.getCost() / scale;
+		for(int column = 0 ; column < lp.getNbColumns(); column++)
+			if(!allocationColumns.contains(column))
+			{
+				double coefficient = lp.getObjective(column);
+				if(coefficient > 0) lowerBound += coefficient * lp.getColumnLowerBound(column);
+				if(coefficient < 0) lowerBound += coefficient * lp.getColumnUpperBound(column);
+			}
+		return Optional.of(new FlowRelaxation(lowerBound,
+				pack(input, units, network, edgePerTypePerUnit)));
+	}
+
+	/**
+	 * The units of each type are spread over as few instances as possible, each unit 
+	 * (largest first) entering the least loaded one, so that the instances get close 
+	 * to the minimal number of users.
+	 * @return the allocation giving each unit the type of its flow,
+	 * empty if a unit is spread over several types or if no room is found
+	 */
+	private static Optional<Set<UserResourceInstanceAllocation>> pack(ProblemInstance input,
+			List<List<User>> units, MinCostFlow network,
+			List<Map<ResourceType, Integer>> edgePerTypePerUnit)
+	{
+		Map<ResourceType, List<List<User>>> unitsPerType = new TreeMap<>(TYPE_ORDER);
+		for(int unit = 0 ; unit < units.size(); unit++)
+		{
+			int size = units.get(unit).size();
+			Optional<ResourceType> type = edgePerTypePerUnit.get(unit).entrySet().stream()
+					.filter(x->network.getFlow(x.getValue()) == size)
+					.map(Map.Entry::getKey)
+					.findAny();
+			if(!type.isPresent()) return Optional.empty();
+			unitsPerType.computeIfAbsent(type.get(), x->new ArrayList<>()).add(units.get(unit));
+		}
+
+		Set<UserResourceInstanceAllocation> res = new HashSet<>();
+		for(Map.Entry<ResourceType, List<List<User>>> e: unitsPerType.entrySet())
+		{
+			List<List<User>> toPack = e.getValue();
+			toPack.sort(Comparator.comparingInt((List<User> x)->x.size()).reversed());
+			int max = input.getMaxNbUsersPerResource();
+			int nbUsers = toPack.stream().mapToInt(List::size).sum();
+			int[] nbUsersPerInstance = new int[input.getAmountOf(e.getKey())];
+			int nbOpened = Integer.min((nbUsers + max - 1) / max, nbUsersPerInstance.length);
+			for(List<User> unit: toPack)
+			{
+				int instance = -1;
+				for(int i = 0 ; i < nbOpened; i++)
+					if(nbUsersPerInstance[i] + unit.size() <= max
+					&& (instance < 0 || nbUsersPerInstance[i] < nbUsersPerInstance[instance]))
+						instance = i;
+				if(instance < 0 && nbOpened < nbUsersPerInstance.length)
+					instance = nbOpened++;
+				if(instance < 0) return Optional.empty();
+				nbUsersPerInstance[instance] += unit.size();
+				for(User u: unit)
+					res.add(UserResourceInstanceAllocation.newInstance(u,
+							ResourceInstance.newInstance(e.getKey(), instance)));
+			}
+		}
+		return Optional.of(res);
+	}
+
+	private static int gcd(int a, int b)
+	{
+		return b == 0 ? a : gcd(b, a % b);
+	}
+
+	/**
+	 * @return the least objective value of the relaxation,
+	 * infinite if it cannot give resources to all the units
+	 */
+	public double getLowerBound()
+	{
+		return lowerBound;
+	}
+
+	/**
+	 * @return the allocation of the relaxation, if it keeps units whole and fits in the instances
+	 * (the minimal numbers of users per instance and the other rows of the model not being
+	 * checked)
+	 */
+	public Optional<Set<UserResourceInstanceAllocation>> getAllocation()
+	{
+		return allocation;
+	}
+
+	public String toString()
+	{
+		return "Min-cost flow relaxation: lower bound "+lowerBound
+				+(allocation.isPresent() ? ", units kept whole" : "");
+	}
+
+}
@@ -0,0 +1,64 @@
+package solver;
+
+import java.util.Set;
+
+import model.ResourceType;
+import model.User;
+
+/**
+ * Proof that no allocation exists (Hall's condition): the users listed here
+ * only accept the resource types listed here, that cannot host them all.
+ */
+public class InfeasibilityCertificate {
+
+	private final int maxInsatisfaction;
+	private final Set<User> users;
+	private final Set<ResourceType> resourceTypes;
+	private final int nbSlots;
+
+	private InfeasibilityCertificate(int maxInsatisfaction, Set<User> users,
+			Set<ResourceType> resourceTypes, int nbSlots) {
+		this.maxInsatisfaction = maxInsatisfaction;
+		this.users = users;
+		this.resourceTypes = resourceTypes;
+		this.nbSlots = nbSlots;
+	}
+
+	public static InfeasibilityCertificate newInstance(int maxInsatisfaction, Set<User> users,
+			Set<ResourceType> resourceTypes, int nbSlots) {
+		return new InfeasibilityCertificate(maxInsatisfaction, users, resourceTypes, nbSlots);
+	}
+
+	/**
+	 * @return the users that cannot all be satisfied
+	 */
+	public Set<User> getUsers() {
+		return users;
+	}
+
+	/**
+	 * @return all the resource types of rank at most getMaxInsatisfaction() for these users
+	 */
+	public Set<ResourceType> getResourceTypes() {
+		return resourceTypes;
+	}
+
+	/**
+	 * @return the number of users these resource types can host, below getUsers().size()
+	 */
+	public int getNbSlots() {
+		return nbSlots;
+	}
+
+	public int getMaxInsatisfaction() {
+		return maxInsatisfaction;
+	}
+
+	public String toString()
+	{
+		return users.size()+" users only accept resources that can host "+nbSlots
+				+" of them within rank "+maxInsatisfaction
+				+"\nUsers:"+users+"\nResources:"+resourceTypes;
+	}
+
+}
@@ -0,0 +1,182 @@
+package solver;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import input.ProblemInstance;
+import input.RankTable;
+import model.ResourceType;
+import model.User;
+
+/**
+ * Cheap bounds on the minimal worst insatisfaction, computed without any MIP solve.
+ * --the lower bound is the smallest rank the FeasibilityOracle does not rule out;
+ * --the upper bound comes from a greedy allocation, when it satisfies all the
+ * constraints of the problem.
+ */
+public class InsatisfactionBounds {
+
+	private InsatisfactionBounds() {
+	}
+
+	/**
+	 * @param input
+	 * @return the highest rank that can be given to a resource type
+	 */
+	public static int getMaxRank(ProblemInstance input)
+	{
+		return Integer.max(0, input.getRanks().getResourceTypes().size() - 1);
+	}
+
+	/**
+	 * @param input
+	 * @return a rank under which no allocation can be found
+	 */
+	public static int getLowerBound(ProblemInstance input)
+	{
+		return getLowerBound(input, FeasibilityOracle.newInstance(input));
+	}
+
+	/**
+	 * @param input
+	 * @param oracle
+	 * @return a rank under which oracle rules out any allocation
+	 */
+	static int getLowerBound(ProblemInstance input, FeasibilityOracle oracle)
+	{
+		int min = 0;
+		int max = getMaxRank(input);
+		while(min < max)
+		{
+			int i = (min + max) / 2;
+			if(oracle.isFeasible(i))
+				max = i;
+			else min = i + 1;
+		}
+		return min;
+	}
+
+	/**
+	 * Groups first (largest first), then the remaining users, pick the best ranked
+	 * resource instance that still has room, favoring the instances already opened.
+	 * A final pass empties the instances hosting less than the minimal number of users,
+	 * when their users fit elsewhere.
+	 * @param input
+	 * @return the greedy allocation, if it meets all the constraints
+	 */
+	public static Optional<Set<UserResourceInstanceAllocation>> getGreedyAllocation(ProblemInstance input)
+	{
+		RankTable ranks = input.getRanks();
+		List<ResourceType> types = ranks.getResourceTypes();
+		int max = input.getMaxNbUsersPerResource();
+		int min = input.getMinNumUsersPerResource();
+
+		List<List<User>> units = FeasibilityOracle.getUnitsOf(input);
+
+		int[][] nbUsersPerInstance = new int[types.size()][];
+		for(int t = 0 ; t < types.size(); t++)
+			nbUsersPerInstance[t] = new int[ranks.getAmountOf(types.get(t))];
+		int[] typePerUnit = new int[units.size()];
+		int[] instancePerUnit = new int[units.size()];
+
+		for(int unit = 0 ; unit < units.size(); unit++)
+		{
+			List<User> members = units.get(unit);
+			int bestType = -1, bestInstance = -1, bestRank = Integer.MAX_VALUE;
+			boolean bestIsOpened = false;
+			for(int t = 0 ; t < types.size(); t++)
+			{
+				int instance = getInstanceWithRoomFor(members.size(), nbUsersPerInstance[t], max);
+				if(instance < 0) continue;
+				int rank = getRank(ranks, members, types.get(t));
+				boolean isOpened = nbUsersPerInstance[t][instance] > 0;
+				if(rank < bestRank || (rank == bestRank && isOpened && !bestIsOpened))
+				{
+					bestType = t;
+					bestInstance = instance;
+					bestRank = rank;
+					bestIsOpened = isOpened;
+				}
+			}
+			if(bestType < 0) return Optional.empty();
+			typePerUnit[unit] = bestType;
+			instancePerUnit[unit] = bestInstance;
+			nbUsersPerInstance[bestType][bestInstance] += members.size();
+		}
+
+		//moving the units of under-filled instances to other opened instances
+		for(int unit = 0 ; unit < units.size(); unit++)
+		{
+			int t = typePerUnit[unit];
+			int instance = instancePerUnit[unit];
+			if(nbUsersPerInstance[t][instance] >= min) continue;
+			List<User> members = units.get(unit);
+			int bestType = -1, bestInstance = -1, bestRank = Integer.MAX_VALUE;
+			for(int other = 0 ; other < types.size(); other++)
+			{
+				int candidate = getOpenedInstanceWithRoomFor(members.size(),
+						nbUsersPerInstance[other], max, other == t ? instance : -1);
+				if(candidate < 0) continue;
+				int rank = getRank(ranks, members, types.get(other));
+				if(rank < bestRank)
+				{
+					bestType = other;
+					bestInstance = candidate;
+					bestRank = rank;
+				}
+			}
+			if(bestType < 0) continue;
+			nbUsersPerInstance[t][instance] -= members.size();
+			nbUsersPerInstance[bestType][bestInstance] += members.size();
+			typePerUnit[unit] = bestType;
+			instancePerUnit[unit] = bestInstance;
+		}
+
+		for(int[] instances: nbUsersPerInstance)
+			for(int nbUsers: instances)
+				if(nbUsers > 0 && nbUsers < min) return Optional.empty();
+
+		Set<UserResourceInstanceAllocation> res = new HashSet<>();
+		for(int unit = 0 ; unit < units.size(); unit++)
+		{
+			ResourceInstance ri = input.getResourceInstancesOf(types.get(typePerUnit[unit]))
+					.get(instancePerUnit[unit]);
+			for(User u: units.get(unit))
+				res.add(UserResourceInstanceAllocation.newInstance(u, ri));
+		}
+		return Optional.of(res);
+	}
+
+	private static int getRank(RankTable ranks, List<User> members, ResourceType rt)
+	{
+		int res = 0;
+		for(User u: members)
+			res = Integer.max(res, ranks.getRank(u, rt));
+		return res;
+	}
+
+	/**
+	 * @return an opened instance with room for nbUsers if any, else an empty one, else -1
+	 */
+	private static int getInstanceWithRoomFor(int nbUsers, int[] nbUsersPerInstance, int max)
+	{
+		int res = getOpenedInstanceWithRoomFor(nbUsers, nbUsersPerInstance, max, -1);
+		if(res >= 0) return res;
+		for(int i = 0 ; i < nbUsersPerInstance.length; i++)
+			if(nbUsersPerInstance[i] == 0 && nbUsers <= max)
+				return i;
+		return -1;
+	}
+
+	private static int getOpenedInstanceWithRoomFor(int nbUsers, int[] nbUsersPerInstance, int max,
+			int excluded)
+	{
+		for(int i = 0 ; i < nbUsersPerInstance.length; i++)
+			if(i != excluded && nbUsersPerInstance[i] > 0 && nbUsersPerInstance[i] + nbUsers <= max)
+				return i;
+		return -1;
+	}
+
+}
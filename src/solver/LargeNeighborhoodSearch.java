@@ -0,0 +1,526 @@
+package solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import input.ProblemInstance;
+import input.RankTable;
+import model.ResourceOwner;
+import model.ResourceType;
+import model.User;
+
+/**
+ * Anytime improvement of an allocation, until a wall-clock budget is spent.
+ * Each step frees a fragment of the units (see FeasibilityOracle.getUnitsOf), chosen by one
+ * of the Neighborhood, and gives them their best allocation given the other units, by an
+ * exact solve of a small model on the backend of the instance:
+ * --a column per unit of the fragment and admissible resource instance, the resource types
+ * being restricted to the worst rank of the incumbent;
+ * --the capacity and minimal number of users of each instance, given the users of the
+ * other units;
+ * --an objective weighting each rank by a power of the number of users of the fragment
+ * plus one, hence lexicographic over the histogram of the ranks.
+ * The wishes of the owners are ignored.
+ *
+ * Fragments are solved on parallel threads sharing the incumbent, which is replaced
+ * by any allocation that is not worse; each improvement is reported.
+ */
+public class LargeNeighborhoodSearch {
+
+	private enum Neighborhood {
+		RANDOM_USERS, //units drawn at random
+		OWNER, //the units given a resource type of an owner drawn at random
+		WORST_OFF_USERS, //units of the worst rank, and units holding the resource types they prefer
+		RESOURCE_TYPE //the units given a resource type drawn at random, and units preferring it
+	}
+
+	private static final int NB_UNITS_PER_FRAGMENT = 12;
+	/**
+	 * beyond, the weights of the objective are no longer exact integers
+	 */
+	private static final double MAX_WEIGHT = 1e15;
+
+	private final ProblemInstance input;
+	private final List<List<User>> units;
+	private final List<ResourceType> types;
+	private final List<ResourceOwner> owners;
+	private final int max;
+	private final int min;
+	private final boolean[] isFixed;
+	private final int maxRank;
+	private final long start;
+
+	private Allocation incumbent;
+	private final int[] nbImprovementsPerNeighborhood = new int[Neighborhood.values().length];
+	private final AtomicInteger nbFragments = new AtomicInteger();
+
+	/**
+	 * The resource instance of each unit, by index of resource type and instance number
+	 */
+	private static class Allocation {
+		private final int[] typePerUnit;
+		private final int[] instancePerUnit;
+		private RankHistogram histogram;
+
+		private Allocation(int[] typePerUnit, int[] instancePerUnit) {
+			this.typePerUnit = typePerUnit;
+			this.instancePerUnit = instancePerUnit;
+		}
+	}
+
+	private LargeNeighborhoodSearch(ProblemInstance input, List<List<User>> units) {
+		this.input = input;
+		this.units = units;
+		RankTable ranks = input.getRanks();
+		this.types = ranks.getResourceTypes();
+		this.owners = new ArrayList<>(input.getAllResourceOwners());
+		owners.sort(Comparator.comparingInt(ResourceOwner::getId));
+		this.max = input.getMaxNbUsersPerResource();
+		this.min = input.getMinNumUsersPerResource();
+
+		Set<User> constrainedUsers = new LinkedHashSet<>();
+		for(UserResourceInstanceAllocation hc: input.getHardConstraints())
+			constrainedUsers.add(hc.getUser());
+		isFixed = new boolean[units.size()];
+		int maxRank = 0;
+		for(int unit = 0 ; unit < units.size(); unit++)
+		{
+			isFixed[unit] = units.get(unit).stream().anyMatch(constrainedUsers::contains);
+			for(User u: units.get(unit))
+				maxRank = Integer.max(maxRank, ranks.getWorstRank(u));
+		}
+		this.maxRank = maxRank;
+		this.start = System.currentTimeMillis();
+	}
+
+	/**
+	 * @param input
+	 * @param start an allocation of all the users
+	 * @return the best allocation found from start within input.getTimeBudget() seconds
+	 */
+	public static Set<UserResourceInstanceAllocation> improve(ProblemInstance input,
+			Set<UserResourceInstanceAllocation> start)
+	{
+		LargeNeighborhoodSearch res = new LargeNeighborhoodSearch(input, FeasibilityOracle.getUnitsOf(input));
+		res.incumbent = res.toAllocation(start);
+		res.incumbent.histogram = res.getHistogram(res.incumbent);
+		long deadline = res.start + 1000L * input.getTimeBudget();
+
+		int nbThreads = Runtime.getRuntime().availableProcessors();
+		System.out.println("Large neighborhood search for "+input.getTimeBudget()+"s on "
+				+nbThreads+" threads, from "+res.incumbent.histogram);
+		ExecutorService pool = Executors.newFixedThreadPool(nbThreads);
+		try
+		{
+			List<Future<?>> threads = new ArrayList<>();
+			for(int i = 0 ; i < nbThreads; i++)
+			{
+				Random random = new Random(i);
+				threads.add(pool.submit(()->res.runUntil(deadline, random)));
+			}
+			for(Future<?> thread: threads)
+				thread.get();
+		}
+		catch (InterruptedException | ExecutionException e) {
+			throw new Error(e);
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+
+		Set<UserResourceInstanceAllocation> best = res.toAllocation(res.incumbent);
+		System.out.println("Large neighborhood search: "+res.incumbent.histogram
+		+" after "+res.nbFragments+" fragments, improvements per neighborhood: "
+		+res.getNbImprovementsPerNeighborhood());
+		return best;
+	}
+
+	private void runUntil(long deadline, Random random)
+	{
+		SolverBackend backend = SolverBackends.getBackend(input);
+		while(System.currentTimeMillis() < deadline)
+		{
+			Allocation current = getIncumbent();
+			nbFragments.incrementAndGet();
+			Neighborhood neighborhood =
+					Neighborhood.values()[random.nextInt(Neighborhood.values().length)];
+			List<Integer> fragment = getFragment(neighborhood, current, random);
+			if(fragment.isEmpty()) continue;
+			Optional<Allocation> candidate = reoptimize(current, fragment, backend,
+					(deadline - System.currentTimeMillis()) / 1000.0);
+			if(candidate.isPresent())
+				offer(candidate.get(), neighborhood);
+		}
+	}
+
+	private synchronized Allocation getIncumbent()
+	{
+		return incumbent;
+	}
+
+	private synchronized void offer(Allocation candidate, Neighborhood neighborhood)
+	{
+		int comparison = candidate.histogram.compareTo(incumbent.histogram);
+		if(comparison > 0) return;
+		incumbent = candidate;
+		if(comparison == 0) return;
+		nbImprovementsPerNeighborhood[neighborhood.ordinal()]++;
+		System.out.println("Large neighborhood search after "
+				+(System.currentTimeMillis() - start)+"ms ("+neighborhood+"): "+candidate.histogram);
+	}
+
+	private synchronized Map<Neighborhood, Integer> getNbImprovementsPerNeighborhood()
+	{
+		Map<Neighborhood, Integer> res = new EnumMap<>(Neighborhood.class);
+		for(Neighborhood n: Neighborhood.values())
+			res.put(n, nbImprovementsPerNeighborhood[n.ordinal()]);
+		return res;
+	}
+
+	private List<Integer> getFragment(Neighborhood neighborhood, Allocation current, Random random)
+	{
+		Set<Integer> res = new LinkedHashSet<>();
+		switch(neighborhood) {
+		case OWNER:
+			addUnitsOfOwner(owners.get(random.nextInt(owners.size())), current, res, random);
+			break;
+		case WORST_OFF_USERS:
+			addWorstOffUnits(current, res, random);
+			break;
+		case RESOURCE_TYPE:
+			addUnitsOfResourceType(types.get(random.nextInt(types.size())), current, res, random);
+			break;
+		case RANDOM_USERS:
+			break;
+		}
+		List<Integer> candidates = new ArrayList<>();
+		for(int unit = 0 ; unit < units.size(); unit++)
+			candidates.add(unit);
+		addAtRandom(candidates, res, random);
+		return new ArrayList<>(res);
+	}
+
+	private void addUnitsOfOwner(ResourceOwner owner, Allocation current, Set<Integer> fragment,
+			Random random)
+	{
+		Set<ResourceType> ownedTypes = input.getResourcesTypesFrom(owner);
+		List<Integer> candidates = new ArrayList<>();
+		for(int unit = 0 ; unit < units.size(); unit++)
+			if(ownedTypes.contains(types.get(current.typePerUnit[unit])))
+				candidates.add(unit);
+		addAtRandom(candidates, fragment, random);
+	}
+
+	/**
+	 * Adds units of the worst rank (up to half the fragment), then the units holding
+	 * the resource types these units prefer
+	 */
+	private void addWorstOffUnits(Allocation current, Set<Integer> fragment, Random random)
+	{
+		int worst = 0;
+		for(int unit = 0 ; unit < units.size(); unit++)
+			if(!isFixed[unit])
+				worst = Integer.max(worst, getRank(unit, types.get(current.typePerUnit[unit])));
+		List<Integer> worstOff = new ArrayList<>();
+		for(int unit = 0 ; unit < units.size(); unit++)
+			if(!isFixed[unit] && getRank(unit, types.get(current.typePerUnit[unit])) == worst)
+				worstOff.add(unit);
+		Collections.shuffle(worstOff, random);
+		worstOff = worstOff.subList(0, Integer.min(worstOff.size(), NB_UNITS_PER_FRAGMENT / 2));
+		fragment.addAll(worstOff);
+
+		List<Integer> holders = new ArrayList<>();
+		for(int unit = 0 ; unit < units.size(); unit++)
+		{
+			ResourceType type = types.get(current.typePerUnit[unit]);
+			for(int other: worstOff)
+				if(getRank(other, type) < worst)
+				{
+					holders.add(unit);
+					break;
+				}
+		}
+		addAtRandom(holders, fragment, random);
+	}
+
+	/**
+	 * Adds the units given type, then the units that prefer type to their resource type
+	 */
+	private void addUnitsOfResourceType(ResourceType type, Allocation current, Set<Integer> fragment,
+			Random random)
+	{
+		List<Integer> holders = new ArrayList<>();
+		List<Integer> candidates = new ArrayList<>();
+		for(int unit = 0 ; unit < units.size(); unit++)
+		{
+			ResourceType held = types.get(current.typePerUnit[unit]);
+			if(held.equals(type))
+				holders.add(unit);
+			else if(getRank(unit, type) < getRank(unit, held))
+				candidates.add(unit);
+		}
+		addAtRandom(holders, fragment, random);
+		addAtRandom(candidates, fragment, random);
+	}
+
+	/**
+	 * Adds to fragment the units of candidates that are not fixed, in a random order,
+	 * until fragment is full
+	 */
+	private void addAtRandom(List<Integer> candidates, Set<Integer> fragment, Random random)
+	{
+		List<Integer> shuffled = new ArrayList<>(candidates);
+		Collections.shuffle(shuffled, random);
+		for(int unit: shuffled)
+		{
+			if(fragment.size() >= NB_UNITS_PER_FRAGMENT) return;
+			if(!isFixed[unit]) fragment.add(unit);
+		}
+	}
+
+	/**
+	 * The last units of fragment are left out while the weights of the objective would
+	 * exceed MAX_WEIGHT
+	 * @param timeLimit in seconds
+	 * @return the best allocation of fragment given the other units of current found
+	 * within timeLimit, empty if none is found
+	 */
+	private Optional<Allocation> reoptimize(Allocation current, List<Integer> fragment,
+			SolverBackend backend, double timeLimit)
+	{
+		int worst = 0;
+		for(int unit = 0 ; unit < units.size(); unit++)
+			worst = Integer.max(worst, getRank(unit, types.get(current.typePerUnit[unit])));
+		fragment = new ArrayList<>(fragment);
+		while(!fragment.isEmpty()
+				&& Math.pow(getNbUsers(fragment) + 1, getRanksWithin(fragment, worst).size()) > MAX_WEIGHT)
+			fragment.remove(fragment.size() - 1);
+		if(fragment.isEmpty()) return Optional.empty();
+
+		boolean[] isFreed = new boolean[units.size()];
+		for(int unit: fragment)
+			isFreed[unit] = true;
+		int[][] nbFixedUsersPerInstance = new int[types.size()][];
+		boolean[][] isUsedByFragment = new boolean[types.size()][];
+		for(int t = 0 ; t < types.size(); t++)
+		{
+			nbFixedUsersPerInstance[t] = new int[input.getRanks().getAmountOf(types.get(t))];
+			isUsedByFragment[t] = new boolean[nbFixedUsersPerInstance[t].length];
+		}
+		for(int unit = 0 ; unit < units.size(); unit++)
+		{
+			int t = current.typePerUnit[unit];
+			int instance = current.instancePerUnit[unit];
+			if(isFreed[unit]) isUsedByFragment[t][instance] = true;
+			else nbFixedUsersPerInstance[t][instance] += units.get(unit).size();
+		}
+
+		//a column per unit and resource instance: the instances hosting users,
+		//plus one of the empty ones of each resource type
+		LinearModel lp = LinearModel.newInstance();
+		List<Integer> unitPerColumn = new ArrayList<>();
+		List<Integer> typePerColumn = new ArrayList<>();
+		List<Integer> instancePerColumn = new ArrayList<>();
+		Map<List<Integer>, List<Integer>> columnsPerInstance = new HashMap<>();
+		for(int unit: fragment)
+			for(int t = 0 ; t < types.size(); t++)
+			{
+				if(getRank(unit, types.get(t)) > worst) continue;
+				boolean isEmptyInstanceTaken = false;
+				for(int instance = 0 ; instance < nbFixedUsersPerInstance[t].length; instance++)
+				{
+					int nbFixedUsers = nbFixedUsersPerInstance[t][instance];
+					if(nbFixedUsers == 0 && !isUsedByFragment[t][instance])
+					{
+						if(isEmptyInstanceTaken) continue;
+						isEmptyInstanceTaken = true;
+					}
+					if(nbFixedUsers + units.get(unit).size() > max) continue;
+					int column = lp.addBinaryColumn("UnitAllocation", Arrays.asList(unit, t, instance));
+					unitPerColumn.add(unit);
+					typePerColumn.add(t);
+					instancePerColumn.add(instance);
+					columnsPerInstance.computeIfAbsent(Arrays.asList(t, instance), x->new ArrayList<>())
+					.add(column);
+				}
+			}
+
+		//the weight of a rank exceeds the sum of the weights of the lower ranks
+		int nbUsers = getNbUsers(fragment);
+		Map<Integer, Double> weightPerRank = new HashMap<>();
+		for(int rank: getRanksWithin(fragment, worst))
+			weightPerRank.put(rank, Math.pow(nbUsers + 1, weightPerRank.size()));
+		for(int column = 0 ; column < unitPerColumn.size(); column++)
+		{
+			double weight = 0;
+			for(User u: units.get(unitPerColumn.get(column)))
+				weight += weightPerRank.get(input.getRanks().getRank(u, types.get(typePerColumn.get(column))));
+			lp.setObjective(column, weight);
+		}
+
+		for(int unit: fragment)
+		{
+			for(int column = 0 ; column < unitPerColumn.size(); column++)
+				if(unitPerColumn.get(column) == unit)
+					lp.addTerm(column, 1);
+			lp.addEq(1, "EachUnitIsAllocatedExactlyOnce", unit);
+		}
+
+		//the instances hosting fixed users stay opened
+		Map<List<Integer>, Integer> openedPerInstance = new HashMap<>();
+		for(Map.Entry<List<Integer>, List<Integer>> e: columnsPerInstance.entrySet())
+		{
+			int nbFixedUsers = nbFixedUsersPerInstance[e.getKey().get(0)][e.getKey().get(1)];
+			int opened = -1;
+			if(nbFixedUsers == 0)
+			{
+				opened = lp.addBinaryColumn("ActiveResourceVar", e.getKey());
+				openedPerInstance.put(e.getKey(), opened);
+			}
+
+			for(int column: e.getValue())
+				lp.addTerm(column, units.get(unitPerColumn.get(column)).size());
+			if(opened >= 0) lp.addTerm(opened, -max);
+			lp.addLe(opened >= 0 ? 0 : max - nbFixedUsers, "Capacity", e.getKey());
+
+			if(nbFixedUsers >= min) continue;
+			for(int column: e.getValue())
+				lp.addTerm(column, units.get(unitPerColumn.get(column)).size());
+			if(opened >= 0) lp.addTerm(opened, -min);
+			lp.addGe(opened >= 0 ? 0 : min - nbFixedUsers, "MinimalNumberOfUsers", e.getKey());
+		}
+
+		//current, as a start
+		double[] start = new double[lp.getNbColumns()];
+		int[][] nbUsersPerInstance = new int[types.size()][];
+		for(int t = 0 ; t < types.size(); t++)
+			nbUsersPerInstance[t] = nbFixedUsersPerInstance[t].clone();
+		for(int column = 0 ; column < unitPerColumn.size(); column++)
+		{
+			int unit = unitPerColumn.get(column);
+			if(current.typePerUnit[unit] == typePerColumn.get(column)
+					&& current.instancePerUnit[unit] == instancePerColumn.get(column))
+			{
+				start[column] = 1;
+				nbUsersPerInstance[typePerColumn.get(column)][instancePerColumn.get(column)] +=
+						units.get(unit).size();
+			}
+		}
+		openedPerInstance.forEach((instance, column)->
+		start[column] = nbUsersPerInstance[instance.get(0)][instance.get(1)] > 0 ? 1 : 0);
+
+		double[] values;
+		try(SolverSession session = backend.open(lp))
+		{
+			session.setVerbose(false);
+			session.setTimeLimit(timeLimit);
+			session.setStart(start);
+			if(!session.solve().hasSolution()) return Optional.empty();
+			values = session.getValues();
+		}
+
+		Allocation res = new Allocation(current.typePerUnit.clone(), current.instancePerUnit.clone());
+		res.histogram = current.histogram.copy();
+		for(int column = 0 ; column < unitPerColumn.size(); column++)
+			if(values[column] > 0.5)
+			{
+				int unit = unitPerColumn.get(column);
+				for(User u: units.get(unit))
+					res.histogram.apply(input.getRanks().getRank(u, types.get(current.typePerUnit[unit])),
+							input.getRanks().getRank(u, types.get(typePerColumn.get(column))));
+				res.typePerUnit[unit] = typePerColumn.get(column);
+				res.instancePerUnit[unit] = instancePerColumn.get(column);
+			}
+		res.histogram.commit();
+		return Optional.of(res);
+	}
+
+	private int getNbUsers(List<Integer> fragment)
+	{
+		int res = 0;
+		for(int unit: fragment)
+			res += units.get(unit).size();
+		return res;
+	}
+
+	/**
+	 * @return the ranks the users of fragment give to the resource types their unit ranks
+	 * at most worst (those of the columns of reoptimize), by increasing rank
+	 */
+	private Set<Integer> getRanksWithin(List<Integer> fragment, int worst)
+	{
+		Set<Integer> res = new TreeSet<>();
+		for(int unit: fragment)
+			for(ResourceType type: types)
+				if(getRank(unit, type) <= worst)
+					for(User u: units.get(unit))
+						res.add(input.getRanks().getRank(u, type));
+		return res;
+	}
+
+	/**
+	 * @return the worst rank among the members of unit for type
+	 */
+	private int getRank(int unit, ResourceType type)
+	{
+		int res = 0;
+		for(User u: units.get(unit))
+			res = Integer.max(res, input.getRanks().getRank(u, type));
+		return res;
+	}
+
+	private RankHistogram getHistogram(Allocation allocation)
+	{
+		RankHistogram res = RankHistogram.newInstance(maxRank);
+		for(int unit = 0 ; unit < units.size(); unit++)
+			for(User u: units.get(unit))
+				res.add(input.getRanks().getRank(u, types.get(allocation.typePerUnit[unit])));
+		return res;
+	}
+
+	private Allocation toAllocation(Set<UserResourceInstanceAllocation> allocation)
+	{
+		Map<User, ResourceInstance> resourcePerUser = new HashMap<>();
+		for(UserResourceInstanceAllocation a: allocation)
+			resourcePerUser.put(a.getUser(), a.getResource());
+		Allocation res = new Allocation(new int[units.size()], new int[units.size()]);
+		for(int unit = 0 ; unit < units.size(); unit++)
+		{
+			ResourceInstance ri = resourcePerUser.get(units.get(unit).get(0));
+			res.typePerUnit[unit] = types.indexOf(ri.getResourceType());
+			res.instancePerUnit[unit] = ri.getInstanceNumber();
+		}
+		return res;
+	}
+
+	private Set<UserResourceInstanceAllocation> toAllocation(Allocation allocation)
+	{
+		Set<UserResourceInstanceAllocation> res = new LinkedHashSet<>();
+		for(int unit = 0 ; unit < units.size(); unit++)
+		{
+			ResourceInstance ri = input.getResourceInstancesOf(types.get(allocation.typePerUnit[unit]))
+					.get(allocation.instancePerUnit[unit]);
+			for(User u: units.get(unit))
+				res.add(UserResourceInstanceAllocation.newInstance(u, ri));
+		}
+		return res;
+	}
+
+}
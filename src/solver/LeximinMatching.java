@@ -0,0 +1,488 @@
+package solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+
+import input.ModelExport;
+import input.ProblemInstance;
+import input.ProblemInstance.OwnerDesire;
+import input.RankTable;
+import input.SolveMode;
+import model.ResourceType;
+import model.User;
+
+/**
+ * Optimal allocations without any MIP solve, when instances have no minimal number of users
+ * (getMinNumUsersPerResource() at most 1), owners wish nothing and no allocation is forced:
+ * the problem is then a capacitated matching of the units (see FeasibilityOracle.getUnitsOf)
+ * to the resource instances, each hosting at most getMaxNbUsersPerResource() users.
+ * --the worst rank is the least one for which the FeasibilityOracle finds room for all units,
+ * and only the ranks up to it are allowed;
+ * --the units are then placed one at a time, each along a shortest augmenting path:
+ * the unit enters an instance, which may move one of its units to another
+ * instance, and so on until an instance has room. The cost of a path is the vector of
+ * its changes of the numbers of users per rank, compared from the worst rank down:
+ * entering an instance costs the ranks of the unit for its type, leaving it refunds them.
+ * Each unit only enters the instances of the types within the worst rank for all its members,
+ * enumerated through RankTable;
+ * --the paths are found by Dijkstra on the costs reduced by the potentials of the states,
+ * as in MinCostFlow (the unreached states being raised by the largest distance found,
+ * as the source changes from one unit to the next). With groups, a unit leaving an instance
+ * frees room for all the states of the instance, whose reduced costs may then be negative:
+ * a state is queued again whenever its distance decreases, and the search stops
+ * on a negative cycle;
+ * --each group is a vertex weighing its number of members: an instance entered by
+ * a users may move any of its units that leaves room for them.
+ *
+ * Without groups, the paths are those of the residual network of the matching,
+ * hence the histogram of the ranks is minimal (successive shortest paths);
+ * as the weighted objective of Solver.setObjectiveToMinimize never prefers an allocation
+ * with more users at the worst rank where two allocations differ, it is optimal for it too.
+ * With groups, the paths found may miss better ones, isOptimal tells whether the allocation
+ * meets the bound of the matching to the resource types that may spread groups.
+ */
+public class LeximinMatching {
+
+	private final ProblemInstance input;
+	private final List<List<User>> units;
+	private final List<ResourceType> types;
+	private final int max;
+	private final int worstRank;
+	private final int nbRanks;
+	/**
+	 * the types (indexes in types) that all the members of each unit rank at most worstRank,
+	 * by increasing index
+	 */
+	private final int[][] typesPerUnit;
+	/**
+	 * the number of members of each unit at each rank, for each of its typesPerUnit
+	 */
+	private final int[][][] costPerUnitAndType;
+	/**
+	 * the index of the first instance of each type, followed by the number of instances
+	 */
+	private final int[] firstInstancePerType;
+	private final int[] typePerInstance;
+
+	private final int[] instancePerUnit;
+	private final int[] nbUsersPerInstance;
+	private final List<List<Integer>> unitsPerInstance = new ArrayList<>();
+
+	/**
+	 * the states of the search for a path: the units to be moved,
+	 * then each instance entered by 1 to max users
+	 */
+	private final int[][] potentialPerState;
+	/**
+	 * the distances of the last search, reduced by the potentials
+	 */
+	private final int[][] distancePerState;
+	private final boolean[] isReached;
+	private final int[] previousStatePerState;
+	private boolean isNegativeCycleFound;
+
+	private LeximinMatching(ProblemInstance input, List<List<User>> units, int worstRank) {
+		this.input = input;
+		this.units = units;
+		RankTable ranks = input.getRanks();
+		this.types = ranks.getResourceTypes();
+		this.max = input.getMaxNbUsersPerResource();
+		this.worstRank = worstRank;
+		this.nbRanks = worstRank + 1;
+
+		int[] indexPerTypeId = new int[types.stream().mapToInt(ResourceType::getId).max().orElse(-1) + 1];
+		for(int t = 0 ; t < types.size(); t++)
+			indexPerTypeId[types.get(t).getId()] = t;
+		typesPerUnit = new int[units.size()][];
+		costPerUnitAndType = new int[units.size()][][];
+		for(int unit = 0 ; unit < units.size(); unit++)
+		{
+			List<User> members = units.get(unit);
+			Map<Integer, Integer> nbMembersPerType = new TreeMap<>();
+			for(User u: members)
+				ranks.forEachResourceTypeWithin(u, worstRank,
+						id->nbMembersPerType.merge(indexPerTypeId[id], 1, Integer::sum));
+			typesPerUnit[unit] = nbMembersPerType.entrySet().stream()
+					.filter(x->x.getValue() == members.size())
+					.mapToInt(Map.Entry::getKey).toArray();
+			costPerUnitAndType[unit] = new int[typesPerUnit[unit].length][nbRanks];
+			for(int i = 0 ; i < typesPerUnit[unit].length; i++)
+				for(User u: members)
+					costPerUnitAndType[unit][i][ranks.getRank(u, types.get(typesPerUnit[unit][i]))]++;
+		}
+
+		firstInstancePerType = new int[types.size() + 1];
+		for(int t = 0 ; t < types.size(); t++)
+			firstInstancePerType[t + 1] = firstInstancePerType[t] + ranks.getAmountOf(types.get(t));
+		int nbInstances = firstInstancePerType[types.size()];
+		typePerInstance = new int[nbInstances];
+		for(int t = 0 ; t < types.size(); t++)
+			Arrays.fill(typePerInstance, firstInstancePerType[t], firstInstancePerType[t + 1], t);
+
+		instancePerUnit = new int[units.size()];
+		Arrays.fill(instancePerUnit, -1);
+		nbUsersPerInstance = new int[nbInstances];
+		for(int i = 0 ; i < nbInstances; i++)
+			unitsPerInstance.add(new ArrayList<>());
+
+		int nbStates = units.size() + nbInstances * max;
+		potentialPerState = new int[nbStates][nbRanks];
+		distancePerState = new int[nbStates][nbRanks];
+		isReached = new boolean[nbStates];
+		previousStatePerState = new int[nbStates];
+	}
+
+	/**
+	 * @param input
+	 * @return true if the allocation of input is a matching this class solves
+	 */
+	public static boolean isApplicable(ProblemInstance input)
+	{
+		return input.getMinNumUsersPerResource() <= 1
+				&& input.getOwnerAllocationPreferences().equals(OwnerDesire.NO_DESIRE)
+				&& input.getHardConstraints().isEmpty()
+				&& input.getModelExport().equals(ModelExport.NONE)
+				&& (input.getSolveMode().equals(SolveMode.WEIGHTED)
+						|| input.getSolveMode().equals(SolveMode.LEXIMIN));
+	}
+
+	/**
+	 * @param input for which isApplicable holds
+	 * @return an allocation of the least worst rank for the relaxation of FeasibilityOracle
+	 * (optimal if there are no groups), if the matching finds one
+	 */
+	public static Optional<Set<UserResourceInstanceAllocation>> getAllocation(ProblemInstance input)
+	{
+		long start = System.currentTimeMillis();
+		Optional<LeximinMatching> matching = newInstance(input);
+		if(!matching.isPresent())
+			return Optional.empty();
+		for(int unit = 0 ; unit < matching.get().units.size(); unit++)
+			if(!matching.get().place(unit))
+			{
+				System.out.println("Leximin matching: no room found for the units within rank "
+						+matching.get().worstRank);
+				return Optional.empty();
+			}
+		Set<UserResourceInstanceAllocation> res = matching.get().toAllocation();
+		System.out.println("Leximin matching: "+RankHistogram.newInstance(res, input)+" ("
+				+(System.currentTimeMillis() - start)+"ms)");
+		return Optional.of(res);
+	}
+
+	/**
+	 * @param input for which isApplicable holds
+	 * @param allocation
+	 * @return true if the histogram of the ranks of allocation is at most the one of the optimal
+	 * matching of the units to the resource types, each type hosting #instances x max users
+	 * and the groups being spread at will (a relaxation of the matching to the instances,
+	 * which it matches without groups)
+	 */
+	public static boolean isOptimal(ProblemInstance input, Set<UserResourceInstanceAllocation> allocation)
+	{
+		Optional<LeximinMatching> matching = newInstance(input);
+		if(!matching.isPresent()) return false;
+		RankHistogram histogram = RankHistogram.newInstance(allocation, input);
+		long[] bound = matching.get().getBound();
+		boolean res = bound != null && histogram.getWorstRank() <= matching.get().worstRank;
+		for(int rank = matching.get().worstRank ; rank >= 0 && res; rank--)
+		{
+			long scaled = (long)matching.get().getScale() * histogram.getNbUsersAt(rank);
+			if(scaled != bound[rank])
+			{
+				res = scaled < bound[rank];
+				break;
+			}
+		}
+		if(!res)
+			System.out.println("Leximin matching: "+histogram+" above the bound of the matching "
+					+ "spreading the groups");
+		return res;
+	}
+
+	/**
+	 * @return the matching of the units, with none placed yet, within the least worst rank
+	 * of FeasibilityOracle, if any
+	 */
+	private static Optional<LeximinMatching> newInstance(ProblemInstance input)
+	{
+		List<List<User>> units = FeasibilityOracle.getUnitsOf(input);
+		if(units.stream().anyMatch(x->x.size() > input.getMaxNbUsersPerResource()))
+			return Optional.empty();
+		FeasibilityOracle oracle = FeasibilityOracle.newInstance(input, units);
+		int worstRank = InsatisfactionBounds.getLowerBound(input, oracle);
+		if(!oracle.isFeasible(worstRank))
+			return Optional.empty();
+		return Optional.of(new LeximinMatching(input, units, worstRank));
+	}
+
+	/**
+	 * Places unit along a shortest path of moves
+	 * @return false, with nothing changed, if no path was found
+	 */
+	private boolean place(int unit)
+	{
+		Arrays.fill(isReached, false);
+		isNegativeCycleFound = false;
+		Arrays.fill(distancePerState[unit], 0);
+		isReached[unit] = true;
+		previousStatePerState[unit] = -1;
+		//each entry is a distance, followed by its state
+		PriorityQueue<int[]> queue = new PriorityQueue<>(LeximinMatching::compare);
+		queue.add(toEntry(unit));
+		while(!queue.isEmpty() && !isNegativeCycleFound)
+		{
+			int[] head = queue.poll();
+			int state = head[nbRanks];
+			if(compare(head, distancePerState[state]) > 0) continue;
+			if(state < units.size())
+			{
+				//the unit enters an instance of another type, or another instance of its type
+				int current = instancePerUnit[state];
+				for(int i = 0 ; i < typesPerUnit[state].length; i++)
+				{
+					int t = typesPerUnit[state][i];
+					for(int instance = firstInstancePerType[t]; instance < firstInstancePerType[t + 1]; instance++)
+						if(instance != current)
+							update(state, getState(instance, units.get(state).size()),
+									costPerUnitAndType[state][i], 1, queue);
+				}
+			}
+			else
+			{
+				//the instance moves one of its units, which leaves room for the users entering it
+				//and refunds the ranks of the unit there
+				int instance = getInstance(state);
+				for(int other: unitsPerInstance.get(instance))
+					if(nbUsersPerInstance[instance] + getNbUsers(state) - units.get(other).size() <= max)
+						update(state, other, getCost(other, typePerInstance[instance]), -1, queue);
+			}
+		}
+		if(isNegativeCycleFound) return false;
+
+		//the instances with room for the users entering them, the closest first
+		//(by their distance, not reduced)
+		List<Integer> lastStates = new ArrayList<>();
+		for(int state = units.size() ; state < isReached.length; state++)
+			if(isReached[state] && nbUsersPerInstance[getInstance(state)] + getNbUsers(state) <= max)
+				lastStates.add(state);
+		lastStates.sort((x,y)->{
+			for(int rank = nbRanks - 1 ; rank >= 0; rank--)
+			{
+				int difference = distancePerState[x][rank] + potentialPerState[x][rank]
+						- distancePerState[y][rank] - potentialPerState[y][rank];
+				if(difference != 0) return difference;
+			}
+			return 0;
+		});
+		for(int last: lastStates)
+		{
+			List<int[]> moves = getMoves(last);
+			if(moves.isEmpty()) continue;
+			apply(moves);
+			updatePotentials();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Adds the distances of the last search to the potentials, the largest one to those
+	 * of the states not reached, so that the reduced costs of the moves stay non-negative
+	 * (without groups)
+	 */
+	private void updatePotentials()
+	{
+		int[] largest = new int[nbRanks];
+		for(int state = 0 ; state < isReached.length; state++)
+			if(isReached[state] && compare(distancePerState[state], largest) > 0)
+				largest = distancePerState[state];
+		for(int state = 0 ; state < isReached.length; state++)
+		{
+			int[] distance = isReached[state] ? distancePerState[state] : largest;
+			for(int rank = 0 ; rank < nbRanks; rank++)
+				potentialPerState[state][rank] += distance[rank];
+		}
+	}
+
+	/**
+	 * @return the number of members of unit at each rank for type t, which must be within 
+	 * the worst rank
+	 */
+	private int[] getCost(int unit, int t)
+	{
+		return costPerUnitAndType[unit][Arrays.binarySearch(typesPerUnit[unit], t)];
+	}
+
+	/**
+	 * @return the moves of the path to last (a unit and its new instance), empty if it goes 
+	 * twice through an instance of a group, as the room of an instance is its room before 
+	 * the path
+	 */
+	private List<int[]> getMoves(int last)
+	{
+		List<int[]> res = new ArrayList<>();
+		Set<Integer> visited = new HashSet<>();
+		for(int state = last; state >= 0; state = previousStatePerState[previousStatePerState[state]])
+		{
+			int moved = previousStatePerState[state];
+			if(!visited.add(moved) || !visited.add(units.size() + getInstance(state)))
+				return new ArrayList<>();
+			res.add(new int[] {moved, getInstance(state)});
+		}
+		return res;
+	}
+
+	private void apply(List<int[]> moves)
+	{
+		for(int[] move: moves)
+		{
+			int moved = move[0];
+			if(instancePerUnit[moved] >= 0)
+			{
+				nbUsersPerInstance[instancePerUnit[moved]] -= units.get(moved).size();
+				unitsPerInstance.get(instancePerUnit[moved]).remove((Integer)moved);
+			}
+			instancePerUnit[moved] = move[1];
+			nbUsersPerInstance[move[1]] += units.get(moved).size();
+			unitsPerInstance.get(move[1]).add(moved);
+		}
+	}
+
+	/**
+	 * Sets the distance of next to the one of state plus sign x cost, reduced by the potentials, 
+	 * if lower, and queues next
+	 */
+	private void update(int state, int next, int[] cost, int sign, PriorityQueue<int[]> queue)
+	{
+		int[] distance = distancePerState[state];
+		int[] nextDistance = distancePerState[next];
+		int[] potential = potentialPerState[state];
+		int[] nextPotential = potentialPerState[next];
+		if(isReached[next])
+		{
+			int comparison = 0;
+			for(int rank = nbRanks - 1 ; rank >= 0 && comparison == 0; rank--)
+				comparison = distance[rank] + sign * cost[rank] + potential[rank] - nextPotential[rank]
+						- nextDistance[rank];
+			if(comparison >= 0) return;
+			//next is lowered through its own descendant
+			for(int ancestor = state; ancestor >= 0; ancestor = previousStatePerState[ancestor])
+				if(ancestor == next)
+				{
+					isNegativeCycleFound = true;
+					return;
+				}
+		}
+		for(int rank = 0 ; rank < nbRanks; rank++)
+			nextDistance[rank] = distance[rank] + sign * cost[rank] + potential[rank] - nextPotential[rank];
+		isReached[next] = true;
+		previousStatePerState[next] = state;
+		queue.add(toEntry(next));
+	}
+
+	private int[] toEntry(int state)
+	{
+		int[] res = Arrays.copyOf(distancePerState[state], nbRanks + 1);
+		res[nbRanks] = state;
+		return res;
+	}
+
+	private int getState(int instance, int nbUsers)
+	{
+		return units.size() + instance * max + nbUsers - 1;
+	}
+
+	private int getInstance(int state)
+	{
+		return (state - units.size()) / max;
+	}
+
+	private int getNbUsers(int state)
+	{
+		return (state - units.size()) % max + 1;
+	}
+
+	/**
+	 * Compares the distances, from the worst rank down, the longest array being 
+	 * a distance followed by its state
+	 */
+	private static int compare(int[] distance, int[] otherDistance)
+	{
+		for(int rank = Integer.min(distance.length, otherDistance.length) - 1 ; rank >= 0; rank--)
+			if(distance[rank] != otherDistance[rank])
+				return Integer.compare(distance[rank], otherDistance[rank]);
+		return 0;
+	}
+
+	private Set<UserResourceInstanceAllocation> toAllocation()
+	{
+		Set<UserResourceInstanceAllocation> res = new HashSet<>();
+		for(int unit = 0 ; unit < units.size(); unit++)
+		{
+			int t = typePerInstance[instancePerUnit[unit]];
+			ResourceInstance ri = input.getResourceInstancesOf(types.get(t))
+					.get(instancePerUnit[unit] - firstInstancePerType[t]);
+			for(User u: units.get(unit))
+				res.add(UserResourceInstanceAllocation.newInstance(u, ri));
+		}
+		return res;
+	}
+
+	/**
+	 * @return the least common multiple of the sizes of the units, by which getBound is scaled
+	 */
+	private int getScale()
+	{
+		int res = 1;
+		for(List<User> unit: units)
+			res = res / gcd(res, unit.size()) * unit.size();
+		return res;
+	}
+
+	/**
+	 * @return the least histogram of the ranks of the matching of the units to the resource types,
+	 * scaled by getScale(), each unit of flow of a group costing the ranks of its members 
+	 * divided by its size; null if the matching cannot give resources to all units
+	 */
+	private long[] getBound()
+	{
+		int scale = getScale();
+		//the units, then the types, the source and the sink
+		int source = units.size() + types.size();
+		int sink = source + 1;
+		MinCostFlow network = MinCostFlow.newInstance(sink + 1, nbRanks);
+		int nbUsers = 0;
+		for(int unit = 0 ; unit < units.size(); unit++)
+		{
+			network.addEdge(source, unit, units.get(unit).size(), new long[nbRanks]);
+			nbUsers += units.get(unit).size();
+			for(int i = 0 ; i < typesPerUnit[unit].length; i++)
+			{
+				long[] cost = new long[nbRanks];
+				for(int rank = 0 ; rank < nbRanks; rank++)
+					cost[rank] = costPerUnitAndType[unit][i][rank] * scale / units.get(unit).size();
+				network.addEdge(unit, units.size() + typesPerUnit[unit][i], units.get(unit).size(), cost);
+			}
+		}
+		for(int t = 0 ; t < types.size(); t++)
+			network.addEdge(units.size() + t, sink,
+					(firstInstancePerType[t + 1] - firstInstancePerType[t]) * max, new long[nbRanks]);
+
+		if(network.push(source, sink, nbUsers) < nbUsers) return null;
+		return network.getCostPerCriterion();
+	}
+
+	private static int gcd(int a, int b)
+	{
+		return b == 0 ? a : gcd(b, a % b);
+	}
+
+}
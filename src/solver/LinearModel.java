@@ -0,0 +1,382 @@
+package solver;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Solver-agnostic mixed integer linear program: minimize objective.x such that
+ * rowLowerBound <= A.x <= rowUpperBound and columnLowerBound <= x <= columnUpperBound.
+ *
+ * Columns and rows are plain int ids, A is stored in compressed sparse row arrays,
+ * bounds and objective in primitive arrays.
+ * Names are only computed when needed (e.g. when writing the model), from
+ * the family and the key given when adding the column or the row.
+ *
+ * Rows are built term by term: addTerm(...) as many times as needed, then
+ * addRow(...) (or addLe, addGe, addEq) closes the pending row.
+ */
+public class LinearModel {
+
+	private int nbColumns = 0;
+	private double[] columnLowerBound = new double[64];
+	private double[] columnUpperBound = new double[64];
+	private boolean[] isInteger = new boolean[64];
+	private double[] objective = new double[64];
+	private String[] familyPerColumn = new String[64];
+	private Object[] keyPerColumn = new Object[64];
+	private double objectiveConstant = 0;
+
+	private int nbRows = 0;
+	private int[] rowStart = new int[65];
+	private double[] rowLowerBound = new double[64];
+	private double[] rowUpperBound = new double[64];
+	private String[] familyPerRow = new String[64];
+	private Object[] keyPerRow = new Object[64];
+
+	private int nbNonZeros = 0;
+	private int[] columnPerNonZero = new int[256];
+	private double[] coefficientPerNonZero = new double[256];
+
+	private LinearModel() {
+	}
+
+	public static LinearModel newInstance()
+	{
+		return new LinearModel();
+	}
+
+	/**
+	 * @param lowerBound
+	 * @param upperBound
+	 * @param integer
+	 * @param family the kind of column, e.g. "ActiveResourceVar" (null if the key suffices)
+	 * @param key the object this column is about, used for naming it 
+	 * (a list for several objects)
+	 * @return the id of the new column
+	 */
+	public int addColumn(double lowerBound, double upperBound, boolean integer,
+			String family, Object key)
+	{
+		if(nbColumns == columnLowerBound.length)
+		{
+			int length = 2 * nbColumns;
+			columnLowerBound = Arrays.copyOf(columnLowerBound, length);
+			columnUpperBound = Arrays.copyOf(columnUpperBound, length);
+			isInteger = Arrays.copyOf(isInteger, length);
+			objective = Arrays.copyOf(objective, length);
+			familyPerColumn = Arrays.copyOf(familyPerColumn, length);
+			keyPerColumn = Arrays.copyOf(keyPerColumn, length);
+		}
+		columnLowerBound[nbColumns] = lowerBound;
+		columnUpperBound[nbColumns] = upperBound;
+		isInteger[nbColumns] = integer;
+		familyPerColumn[nbColumns] = family;
+		keyPerColumn[nbColumns] = key;
+		return nbColumns++;
+	}
+
+	/**
+	 * @return a copy of this model, that later changes of this model do not affect
+	 * (names are shared, as they are computed from immutable keys)
+	 */
+	public LinearModel copy()
+	{
+		LinearModel res = new LinearModel();
+		res.nbColumns = nbColumns;
+		res.columnLowerBound = columnLowerBound.clone();
+		res.columnUpperBound = columnUpperBound.clone();
+		res.isInteger = isInteger.clone();
+		res.objective = objective.clone();
+		res.familyPerColumn = familyPerColumn.clone();
+		res.keyPerColumn = keyPerColumn.clone();
+		res.objectiveConstant = objectiveConstant;
+		res.nbRows = nbRows;
+		res.rowStart = rowStart.clone();
+		res.rowLowerBound = rowLowerBound.clone();
+		res.rowUpperBound = rowUpperBound.clone();
+		res.familyPerRow = familyPerRow.clone();
+		res.keyPerRow = keyPerRow.clone();
+		res.nbNonZeros = nbNonZeros;
+		res.columnPerNonZero = columnPerNonZero.clone();
+		res.coefficientPerNonZero = coefficientPerNonZero.clone();
+		return res;
+	}
+
+	public int addBinaryColumn(String family, Object key)
+	{
+		return addColumn(0, 1, true, family, key);
+	}
+
+	/**
+	 * Adds coefficient x column to the pending row
+	 */
+	public void addTerm(int column, double coefficient)
+	{
+		if(nbNonZeros == columnPerNonZero.length)
+		{
+			columnPerNonZero = Arrays.copyOf(columnPerNonZero, 2 * nbNonZeros);
+			coefficientPerNonZero = Arrays.copyOf(coefficientPerNonZero, 2 * nbNonZeros);
+		}
+		columnPerNonZero[nbNonZeros] = column;
+		coefficientPerNonZero[nbNonZeros++] = coefficient;
+	}
+
+	/**
+	 * Closes the pending row, as lowerBound <= pending row <= upperBound
+	 * @return the id of the new row
+	 */
+	public int addRow(double lowerBound, double upperBound, String family, Object key)
+	{
+		if(nbRows == rowLowerBound.length)
+		{
+			int length = 2 * nbRows;
+			rowStart = Arrays.copyOf(rowStart, length + 1);
+			rowLowerBound = Arrays.copyOf(rowLowerBound, length);
+			rowUpperBound = Arrays.copyOf(rowUpperBound, length);
+			familyPerRow = Arrays.copyOf(familyPerRow, length);
+			keyPerRow = Arrays.copyOf(keyPerRow, length);
+		}
+		rowLowerBound[nbRows] = lowerBound;
+		rowUpperBound[nbRows] = upperBound;
+		familyPerRow[nbRows] = family;
+		keyPerRow[nbRows] = key;
+		rowStart[++nbRows] = nbNonZeros;
+		return nbRows - 1;
+	}
+
+	public int addLe(double upperBound, String family, Object key)
+	{
+		return addRow(Double.NEGATIVE_INFINITY, upperBound, family, key);
+	}
+
+	public int addGe(double lowerBound, String family, Object key)
+	{
+		return addRow(lowerBound, Double.POSITIVE_INFINITY, family, key);
+	}
+
+	public int addEq(double value, String family, Object key)
+	{
+		return addRow(value, value, family, key);
+	}
+
+	/**
+	 * Removes the rows r such that isRemoved[r], the remaining ones being renumbered
+	 * in the same order
+	 */
+	public void removeRows(boolean[] isRemoved)
+	{
+		int nbKeptRows = 0;
+		int nbKeptNonZeros = 0;
+		for(int row = 0 ; row < nbRows; row++)
+		{
+			if(isRemoved[row]) continue;
+			for(int nz = rowStart[row]; nz < rowStart[row + 1]; nz++)
+			{
+				columnPerNonZero[nbKeptNonZeros] = columnPerNonZero[nz];
+				coefficientPerNonZero[nbKeptNonZeros++] = coefficientPerNonZero[nz];
+			}
+			rowLowerBound[nbKeptRows] = rowLowerBound[row];
+			rowUpperBound[nbKeptRows] = rowUpperBound[row];
+			familyPerRow[nbKeptRows] = familyPerRow[row];
+			keyPerRow[nbKeptRows] = keyPerRow[row];
+			rowStart[++nbKeptRows] = nbKeptNonZeros;
+		}
+		nbRows = nbKeptRows;
+		nbNonZeros = nbKeptNonZeros;
+	}
+
+	public void setObjective(int column, double coefficient)
+	{
+		objective[column] = coefficient;
+	}
+
+	public void setObjectiveConstant(double constant)
+	{
+		objectiveConstant = constant;
+	}
+
+	public void setColumnUpperBound(int column, double upperBound)
+	{
+		columnUpperBound[column] = upperBound;
+	}
+
+	public void setRowBounds(int row, double lowerBound, double upperBound)
+	{
+		rowLowerBound[row] = lowerBound;
+		rowUpperBound[row] = upperBound;
+	}
+
+	public int getNbColumns() {
+		return nbColumns;
+	}
+
+	public int getNbRows() {
+		return nbRows;
+	}
+
+	public int getNbNonZeros() {
+		return rowStart[nbRows];
+	}
+
+	public double getColumnLowerBound(int column) {
+		return columnLowerBound[column];
+	}
+
+	public double getColumnUpperBound(int column) {
+		return columnUpperBound[column];
+	}
+
+	public boolean isInteger(int column) {
+		return isInteger[column];
+	}
+
+	public double getObjective(int column) {
+		return objective[column];
+	}
+
+	/**
+	 * @return a copy of the objective coefficient of each column
+	 */
+	public double[] getObjectiveCoefficients() {
+		return Arrays.copyOf(objective, nbColumns);
+	}
+
+	public double getObjectiveConstant() {
+		return objectiveConstant;
+	}
+
+	public double getRowLowerBound(int row) {
+		return rowLowerBound[row];
+	}
+
+	public double getRowUpperBound(int row) {
+		return rowUpperBound[row];
+	}
+
+	/**
+	 * The non-zeros of row lie in [getRowStart(row), getRowEnd(row))
+	 */
+	public int getRowStart(int row) {
+		return rowStart[row];
+	}
+
+	public int getRowEnd(int row) {
+		return rowStart[row + 1];
+	}
+
+	public int getColumnOf(int nonZero) {
+		return columnPerNonZero[nonZero];
+	}
+
+	public double getCoefficientOf(int nonZero) {
+		return coefficientPerNonZero[nonZero];
+	}
+
+	/**
+	 * @return the objective value of valuePerColumn, constant included
+	 */
+	public double getObjectiveValue(double[] valuePerColumn) {
+		double res = objectiveConstant;
+		for(int column = 0 ; column < nbColumns; column++)
+			res += objective[column] * valuePerColumn[column];
+		return res;
+	}
+
+	/**
+	 * @return true if valuePerColumn meets all the bounds, rows and integrality
+	 * requirements, up to tolerance
+	 */
+	public boolean isFeasible(double[] valuePerColumn, double tolerance) {
+		for(int column = 0 ; column < nbColumns; column++)
+		{
+			double x = valuePerColumn[column];
+			if(x < columnLowerBound[column] - tolerance || x > columnUpperBound[column] + tolerance
+					|| (isInteger[column] && Math.abs(x - Math.rint(x)) > tolerance))
+				return false;
+		}
+		for(int row = 0 ; row < nbRows; row++)
+		{
+			double value = 0;
+			for(int nz = rowStart[row]; nz < rowStart[row + 1]; nz++)
+				value += coefficientPerNonZero[nz] * valuePerColumn[columnPerNonZero[nz]];
+			if(value < rowLowerBound[row] - tolerance || value > rowUpperBound[row] + tolerance)
+				return false;
+		}
+		return true;
+	}
+
+	public String getColumnName(int column) {
+		return toName(familyPerColumn[column], keyPerColumn[column], "x", column);
+	}
+
+	public String getRowName(int row) {
+		return toName(familyPerRow[row], keyPerRow[row], "c", row);
+	}
+
+	private static final int MAX_NAME_LENGTH = 255;
+
+	/**
+	 * Names read back by LP and MPS readers: FAMILY#ID(KEY), or x#ID(KEY) 
+	 * (c#ID(KEY) for rows) when there is no family.
+	 * The name starts with an ASCII letter other than e, which LP readers take for
+	 * an exponent, holds only ASCII letters, digits and _#(),. and at most 
+	 * MAX_NAME_LENGTH characters. The id makes names unique whatever the keys.
+	 */
+	private static String toName(String family, Object key, String prefix, int id)
+	{
+		StringBuilder res = new StringBuilder();
+		if(family == null || family.isEmpty() || !isAsciiLetter(family.charAt(0))
+				|| Character.toLowerCase(family.charAt(0)) == 'e')
+			res.append(prefix);
+		if(family != null)
+		{
+			if(res.length() > 0 && !family.isEmpty()) res.append('_');
+			for(int i = 0 ; i < family.length(); i++)
+			{
+				char c = family.charAt(i);
+				res.append(isAsciiLetter(c) || isAsciiDigit(c) ? c : '_');
+			}
+		}
+		res.append('#').append(id);
+		
+		if(key == null) return res.toString();
+		int keyStart = res.length();
+		res.append('(');
+		if(key instanceof List)
+		{
+			String separator = "";
+			for(Object o: (List<?>)key)
+			{
+				res.append(separator).append(o);
+				separator = ",";
+			}
+		}
+		else res.append(key);
+		res.append(')');
+		for(int i = keyStart + 1 ; i < res.length() - 1; i++)
+		{
+			char c = res.charAt(i);
+			if(!isAsciiLetter(c) && !isAsciiDigit(c) && "_#,.".indexOf(c) < 0)
+				res.setCharAt(i, '_');
+		}
+		if(res.length() > MAX_NAME_LENGTH)
+			res.setLength(MAX_NAME_LENGTH);
+		return res.toString();
+	}
+	
+	private static boolean isAsciiLetter(char c)
+	{
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+	
+	private static boolean isAsciiDigit(char c)
+	{
+		return c >= '0' && c <= '9';
+	}
+
+	public String toString()
+	{
+		return nbColumns+" columns, "+nbRows+" rows, "+getNbNonZeros()+" non-zeros";
+	}
+
+}
@@ -0,0 +1,278 @@
+package solver;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes a LinearModel in LP or (free) MPS format, line by line,
+ * so that large models are never held as a whole in a string.
+ */
+public class LinearModelWriter {
+
+	private static final int TERMS_PER_LINE = 8;
+
+	private LinearModelWriter() {
+	}
+
+	public static void writeLp(LinearModel model, Writer w) throws IOException
+	{
+		w.write("\\ "+model+"\n");
+		w.write("Minimize\n obj:");
+		int nbTerms = 0;
+		for(int column = 0 ; column < model.getNbColumns(); column++)
+			if(model.getObjective(column) != 0)
+				writeTerm(w, model.getObjective(column), model.getColumnName(column), nbTerms++);
+		if(model.getObjectiveConstant() != 0)
+			w.write(" "+toSignedString(model.getObjectiveConstant()));
+		else if(nbTerms == 0 && model.getNbColumns() > 0)
+			writeTerm(w, 0, model.getColumnName(0), nbTerms);
+		w.write("\nSubject To\n");
+
+		for(int row = 0 ; row < model.getNbRows(); row++)
+		{
+			double lower = model.getRowLowerBound(row);
+			double upper = model.getRowUpperBound(row);
+			if(lower == upper)
+				writeLpRow(w, model, row, "", "=", lower);
+			else if(lower == Double.NEGATIVE_INFINITY && upper != Double.POSITIVE_INFINITY)
+				writeLpRow(w, model, row, "", "<=", upper);
+			else if(lower != Double.NEGATIVE_INFINITY && upper == Double.POSITIVE_INFINITY)
+				writeLpRow(w, model, row, "", ">=", lower);
+			else if(lower != Double.NEGATIVE_INFINITY)
+			{
+				writeLpRow(w, model, row, "_lower", ">=", lower);
+				writeLpRow(w, model, row, "_upper", "<=", upper);
+			}
+		}
+
+		w.write("Bounds\n");
+		for(int column = 0 ; column < model.getNbColumns(); column++)
+		{
+			double lower = model.getColumnLowerBound(column);
+			double upper = model.getColumnUpperBound(column);
+			String name = model.getColumnName(column);
+			if(lower == Double.NEGATIVE_INFINITY && upper == Double.POSITIVE_INFINITY)
+				w.write(" "+name+" free\n");
+			else if(lower == upper)
+				w.write(" "+name+" = "+toString(lower)+"\n");
+			else if(lower != 0 || upper != Double.POSITIVE_INFINITY)
+				w.write(" "+(lower == Double.NEGATIVE_INFINITY ? "-inf" : toString(lower))
+						+" <= "+name+" <= "
+						+(upper == Double.POSITIVE_INFINITY ? "+inf" : toString(upper))+"\n");
+		}
+
+		boolean isFirst = true;
+		for(int column = 0 ; column < model.getNbColumns(); column++)
+			if(model.isInteger(column))
+			{
+				if(isFirst) w.write("Generals\n");
+				isFirst = false;
+				w.write(" "+model.getColumnName(column)+"\n");
+			}
+		w.write("End\n");
+	}
+
+	private static void writeLpRow(Writer w, LinearModel model, int row, String suffix,
+			String sense, double value) throws IOException
+	{
+		w.write(" "+model.getRowName(row)+suffix+":");
+		int nbTerms = 0;
+		for(int nz = model.getRowStart(row); nz < model.getRowEnd(row); nz++)
+			writeTerm(w, model.getCoefficientOf(nz), model.getColumnName(model.getColumnOf(nz)), nbTerms++);
+		if(nbTerms == 0 && model.getNbColumns() > 0)
+			writeTerm(w, 0, model.getColumnName(0), nbTerms);
+		w.write(" "+sense+" "+toString(value)+"\n");
+	}
+
+	private static void writeTerm(Writer w, double coefficient, String column, int position) throws IOException
+	{
+		if(position > 0 && position % TERMS_PER_LINE == 0)
+			w.write("\n  ");
+		w.write(" "+toSignedString(coefficient)+" "+column);
+	}
+
+	/**
+	 * Free MPS, the columns being listed one after the other (the rows are transposed first)
+	 */
+	public static void writeMps(LinearModel model, Writer w) throws IOException
+	{
+		int nbColumns = model.getNbColumns();
+		int nbRows = model.getNbRows();
+
+		w.write("* "+model+"\n");
+		w.write("NAME model\nROWS\n N obj\n");
+		for(int row = 0 ; row < nbRows; row++)
+			w.write(" "+getMpsRowType(model, row)+" "+model.getRowName(row)+"\n");
+
+		//transposing the rows
+		int[] columnStart = new int[nbColumns + 1];
+		for(int nz = 0 ; nz < model.getNbNonZeros(); nz++)
+			columnStart[model.getColumnOf(nz) + 1]++;
+		for(int column = 0 ; column < nbColumns; column++)
+			columnStart[column + 1] += columnStart[column];
+		int[] next = columnStart.clone();
+		int[] rowPerNonZero = new int[model.getNbNonZeros()];
+		double[] coefficientPerNonZero = new double[model.getNbNonZeros()];
+		for(int row = 0 ; row < nbRows; row++)
+			for(int nz = model.getRowStart(row); nz < model.getRowEnd(row); nz++)
+			{
+				int position = next[model.getColumnOf(nz)]++;
+				rowPerNonZero[position] = row;
+				coefficientPerNonZero[position] = model.getCoefficientOf(nz);
+			}
+
+		w.write("COLUMNS\n");
+		boolean isInIntegerSection = false;
+		int nbMarkers = 0;
+		for(int column = 0 ; column < nbColumns; column++)
+		{
+			if(model.isInteger(column) != isInIntegerSection)
+			{
+				isInIntegerSection = model.isInteger(column);
+				w.write(" MARKER"+(nbMarkers++)+" 'MARKER' "
+						+(isInIntegerSection ? "'INTORG'" : "'INTEND'")+"\n");
+			}
+			String name = model.getColumnName(column);
+			if(model.getObjective(column) != 0 || columnStart[column] == columnStart[column + 1])
+				w.write(" "+name+" obj "+toString(model.getObjective(column))+"\n");
+			for(int nz = columnStart[column]; nz < columnStart[column + 1]; nz++)
+				w.write(" "+name+" "+model.getRowName(rowPerNonZero[nz])
+				+" "+toString(coefficientPerNonZero[nz])+"\n");
+		}
+		if(isInIntegerSection)
+			w.write(" MARKER"+nbMarkers+" 'MARKER' 'INTEND'\n");
+
+		w.write("RHS\n");
+		if(model.getObjectiveConstant() != 0)
+			w.write(" rhs obj "+toString(-model.getObjectiveConstant())+"\n");
+		for(int row = 0 ; row < nbRows; row++)
+		{
+			double rhs = getMpsRhs(model, row);
+			if(rhs != 0)
+				w.write(" rhs "+model.getRowName(row)+" "+toString(rhs)+"\n");
+		}
+
+		w.write("RANGES\n");
+		for(int row = 0 ; row < nbRows; row++)
+			if(isRanged(model, row))
+				w.write(" rng "+model.getRowName(row)+" "
+						+toString(model.getRowUpperBound(row) - model.getRowLowerBound(row))+"\n");
+
+		w.write("BOUNDS\n");
+		for(int column = 0 ; column < nbColumns; column++)
+		{
+			double lower = model.getColumnLowerBound(column);
+			double upper = model.getColumnUpperBound(column);
+			String name = model.getColumnName(column);
+			if(lower == Double.NEGATIVE_INFINITY && upper == Double.POSITIVE_INFINITY)
+			{
+				w.write(" FR bnd "+name+"\n");
+				continue;
+			}
+			if(lower == upper)
+			{
+				w.write(" FX bnd "+name+" "+toString(lower)+"\n");
+				continue;
+			}
+			if(lower == Double.NEGATIVE_INFINITY)
+				w.write(" MI bnd "+name+"\n");
+			else if(lower != 0)
+				w.write(" LO bnd "+name+" "+toString(lower)+"\n");
+			if(upper != Double.POSITIVE_INFINITY)
+				w.write(" UP bnd "+name+" "+toString(upper)+"\n");
+			else if(model.isInteger(column))
+				w.write(" PL bnd "+name+"\n");
+		}
+		w.write("ENDATA\n");
+	}
+
+	/**
+	 * Sizes and ranges of the absolute values of the non-zero finite coefficients,
+	 * e.g. for spotting badly scaled models without dumping them
+	 */
+	public static void writeSummary(LinearModel model, Writer w) throws IOException
+	{
+		int nbIntegers = 0;
+		double[] matrixRange = newRange();
+		double[] objectiveRange = newRange();
+		double[] rowBoundRange = newRange();
+		double[] columnBoundRange = newRange();
+		for(int column = 0 ; column < model.getNbColumns(); column++)
+		{
+			if(model.isInteger(column)) nbIntegers++;
+			addTo(objectiveRange, model.getObjective(column));
+			addTo(columnBoundRange, model.getColumnLowerBound(column));
+			addTo(columnBoundRange, model.getColumnUpperBound(column));
+		}
+		for(int row = 0 ; row < model.getNbRows(); row++)
+		{
+			addTo(rowBoundRange, model.getRowLowerBound(row));
+			addTo(rowBoundRange, model.getRowUpperBound(row));
+			for(int nz = model.getRowStart(row); nz < model.getRowEnd(row); nz++)
+				addTo(matrixRange, model.getCoefficientOf(nz));
+		}
+		w.write(model+"\n");
+		w.write("integer columns: "+nbIntegers+"\n");
+		w.write("matrix coefficients: "+toString(matrixRange)+"\n");
+		w.write("objective coefficients: "+toString(objectiveRange)+"\n");
+		w.write("row bounds: "+toString(rowBoundRange)+"\n");
+		w.write("column bounds: "+toString(columnBoundRange)+"\n");
+	}
+
+	private static double[] newRange()
+	{
+		return new double[]{Double.POSITIVE_INFINITY, 0};
+	}
+
+	private static void addTo(double[] range, double value)
+	{
+		if(value == 0 || Double.isInfinite(value)) return;
+		range[0] = Math.min(range[0], Math.abs(value));
+		range[1] = Math.max(range[1], Math.abs(value));
+	}
+
+	private static String toString(double[] range)
+	{
+		if(range[1] == 0) return "none";
+		return "["+range[0]+", "+range[1]+"]";
+	}
+
+	private static boolean isRanged(LinearModel model, int row)
+	{
+		double lower = model.getRowLowerBound(row);
+		double upper = model.getRowUpperBound(row);
+		return lower != upper && lower != Double.NEGATIVE_INFINITY && upper != Double.POSITIVE_INFINITY;
+	}
+
+	private static String getMpsRowType(LinearModel model, int row)
+	{
+		double lower = model.getRowLowerBound(row);
+		double upper = model.getRowUpperBound(row);
+		if(lower == upper) return "E";
+		if(lower != Double.NEGATIVE_INFINITY) return "G";
+		if(upper != Double.POSITIVE_INFINITY) return "L";
+		return "N";
+	}
+
+	private static double getMpsRhs(LinearModel model, int row)
+	{
+		double lower = model.getRowLowerBound(row);
+		if(lower != Double.NEGATIVE_INFINITY) return lower;
+		double upper = model.getRowUpperBound(row);
+		if(upper != Double.POSITIVE_INFINITY) return upper;
+		return 0;
+	}
+
+	private static String toSignedString(double value)
+	{
+		return value < 0 ? "- "+toString(-value) : "+ "+toString(value);
+	}
+
+	private static String toString(double value)
+	{
+		if(value == Math.rint(value) && Math.abs(value) < 1e15)
+			return Long.toString((long)value);
+		return Double.toString(value);
+	}
+
+}
@@ -0,0 +1,677 @@
+package solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.IntStream;
+
+import input.ProblemInstance;
+import input.RankTable;
+import model.ResourceType;
+import model.User;
+
+/**
+ * Allocations found without any MIP solve, on the matrix of the ranks of the units
+ * (see FeasibilityOracle.getUnitsOf) for each resource type:
+ * --a greedy construction gives each unit in turn the best ranked resource type that still
+ * has room, the unit whose best option is the worst going first (kept in a sorted set,
+ * a unit being moved only when the resource type of its best option runs out of room for it);
+ * --a repair empties the instances hosting less than the minimal number of users,
+ * or fills them with units that other instances can spare;
+ * --a local search applies any of the following changes that improves the histogram of
+ * the ranks (fewer users at the worst rank, then at the next one...), until none does:
+ * moving a unit to another instance, swapping two units,
+ * exchanging a group with as many single users of another instance.
+ *
+ * The ranks of each unit are stored sparsely, as in RankTable: those of the resource types
+ * mentioned by one of its members, and a default rank for all the others.
+ * Capacities, the minimal number of users per used instance and the hard constraints
+ * are kept throughout;
+ * the wishes of the owners are left to the exact solve.
+ * The allocation found bounds the worst rank from above and is a start for the exact solve.
+ */
+public class LocalSearch {
+
+	private final ProblemInstance input;
+	private final List<List<User>> units;
+	private final List<ResourceType> types;
+	private final int max;
+	private final int min;
+	private final UnitRanks[] ranksPerUnit;
+	private final int[] typePerUnit;
+	private final int[] instancePerUnit;
+	private final boolean[] isFixed;
+	private final int[][] nbUsersPerInstance;
+	private int nbUnderFilledInstances = 0;
+
+	/**
+	 * the ranks of the users in the current state, set by improve
+	 */
+	private final RankHistogram histogram;
+
+	private int nbMoves = 0;
+	private int nbSwaps = 0;
+	private int nbGroupExchanges = 0;
+
+	/**
+	 * The ranks of a unit: for the resource types mentioned by one of its members
+	 * (by increasing index in types), and a default for the others, which no member mentions
+	 */
+	private static class UnitRanks {
+		private final int[] mentionedTypes;
+		/**
+		 * the worst rank among the members, for each mentioned type
+		 */
+		private final int[] rankPerMentionedType;
+		private final int[][] memberRanksPerMentionedType;
+		private final int defaultRank;
+		private final int[] defaultMemberRanks;
+		/**
+		 * the positions in mentionedTypes of the types ranked better than defaultRank,
+		 * then of those ranked worse, by increasing rank (then index)
+		 */
+		private final int[] betterTypes;
+		private final int[] worseTypes;
+
+		private UnitRanks(int[] mentionedTypes, int[] rankPerMentionedType,
+				int[][] memberRanksPerMentionedType, int defaultRank, int[] defaultMemberRanks) {
+			this.mentionedTypes = mentionedTypes;
+			this.rankPerMentionedType = rankPerMentionedType;
+			this.memberRanksPerMentionedType = memberRanksPerMentionedType;
+			this.defaultRank = defaultRank;
+			this.defaultMemberRanks = defaultMemberRanks;
+			this.betterTypes = IntStream.range(0, mentionedTypes.length)
+					.filter(x->rankPerMentionedType[x] < defaultRank).boxed()
+					.sorted(Comparator.comparingInt(x->rankPerMentionedType[x]))
+					.mapToInt(Integer::intValue).toArray();
+			this.worseTypes = IntStream.range(0, mentionedTypes.length)
+					.filter(x->rankPerMentionedType[x] > defaultRank).boxed()
+					.sorted(Comparator.comparingInt(x->rankPerMentionedType[x]))
+					.mapToInt(Integer::intValue).toArray();
+		}
+
+		private int getRank(int t)
+		{
+			int index = Arrays.binarySearch(mentionedTypes, t);
+			return index < 0 ? defaultRank : rankPerMentionedType[index];
+		}
+
+		private int getRank(int t, int member)
+		{
+			int index = Arrays.binarySearch(mentionedTypes, t);
+			return index < 0 ? defaultMemberRanks[member] : memberRanksPerMentionedType[index][member];
+		}
+	}
+
+	private LocalSearch(ProblemInstance input, List<List<User>> units) {
+		this.input = input;
+		this.units = units;
+		RankTable ranks = input.getRanks();
+		this.types = ranks.getResourceTypes();
+		this.max = input.getMaxNbUsersPerResource();
+		this.min = input.getMinNumUsersPerResource();
+
+		int[] indexPerTypeId = new int[types.stream().mapToInt(ResourceType::getId).max().orElse(-1) + 1];
+		for(int t = 0 ; t < types.size(); t++)
+			indexPerTypeId[types.get(t).getId()] = t;
+		ranksPerUnit = new UnitRanks[units.size()];
+		int maxRank = 0;
+		for(int unit = 0 ; unit < units.size(); unit++)
+		{
+			List<User> members = units.get(unit);
+			Set<Integer> mentioned = new TreeSet<>();
+			int defaultRank = 0;
+			int[] defaultMemberRanks = new int[members.size()];
+			for(int m = 0 ; m < members.size(); m++)
+			{
+				ranks.forEachMentionedResourceType(members.get(m), id->mentioned.add(indexPerTypeId[id]));
+				defaultMemberRanks[m] = ranks.getUnmentionedRank(members.get(m));
+				defaultRank = Integer.max(defaultRank, defaultMemberRanks[m]);
+				maxRank = Integer.max(maxRank, ranks.getWorstRank(members.get(m)));
+			}
+			int[] mentionedTypes = mentioned.stream().mapToInt(Integer::intValue).toArray();
+			int[] rankPerMentionedType = new int[mentionedTypes.length];
+			int[][] memberRanksPerMentionedType = new int[mentionedTypes.length][members.size()];
+			for(int i = 0 ; i < mentionedTypes.length; i++)
+				for(int m = 0 ; m < members.size(); m++)
+				{
+					int rank = ranks.getRank(members.get(m), types.get(mentionedTypes[i]));
+					memberRanksPerMentionedType[i][m] = rank;
+					rankPerMentionedType[i] = Integer.max(rankPerMentionedType[i], rank);
+				}
+			ranksPerUnit[unit] = new UnitRanks(mentionedTypes, rankPerMentionedType,
+					memberRanksPerMentionedType, defaultRank, defaultMemberRanks);
+		}
+
+		typePerUnit = new int[units.size()];
+		Arrays.fill(typePerUnit, -1);
+		instancePerUnit = new int[units.size()];
+		isFixed = new boolean[units.size()];
+		nbUsersPerInstance = new int[types.size()][];
+		for(int t = 0 ; t < types.size(); t++)
+			nbUsersPerInstance[t] = new int[ranks.getAmountOf(types.get(t))];
+		histogram = RankHistogram.newInstance(maxRank);
+	}
+
+	/**
+	 * Runs the local search from the greedy construction of this class and from
+	 * InsatisfactionBounds.getGreedyAllocation
+	 * @param input
+	 * @return the best allocation found, if any
+	 */
+	public static Optional<Set<UserResourceInstanceAllocation>> getAllocation(ProblemInstance input)
+	{
+		long start = System.currentTimeMillis();
+		List<List<User>> units = FeasibilityOracle.getUnitsOf(input);
+		if(units.stream().anyMatch(x->x.size() > input.getMaxNbUsersPerResource()))
+			return Optional.empty();
+
+		List<LocalSearch> searches = new ArrayList<>();
+		LocalSearch built = new LocalSearch(input, units);
+		if(built.build() && built.repair())
+			searches.add(built);
+		Optional<Set<UserResourceInstanceAllocation>> greedy =
+				InsatisfactionBounds.getGreedyAllocation(input);
+		if(greedy.isPresent())
+		{
+			LocalSearch fromGreedy = new LocalSearch(input, units);
+			fromGreedy.load(greedy.get());
+			searches.add(fromGreedy);
+		}
+		if(searches.isEmpty()) return Optional.empty();
+
+		for(LocalSearch search: searches)
+			search.improve();
+		LocalSearch best = searches.stream()
+				.min(Comparator.comparing(x->x.histogram))
+				.get();
+		Set<UserResourceInstanceAllocation> res = best.toAllocation();
+		System.out.println("Local search: "+best.histogram
+		+" after "+best.nbMoves+" moves, "+best.nbSwaps+" swaps, "
+		+best.nbGroupExchanges+" group exchanges ("+(System.currentTimeMillis() - start)+"ms)");
+		return Optional.of(res);
+	}
+
+	/**
+	 * Places the units bound by hard constraints, then the other ones, worst-off first
+	 * @return false if a unit has no room left
+	 */
+	private boolean build()
+	{
+		Map<User, Integer> unitPerUser = new HashMap<>();
+		for(int unit = 0 ; unit < units.size(); unit++)
+			for(User u: units.get(unit))
+				unitPerUser.put(u, unit);
+		Map<ResourceType, Integer> indexPerType = new HashMap<>();
+		for(int t = 0 ; t < types.size(); t++)
+			indexPerType.put(types.get(t), t);
+
+		for(UserResourceInstanceAllocation hc: input.getHardConstraints())
+		{
+			int unit = unitPerUser.get(hc.getUser());
+			int t = indexPerType.get(hc.getResource().getResourceType());
+			int instance = hc.getResource().getInstanceNumber();
+			if(isFixed[unit])
+			{
+				if(typePerUnit[unit] != t || instancePerUnit[unit] != instance) return false;
+				continue;
+			}
+			if(nbUsersPerInstance[t][instance] + units.get(unit).size() > max) return false;
+			isFixed[unit] = true;
+			place(unit, t, instance);
+		}
+
+		//the resource types of each unit, by increasing rank: cursorPerUnit is a position 
+		//in the order of getTypeAt, the types before it having no room left for the unit;
+		//each unit watches the type at its cursor, until this type runs out of room for it
+		int[] cursorPerUnit = new int[units.size()];
+		int[] optionRankPerUnit = new int[units.size()];
+		List<List<Integer>> watchersPerType = new ArrayList<>();
+		int[] roomPerType = new int[types.size()];
+		for(int t = 0 ; t < types.size(); t++)
+		{
+			watchersPerType.add(new ArrayList<>());
+			roomPerType[t] = getRoom(t);
+		}
+		//the worst-off unit first: worst best option, then largest unit
+		TreeSet<Integer> unplaced = new TreeSet<>(Comparator
+				.comparingInt((Integer x)->-optionRankPerUnit[x])
+				.thenComparingInt(x->-units.get(x).size())
+				.thenComparingInt(x->x));
+		for(int unit = 0 ; unit < units.size(); unit++)
+		{
+			if(isFixed[unit]) continue;
+			if(!moveCursor(unit, cursorPerUnit, roomPerType)) return false;
+			optionRankPerUnit[unit] = getRank(unit, getTypeAt(unit, cursorPerUnit[unit]));
+			watchersPerType.get(getTypeAt(unit, cursorPerUnit[unit])).add(unit);
+			unplaced.add(unit);
+		}
+
+		while(!unplaced.isEmpty())
+		{
+			int unit = unplaced.pollFirst();
+			int size = units.get(unit).size();
+			int bestType = getTypeAt(unit, cursorPerUnit[unit]);
+			int rank = optionRankPerUnit[unit];
+			//among the resource types of that rank, one with an opened instance if any
+			for(int cursor = cursorPerUnit[unit]; cursor < getNbPositions(unit); cursor++)
+			{
+				int t = getTypeAt(unit, cursor);
+				if(t < 0) continue;
+				if(getRank(unit, t) != rank) break;
+				int instance = getInstanceWithRoomFor(size, t);
+				if(instance >= 0 && nbUsersPerInstance[t][instance] > 0)
+				{
+					bestType = t;
+					break;
+				}
+			}
+			place(unit, bestType, getInstanceWithRoomFor(size, bestType));
+
+			int room = getRoom(bestType);
+			if(room >= roomPerType[bestType]) continue;
+			roomPerType[bestType] = room;
+			List<Integer> watchers = watchersPerType.get(bestType);
+			watchersPerType.set(bestType, new ArrayList<>());
+			for(int watcher: watchers)
+			{
+				if(typePerUnit[watcher] >= 0) continue;
+				if(units.get(watcher).size() <= room)
+				{
+					watchersPerType.get(bestType).add(watcher);
+					continue;
+				}
+				unplaced.remove(watcher);
+				if(!moveCursor(watcher, cursorPerUnit, roomPerType)) return false;
+				int t = getTypeAt(watcher, cursorPerUnit[watcher]);
+				optionRankPerUnit[watcher] = getRank(watcher, t);
+				watchersPerType.get(t).add(watcher);
+				unplaced.add(watcher);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Moves the cursor of unit to the first resource type with room for it, from its position
+	 * @return false if there is none
+	 */
+	private boolean moveCursor(int unit, int[] cursorPerUnit, int[] roomPerType)
+	{
+		int size = units.get(unit).size();
+		for(; cursorPerUnit[unit] < getNbPositions(unit); cursorPerUnit[unit]++)
+		{
+			int t = getTypeAt(unit, cursorPerUnit[unit]);
+			if(t >= 0 && roomPerType[t] >= size) return true;
+		}
+		return false;
+	}
+
+	private int getNbPositions(int unit)
+	{
+		UnitRanks ranks = ranksPerUnit[unit];
+		return ranks.betterTypes.length + types.size() + ranks.worseTypes.length;
+	}
+
+	/**
+	 * The resource types of unit by increasing rank are listed by the positions:
+	 * those ranked better than the default, then all the types (only the ones of the default
+	 * rank being kept), then those ranked worse
+	 * @return the type at position, -1 if it is skipped
+	 */
+	private int getTypeAt(int unit, int position)
+	{
+		UnitRanks ranks = ranksPerUnit[unit];
+		if(position < ranks.betterTypes.length)
+			return ranks.mentionedTypes[ranks.betterTypes[position]];
+		position -= ranks.betterTypes.length;
+		if(position < types.size())
+			return ranks.getRank(position) == ranks.defaultRank ? position : -1;
+		return ranks.mentionedTypes[ranks.worseTypes[position - types.size()]];
+	}
+
+	/**
+	 * @return the most users an instance of type t can still receive, -1 without instances
+	 */
+	private int getRoom(int t)
+	{
+		int res = -1;
+		for(int nbUsers: nbUsersPerInstance[t])
+			res = Integer.max(res, max - nbUsers);
+		return res;
+	}
+
+	/**
+	 * @return the opened instance of type t with room for nbUsers with the least users,
+	 * else an empty one, else -1
+	 */
+	private int getInstanceWithRoomFor(int nbUsers, int t)
+	{
+		int res = -1;
+		int[] nbUsersPerInstanceOfT = nbUsersPerInstance[t];
+		for(int i = 0 ; i < nbUsersPerInstanceOfT.length; i++)
+			if(nbUsersPerInstanceOfT[i] > 0 && nbUsersPerInstanceOfT[i] + nbUsers <= max
+			&& (res < 0 || nbUsersPerInstanceOfT[i] < nbUsersPerInstanceOfT[res]))
+				res = i;
+		if(res >= 0) return res;
+		for(int i = 0 ; i < nbUsersPerInstanceOfT.length; i++)
+			if(nbUsersPerInstanceOfT[i] == 0 && nbUsers <= max)
+				return i;
+		return -1;
+	}
+
+	/**
+	 * Empties or fills the under-filled instances, the least filled first
+	 * @return false if an under-filled instance can be neither emptied nor filled
+	 */
+	private boolean repair()
+	{
+		while(nbUnderFilledInstances > 0)
+		{
+			int bestType = -1, bestInstance = -1;
+			for(int t = 0 ; t < types.size(); t++)
+				for(int i = 0 ; i < nbUsersPerInstance[t].length; i++)
+					if(isUnderFilled(nbUsersPerInstance[t][i]) && (bestType < 0
+							|| nbUsersPerInstance[t][i] < nbUsersPerInstance[bestType][bestInstance]))
+					{
+						bestType = t;
+						bestInstance = i;
+					}
+			if(!empty(bestType, bestInstance) && !fill(bestType, bestInstance))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Moves each unit of the instance to the opened instance with room where its rank is the best
+	 * @return false, with nothing changed, if a unit cannot be moved
+	 */
+	private boolean empty(int t, int instance)
+	{
+		List<int[]> moved = new ArrayList<>();
+		for(int unit = 0 ; unit < units.size(); unit++)
+		{
+			if(typePerUnit[unit] != t || instancePerUnit[unit] != instance) continue;
+			int size = units.get(unit).size();
+			int bestType = -1, bestInstance = -1;
+			if(!isFixed[unit])
+				for(int other = 0 ; other < types.size(); other++)
+					for(int i = 0 ; i < nbUsersPerInstance[other].length; i++)
+						if((other != t || i != instance) && nbUsersPerInstance[other][i] > 0
+						&& nbUsersPerInstance[other][i] + size <= max
+						&& (bestType < 0 || getRank(unit, other) < getRank(unit, bestType)))
+						{
+							bestType = other;
+							bestInstance = i;
+						}
+			if(bestType < 0)
+			{
+				undo(moved);
+				return false;
+			}
+			moved.add(new int[] {unit, t, instance});
+			place(unit, bestType, bestInstance);
+		}
+		return true;
+	}
+
+	/**
+	 * Moves into the instance the units of best rank that other instances can spare
+	 * @return false, with nothing changed, if the instance cannot get the minimal number of users
+	 */
+	private boolean fill(int t, int instance)
+	{
+		List<int[]> moved = new ArrayList<>();
+		List<Integer> candidates = new ArrayList<>();
+		for(int unit = 0 ; unit < units.size(); unit++)
+			if(!isFixed[unit] && (typePerUnit[unit] != t || instancePerUnit[unit] != instance))
+				candidates.add(unit);
+		candidates.sort(Comparator.comparingInt(x->getRank(x, t)));
+		for(int unit: candidates)
+		{
+			if(nbUsersPerInstance[t][instance] >= min) break;
+			int size = units.get(unit).size();
+			int left = nbUsersPerInstance[typePerUnit[unit]][instancePerUnit[unit]] - size;
+			if(nbUsersPerInstance[t][instance] + size > max
+					|| (left > 0 && left < min && !isUnderFilled(left + size)))
+				continue;
+			moved.add(new int[] {unit, typePerUnit[unit], instancePerUnit[unit]});
+			place(unit, t, instance);
+		}
+		if(nbUsersPerInstance[t][instance] >= min) return true;
+		undo(moved);
+		return false;
+	}
+
+	private void undo(List<int[]> moved)
+	{
+		for(int i = moved.size() - 1 ; i >= 0; i--)
+			place(moved.get(i)[0], moved.get(i)[1], moved.get(i)[2]);
+	}
+
+	/**
+	 * Sets the state to allocation, which must give each unit a single instance
+	 */
+	private void load(Set<UserResourceInstanceAllocation> allocation)
+	{
+		Map<User, ResourceInstance> resourcePerUser = new HashMap<>();
+		for(UserResourceInstanceAllocation a: allocation)
+			resourcePerUser.put(a.getUser(), a.getResource());
+		Set<UserResourceInstanceAllocation> hardConstraints = input.getHardConstraints();
+		for(int unit = 0 ; unit < units.size(); unit++)
+		{
+			ResourceInstance ri = resourcePerUser.get(units.get(unit).get(0));
+			for(User u: units.get(unit))
+				isFixed[unit] |= hardConstraints.contains(UserResourceInstanceAllocation.newInstance(u, ri));
+			place(unit, types.indexOf(ri.getResourceType()), ri.getInstanceNumber());
+		}
+	}
+
+	/**
+	 * Moves unit to the instance, unplaced units having a negative type
+	 */
+	private void place(int unit, int t, int instance)
+	{
+		int size = units.get(unit).size();
+		if(typePerUnit[unit] >= 0)
+			changeLoad(typePerUnit[unit], instancePerUnit[unit], -size);
+		typePerUnit[unit] = t;
+		instancePerUnit[unit] = instance;
+		changeLoad(t, instance, size);
+	}
+
+	private void changeLoad(int t, int instance, int change)
+	{
+		if(isUnderFilled(nbUsersPerInstance[t][instance])) nbUnderFilledInstances--;
+		nbUsersPerInstance[t][instance] += change;
+		if(isUnderFilled(nbUsersPerInstance[t][instance])) nbUnderFilledInstances++;
+	}
+
+	private boolean isUnderFilled(int nbUsers)
+	{
+		return nbUsers > 0 && nbUsers < min;
+	}
+
+	/**
+	 * @return true if changing the number of users of two distinct instances keeps both
+	 * within the capacity, and at the minimal number of users unless emptied
+	 */
+	private boolean isAllowed(int t1, int instance1, int change1, int t2, int instance2, int change2)
+	{
+		int nbUsers1 = nbUsersPerInstance[t1][instance1] + change1;
+		int nbUsers2 = nbUsersPerInstance[t2][instance2] + change2;
+		return nbUsers1 <= max && nbUsers2 <= max && !isUnderFilled(nbUsers1) && !isUnderFilled(nbUsers2);
+	}
+
+	/**
+	 * Applies improving moves, swaps and group exchanges until none is left
+	 */
+	private void improve()
+	{
+		for(int unit = 0 ; unit < units.size(); unit++)
+			for(int m = 0 ; m < units.get(unit).size(); m++)
+				histogram.add(ranksPerUnit[unit].getRank(typePerUnit[unit], m));
+		boolean isImproved = true;
+		while(isImproved)
+		{
+			isImproved = false;
+			for(int unit = 0 ; unit < units.size(); unit++)
+				if(!isFixed[unit])
+					isImproved |= tryMoves(unit) || trySwaps(unit)
+					|| (units.get(unit).size() > 1 && tryGroupExchanges(unit));
+		}
+	}
+
+	private boolean tryMoves(int unit)
+	{
+		int size = units.get(unit).size();
+		int t = typePerUnit[unit];
+		int instance = instancePerUnit[unit];
+		for(int other = 0 ; other < types.size(); other++)
+		{
+			if(getRank(unit, other) > getRank(unit, t)) continue;
+			boolean isEmptyInstanceTried = false;
+			for(int i = 0 ; i < nbUsersPerInstance[other].length; i++)
+			{
+				if(other == t && i == instance) continue;
+				if(nbUsersPerInstance[other][i] == 0)
+				{
+					if(isEmptyInstanceTried) continue;
+					isEmptyInstanceTried = true;
+				}
+				if(!isAllowed(t, instance, -size, other, i, size)) continue;
+				shift(unit, t, other);
+				if(isImprovement())
+				{
+					place(unit, other, i);
+					nbMoves++;
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private boolean trySwaps(int unit)
+	{
+		int t = typePerUnit[unit];
+		int instance = instancePerUnit[unit];
+		int size = units.get(unit).size();
+		for(int other = 0 ; other < units.size(); other++)
+		{
+			int otherType = typePerUnit[other];
+			int otherInstance = instancePerUnit[other];
+			if(isFixed[other] || otherType == t) continue;
+			//the worst rank involved must decrease or stay
+			int worst = Integer.max(getRank(unit, t), getRank(other, otherType));
+			if(getRank(unit, otherType) > worst || getRank(other, t) > worst) continue;
+			int otherSize = units.get(other).size();
+			if(size != otherSize && !isAllowed(t, instance, otherSize - size,
+					otherType, otherInstance, size - otherSize))
+				continue;
+			shift(unit, t, otherType);
+			shift(other, otherType, t);
+			if(isImprovement())
+			{
+				place(unit, otherType, otherInstance);
+				place(other, t, instance);
+				nbSwaps++;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Tries exchanging group with, for each other opened instance, as many of its single users
+	 * as group has members, the ones that are the best ranked at the instance of group
+	 */
+	private boolean tryGroupExchanges(int group)
+	{
+		int t = typePerUnit[group];
+		int instance = instancePerUnit[group];
+		int size = units.get(group).size();
+		for(int other = 0 ; other < types.size(); other++)
+			for(int i = 0 ; i < nbUsersPerInstance[other].length; i++)
+			{
+				if(other == t || nbUsersPerInstance[other][i] < size) continue;
+				List<Integer> singles = new ArrayList<>();
+				for(int unit = 0 ; unit < units.size(); unit++)
+					if(typePerUnit[unit] == other && instancePerUnit[unit] == i
+					&& !isFixed[unit] && units.get(unit).size() == 1)
+						singles.add(unit);
+				if(singles.size() < size) continue;
+				int otherType = other;
+				singles.sort(Comparator.comparingInt(x->getRank(x, t) - getRank(x, otherType)));
+				singles = singles.subList(0, size);
+
+				shift(group, t, other);
+				for(int single: singles)
+					shift(single, other, t);
+				if(isImprovement())
+				{
+					place(group, other, i);
+					for(int single: singles)
+						place(single, t, instance);
+					nbGroupExchanges++;
+					return true;
+				}
+			}
+		return false;
+	}
+
+	/**
+	 * Moves the members of unit from type t to type other in the pending change of histogram
+	 */
+	private void shift(int unit, int t, int other)
+	{
+		for(int m = 0 ; m < units.get(unit).size(); m++)
+			histogram.apply(ranksPerUnit[unit].getRank(t, m), ranksPerUnit[unit].getRank(other, m));
+	}
+
+	/**
+	 * @return the worst rank among the members of unit for type t
+	 */
+	private int getRank(int unit, int t)
+	{
+		return ranksPerUnit[unit].getRank(t);
+	}
+
+	/**
+	 * Keeps the pending change of histogram if it lowers the number of users at the worst rank
+	 * it changes, else reverts it
+	 * @return true if kept
+	 */
+	private boolean isImprovement()
+	{
+		if(histogram.getChange() < 0)
+		{
+			histogram.commit();
+			return true;
+		}
+		histogram.undo();
+		return false;
+	}
+
+	private Set<UserResourceInstanceAllocation> toAllocation()
+	{
+		Set<UserResourceInstanceAllocation> res = new HashSet<>();
+		for(int unit = 0 ; unit < units.size(); unit++)
+		{
+			ResourceInstance ri = input.getResourceInstancesOf(types.get(typePerUnit[unit]))
+					.get(instancePerUnit[unit]);
+			for(User u: units.get(unit))
+				res.add(UserResourceInstanceAllocation.newInstance(u, ri));
+		}
+		return res;
+	}
+
+}
@@ -0,0 +1,218 @@
+package solver;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * Min-cost flow by successive shortest paths: each path is found by Dijkstra on the
+ * costs reduced by the potentials of the nodes (the distances of the previous paths),
+ * which keeps the reduced costs of the residual network non-negative.
+ * A cost is a vector of nbCriteria numbers, compared from the last criterion down
+ * (e.g. the numbers of users per rank of LeximinMatching, from the worst rank down),
+ * a single number for FlowRelaxation. Costs are thus non-negative for this order.
+ *
+ * Adjacency arrays, each edge being followed by its reverse edge, of opposite cost;
+ * the criteria of the costs, distances and potentials are stored one node (or edge)
+ * after the other.
+ */
+public class MinCostFlow {
+
+	private final int nbNodes;
+	private final int nbCriteria;
+	private final int[] firstEdgePerNode;
+	private int[] nextEdge = new int[16];
+	private int[] target = new int[16];
+	private int[] residualCapacity = new int[16];
+	private long[] cost;
+	private int nbEdges = 0;
+	/**
+	 * the sum of the costs of the flow pushed so far
+	 */
+	private final long[] totalCost;
+
+	private final long[] potential;
+	private final long[] distance;
+	private final boolean[] isReached;
+	private final int[] edgeToNode;
+
+	private MinCostFlow(int nbNodes, int nbCriteria) {
+		this.nbNodes = nbNodes;
+		this.nbCriteria = nbCriteria;
+		this.firstEdgePerNode = new int[nbNodes];
+		Arrays.fill(firstEdgePerNode, -1);
+		this.cost = new long[16 * nbCriteria];
+		this.totalCost = new long[nbCriteria];
+		this.potential = new long[nbNodes * nbCriteria];
+		this.distance = new long[nbNodes * nbCriteria];
+		this.isReached = new boolean[nbNodes];
+		this.edgeToNode = new int[nbNodes];
+	}
+
+	/**
+	 * @return a network whose costs are single numbers
+	 */
+	public static MinCostFlow newInstance(int nbNodes)
+	{
+		return new MinCostFlow(nbNodes, 1);
+	}
+
+	public static MinCostFlow newInstance(int nbNodes, int nbCriteria)
+	{
+		return new MinCostFlow(nbNodes, nbCriteria);
+	}
+
+	/**
+	 * @return the id of the new edge, for getFlow
+	 */
+	public int addEdge(int from, int to, int capacity, long cost)
+	{
+		return addEdge(from, to, capacity, new long[] {cost});
+	}
+
+	/**
+	 * @param cost one number per criterion
+	 * @return the id of the new edge, for getFlow
+	 */
+	public int addEdge(int from, int to, int capacity, long[] cost)
+	{
+		assert(cost.length == nbCriteria);
+		if(compare(cost, 0, new long[nbCriteria], 0) < 0)
+			throw new Error("Negative cost "+Arrays.toString(cost)+" from "+from+" to "+to);
+		if(nbEdges + 2 > target.length)
+		{
+			nextEdge = Arrays.copyOf(nextEdge, 2 * target.length);
+			residualCapacity = Arrays.copyOf(residualCapacity, 2 * target.length);
+			this.cost = Arrays.copyOf(this.cost, 2 * target.length * nbCriteria);
+			target = Arrays.copyOf(target, 2 * target.length);
+		}
+		int res = nbEdges;
+		addHalfEdge(from, to, capacity, cost, 1);
+		addHalfEdge(to, from, 0, cost, -1);
+		return res;
+	}
+
+	private void addHalfEdge(int from, int to, int capacity, long[] cost, int sign)
+	{
+		target[nbEdges] = to;
+		residualCapacity[nbEdges] = capacity;
+		for(int criterion = 0 ; criterion < nbCriteria; criterion++)
+			this.cost[nbEdges * nbCriteria + criterion] = sign * cost[criterion];
+		nextEdge[nbEdges] = firstEdgePerNode[from];
+		firstEdgePerNode[from] = nbEdges++;
+	}
+
+	/**
+	 * Pushes at most amount from source to sink, along shortest paths only.
+	 * Once pushed, the flow is of minimal cost among the flows of its value.
+	 * @return the flow pushed, less than amount if the sink cannot receive more
+	 */
+	public int push(int source, int sink, int amount)
+	{
+		int res = 0;
+		while(res < amount && findShortestPaths(source, sink))
+		{
+			int pushed = amount - res;
+			for(int node = sink; node != source; node = target[edgeToNode[node] ^ 1])
+				pushed = Integer.min(pushed, residualCapacity[edgeToNode[node]]);
+			for(int node = sink; node != source; node = target[edgeToNode[node] ^ 1])
+			{
+				int e = edgeToNode[node];
+				residualCapacity[e] -= pushed;
+				residualCapacity[e ^ 1] += pushed;
+				for(int criterion = 0 ; criterion < nbCriteria; criterion++)
+					totalCost[criterion] += pushed * cost[e * nbCriteria + criterion];
+			}
+			res += pushed;
+		}
+		return res;
+	}
+
+	/**
+	 * Dijkstra from source on the reduced costs, then adds the distances to the potentials
+	 * (the nodes not reached are never reached later, the paths only reversing edges
+	 * between reached nodes)
+	 * @return true if sink is reached
+	 */
+	private boolean findShortestPaths(int source, int sink)
+	{
+		Arrays.fill(isReached, false);
+		Arrays.fill(distance, source * nbCriteria, (source + 1) * nbCriteria, 0);
+		isReached[source] = true;
+		//each entry is a distance, followed by its node
+		PriorityQueue<long[]> queue = new PriorityQueue<>((x, y)->compare(x, 0, y, 0));
+		queue.add(toEntry(source));
+		long[] reduced = new long[nbCriteria];
+		while(!queue.isEmpty())
+		{
+			long[] head = queue.poll();
+			int node = (int)head[nbCriteria];
+			if(compare(head, 0, distance, node * nbCriteria) > 0) continue;
+			for(int e = firstEdgePerNode[node]; e >= 0; e = nextEdge[e])
+			{
+				int next = target[e];
+				if(residualCapacity[e] <= 0) continue;
+				for(int criterion = 0 ; criterion < nbCriteria; criterion++)
+					reduced[criterion] = distance[node * nbCriteria + criterion]
+							+ cost[e * nbCriteria + criterion]
+							+ potential[node * nbCriteria + criterion]
+							- potential[next * nbCriteria + criterion];
+				if(isReached[next] && compare(reduced, 0, distance, next * nbCriteria) >= 0) continue;
+				System.arraycopy(reduced, 0, distance, next * nbCriteria, nbCriteria);
+				isReached[next] = true;
+				edgeToNode[next] = e;
+				queue.add(toEntry(next));
+			}
+		}
+		for(int node = 0 ; node < nbNodes; node++)
+			if(isReached[node])
+				for(int criterion = 0 ; criterion < nbCriteria; criterion++)
+					potential[node * nbCriteria + criterion] += distance[node * nbCriteria + criterion];
+		return isReached[sink];
+	}
+
+	private long[] toEntry(int node)
+	{
+		long[] res = Arrays.copyOfRange(distance, node * nbCriteria, (node + 1) * nbCriteria + 1);
+		res[nbCriteria] = node;
+		return res;
+	}
+
+	/**
+	 * @return the sign of the cost of x starting at xStart minus the one of y starting at yStart,
+	 * from the last criterion down
+	 */
+	private int compare(long[] x, int xStart, long[] y, int yStart)
+	{
+		for(int criterion = nbCriteria - 1 ; criterion >= 0; criterion--)
+			if(x[xStart + criterion] != y[yStart + criterion])
+				return Long.compare(x[xStart + criterion], y[yStart + criterion]);
+		return 0;
+	}
+
+	/**
+	 * @param edge an id given by addEdge
+	 * @return the flow through edge
+	 */
+	public int getFlow(int edge)
+	{
+		return residualCapacity[edge ^ 1];
+	}
+
+	/**
+	 * @return the cost of the flow pushed so far, for a network whose costs are single numbers
+	 */
+	public long getCost()
+	{
+		assert(nbCriteria == 1);
+		return totalCost[0];
+	}
+
+	/**
+	 * @return the cost of the flow pushed so far, one number per criterion
+	 */
+	public long[] getCostPerCriterion()
+	{
+		return totalCost.clone();
+	}
+
+}
@@ -0,0 +1,138 @@
+package solver;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import input.ModelExport;
+
+/**
+ * Writes the model of each solve in its own file (model_<number>_<stage>.<extension>),
+ * on a background thread so that solving goes on meanwhile.
+ * Summaries are computed when the export is requested; for LP and MPS files, the model 
+ * is copied instead, hence later changes (e.g. of the bounds for the next stage) do not 
+ * alter the files. At most MAX_PENDING_EXPORTS copies wait for the background thread:
+ * beyond, the solving thread writes the file itself, so that memory does not grow with
+ * the number of stages.
+ * Numbers are shared by all the exporters, which may run concurrently 
+ * (e.g. one per Decomposition component).
+ */
+public class ModelExporter implements AutoCloseable {
+
+	private final ModelExport mode;
+	private final ExecutorService writer;
+	private static final AtomicInteger NB_EXPORTS = new AtomicInteger();
+	private static final int MAX_PENDING_EXPORTS = 2;
+
+	private ModelExporter(ModelExport mode) {
+		this.mode = mode;
+		this.writer = mode.equals(ModelExport.NONE) ? null :
+			new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<>(MAX_PENDING_EXPORTS),
+					r->{
+						Thread t = new Thread(r, "model-export");
+						t.setDaemon(true);
+						return t;
+					},
+					new ThreadPoolExecutor.CallerRunsPolicy());
+	}
+
+	public static ModelExporter newInstance(ModelExport mode)
+	{
+		return new ModelExporter(mode);
+	}
+
+	/**
+	 * @param model
+	 * @param stage a short name for the solve, e.g. "threshold3"
+	 */
+	public void export(LinearModel model, String stage)
+	{
+		if(writer == null) return;
+		String file = String.format("model_%02d_%s.%s", NB_EXPORTS.incrementAndGet(), stage, getExtension());
+		if(mode.equals(ModelExport.SUMMARY))
+		{
+			StringWriter summary = new StringWriter();
+			try {
+				LinearModelWriter.writeSummary(model, summary);
+			} catch (IOException e) {
+				throw new Error(e);
+			}
+			writer.execute(()->write(summary.toString(), file));
+			return;
+		}
+		LinearModel snapshot = model.copy();
+		writer.execute(()->write(snapshot, file));
+	}
+	
+	private void write(String summary, String file)
+	{
+		try(Writer w = Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8))
+		{
+			w.write(summary);
+		}
+		catch (IOException e) {
+			System.out.println("Model export failed for "+file+": "+e);
+		}
+	}
+
+	private void write(LinearModel model, String file)
+	{
+		boolean isGzip = mode.equals(ModelExport.LP_GZIP) || mode.equals(ModelExport.MPS_GZIP);
+		try(OutputStream out = isGzip ? 
+				new GZIPOutputStream(Files.newOutputStream(Paths.get(file))) : 
+					Files.newOutputStream(Paths.get(file));
+				Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)))
+		{
+			switch(mode)
+			{
+			case LP: case LP_GZIP: LinearModelWriter.writeLp(model, w); break;
+			case MPS: case MPS_GZIP: LinearModelWriter.writeMps(model, w); break;
+			default: throw new Error();
+			}
+		}
+		catch (IOException e) {
+			System.out.println("Model export failed for "+file+": "+e);
+		}
+	}
+
+	private String getExtension()
+	{
+		switch(mode)
+		{
+		case SUMMARY: return "txt";
+		case LP: return "lp";
+		case LP_GZIP: return "lp.gz";
+		case MPS: return "mps";
+		case MPS_GZIP: return "mps.gz";
+		default: throw new Error();
+		}
+	}
+
+	/**
+	 * Waits for the pending exports
+	 */
+	public void close()
+	{
+		if(writer == null) return;
+		writer.shutdown();
+		try {
+			writer.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,132 @@
+package solver;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import input.ProblemInstance;
+import input.RankTable;
+import model.ResourceOwner;
+import model.ResourceType;
+import model.User;
+
+/**
+ * What can be decided on the data alone, before building a model for the allocations of
+ * insatisfaction at most maxInsatisfaction:
+ * --the resource types that no unit (see FeasibilityOracle.getUnitsOf) can receive,
+ * which get no column;
+ * --the units that can receive a single resource type, which is hence theirs;
+ * --the owners whose resource types are all out of reach, which need no row;
+ * --the resource types that cannot be given more users than an instance hosts,
+ * whose capacity rows can never bind.
+ */
+public class Presolve {
+
+	private final ProblemInstance input;
+	private final int maxInsatisfaction;
+	private final Map<ResourceType, Integer> nbCandidateUsersPerResourceType = new HashMap<>();
+	private final Map<List<User>, ResourceType> resourceTypePerForcedUnit = new HashMap<>();
+	private final Set<ResourceType> unreachableResourceTypes;
+	private final Set<ResourceOwner> ownersWithoutAdmissibleInstance;
+
+	private Presolve(ProblemInstance input, List<List<User>> units, int maxInsatisfaction) {
+		this.input = input;
+		this.maxInsatisfaction = maxInsatisfaction;
+		RankTable ranks = input.getRanks();
+		for(List<User> unit: units)
+		{
+			if(unit.size() > input.getMaxNbUsersPerResource()) continue;
+			List<ResourceType> types = new ArrayList<>();
+			ranks.forEachResourceTypeWithin(unit.get(0), maxInsatisfaction, id->{
+				ResourceType type = ranks.getResourceType(id);
+				if(unit.stream().allMatch(u->ranks.getRank(u, type) <= maxInsatisfaction))
+					types.add(type);
+			});
+			for(ResourceType type: types)
+				nbCandidateUsersPerResourceType.merge(type, unit.size(), Integer::sum);
+			if(types.size() == 1)
+				resourceTypePerForcedUnit.put(unit, types.get(0));
+		}
+
+		unreachableResourceTypes = ranks.getResourceTypes().stream()
+				.filter(x->!nbCandidateUsersPerResourceType.containsKey(x))
+				.collect(Collectors.toCollection(()->
+				new TreeSet<>(Comparator.comparingInt(ResourceType::getId))));
+		ownersWithoutAdmissibleInstance = input.getAllResourceOwners().stream()
+				.filter(x->unreachableResourceTypes.containsAll(input.getResourcesTypesFrom(x)))
+				.collect(Collectors.toCollection(()->
+				new TreeSet<>(Comparator.comparingInt(ResourceOwner::getId))));
+	}
+
+	public static Presolve newInstance(ProblemInstance input, int maxInsatisfaction)
+	{
+		return newInstance(input, FeasibilityOracle.getUnitsOf(input), maxInsatisfaction);
+	}
+
+	/**
+	 * @param input
+	 * @param units the units to be given resources, e.g. a Decomposition component
+	 * @param maxInsatisfaction
+	 */
+	public static Presolve newInstance(ProblemInstance input, List<List<User>> units, 
+			int maxInsatisfaction)
+	{
+		return new Presolve(input, units, maxInsatisfaction);
+	}
+
+	/**
+	 * @param unit
+	 * @return the only resource type unit can receive, null if there are several of them
+	 */
+	public ResourceType getForcedResourceType(List<User> unit)
+	{
+		return resourceTypePerForcedUnit.get(unit);
+	}
+
+	public Set<ResourceType> getUnreachableResourceTypes()
+	{
+		return unreachableResourceTypes;
+	}
+
+	public boolean hasAdmissibleInstance(ResourceOwner ro)
+	{
+		return !ownersWithoutAdmissibleInstance.contains(ro);
+	}
+
+	/**
+	 * @param type
+	 * @return true if the users who may receive type all fit in one of its instances
+	 */
+	public boolean isCapacityNeverBinding(ResourceType type)
+	{
+		return nbCandidateUsersPerResourceType.getOrDefault(type, 0)
+				<= input.getMaxNbUsersPerResource();
+	}
+
+	/**
+	 * @param type
+	 * @return the number of users who may receive type, bounding the load of its instances
+	 */
+	public int getNbCandidateUsers(ResourceType type)
+	{
+		return nbCandidateUsersPerResourceType.getOrDefault(type, 0);
+	}
+
+	public String toString()
+	{
+		Set<ResourceType> uncapacitated = new HashSet<>(nbCandidateUsersPerResourceType.keySet());
+		uncapacitated.removeIf(x->!isCapacityNeverBinding(x));
+		return "Presolve for rank "+maxInsatisfaction+": "
+				+unreachableResourceTypes.size()+" resource types out of reach, "
+				+resourceTypePerForcedUnit.size()+" units with a single resource type, "
+				+ownersWithoutAdmissibleInstance.size()+" owners without admissible instance, "
+				+uncapacitated.size()+" resource types whose capacity never binds";
+	}
+
+}
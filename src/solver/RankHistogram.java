@@ -0,0 +1,215 @@
+package solver;
+
+import java.util.Arrays;
+import java.util.Set;
+
+import input.ProblemInstance;
+
+/**
+ * Mutable counterpart of SatisfactionMeasure: the number of users per rank, in an int[],
+ * for evaluating changes of an allocation without building the allocation.
+ *
+ * A move is evaluated by applying its changes one user at a time (apply), asking whether 
+ * they improve the histogram of the last commit (getChange), then keeping them (commit) 
+ * or reverting them (undo). getChange takes constant time: apply keeps track of the 
+ * worst rank whose number of users the pending changes modify.
+ * compareTo compares two histograms from the worst rank down.
+ * Arrays are only reallocated when a rank beyond the ones seen so far is added.
+ */
+public class RankHistogram implements Comparable<RankHistogram> {
+
+	private int[] nbUsersPerRank;
+	private int[] pendingDifferencePerRank;
+	private int worstRank = -1;
+	/**
+	 * the ranks of the pending changes, as pairs: from, to
+	 */
+	private int[] pendingChanges = new int[16];
+	private int nbPendingChanges = 0;
+	/**
+	 * the worst rank of non-zero pending difference, -1 if there is none
+	 */
+	private int worstChangedRank = -1;
+	private int nbChangedRanks = 0;
+
+	private RankHistogram(int maxRank) {
+		nbUsersPerRank = new int[maxRank + 1];
+		pendingDifferencePerRank = new int[maxRank + 1];
+	}
+
+	/**
+	 * @param maxRank the highest rank expected (higher ones are accepted, at a cost)
+	 * @return an empty histogram
+	 */
+	public static RankHistogram newInstance(int maxRank)
+	{
+		return new RankHistogram(maxRank);
+	}
+
+	public static RankHistogram newInstance(Set<UserResourceInstanceAllocation> allocation,
+			ProblemInstance input)
+	{
+		RankHistogram res = new RankHistogram(InsatisfactionBounds.getMaxRank(input));
+		for(UserResourceInstanceAllocation a: allocation)
+			res.add(input.getInsatisfactionFor(a));
+		return res;
+	}
+
+	/**
+	 * @return a copy of the histogram of the last commit, 
+	 * to be called without pending changes (they are not copied)
+	 */
+	public RankHistogram copy()
+	{
+		assert(nbPendingChanges == 0);
+		RankHistogram res = new RankHistogram(nbUsersPerRank.length - 1);
+		System.arraycopy(nbUsersPerRank, 0, res.nbUsersPerRank, 0, nbUsersPerRank.length);
+		res.worstRank = worstRank;
+		return res;
+	}
+
+	/**
+	 * Adds a user of that rank, as part of the last commit
+	 */
+	public void add(int rank)
+	{
+		increment(rank);
+	}
+
+	/**
+	 * Moves a user from fromRank to toRank, pending until commit or undo
+	 */
+	public void apply(int fromRank, int toRank)
+	{
+		if(nbPendingChanges == pendingChanges.length)
+			pendingChanges = Arrays.copyOf(pendingChanges, 2 * nbPendingChanges);
+		pendingChanges[nbPendingChanges++] = fromRank;
+		pendingChanges[nbPendingChanges++] = toRank;
+		decrement(fromRank);
+		increment(toRank);
+		changePendingDifference(fromRank, -1);
+		changePendingDifference(toRank, 1);
+	}
+	
+	/**
+	 * Updates worstChangedRank: it only goes down when the changes at that rank cancel 
+	 * each other, down to the next rank changed
+	 */
+	private void changePendingDifference(int rank, int difference)
+	{
+		boolean wasChanged = pendingDifferencePerRank[rank] != 0;
+		pendingDifferencePerRank[rank] += difference;
+		boolean isChanged = pendingDifferencePerRank[rank] != 0;
+		if(isChanged == wasChanged) return;
+		
+		if(isChanged)
+		{
+			nbChangedRanks++;
+			if(rank > worstChangedRank) worstChangedRank = rank;
+			return;
+		}
+		nbChangedRanks--;
+		if(nbChangedRanks == 0) worstChangedRank = -1;
+		else if(rank == worstChangedRank)
+			while(pendingDifferencePerRank[worstChangedRank] == 0)
+				worstChangedRank--;
+	}
+
+	/**
+	 * @return negative if the pending changes make this histogram better (fewer users at
+	 * the worst rank they change), positive if they make it worse, 0 if they change nothing
+	 */
+	public int getChange()
+	{
+		return worstChangedRank < 0 ? 0 : Integer.signum(pendingDifferencePerRank[worstChangedRank]);
+	}
+
+	public void commit()
+	{
+		for(int i = 0 ; i < nbPendingChanges; i++)
+			pendingDifferencePerRank[pendingChanges[i]] = 0;
+		nbPendingChanges = 0;
+		worstChangedRank = -1;
+		nbChangedRanks = 0;
+	}
+
+	public void undo()
+	{
+		for(int i = nbPendingChanges - 2 ; i >= 0; i -= 2)
+		{
+			decrement(pendingChanges[i + 1]);
+			increment(pendingChanges[i]);
+		}
+		commit();
+	}
+
+	/**
+	 * @return the worst rank of a user, -1 if there is none
+	 */
+	public int getWorstRank()
+	{
+		return worstRank;
+	}
+
+	public int getNbUsersAt(int rank)
+	{
+		return rank < nbUsersPerRank.length ? nbUsersPerRank[rank] : 0;
+	}
+
+	private void increment(int rank)
+	{
+		if(rank >= nbUsersPerRank.length)
+		{
+			int length = Integer.max(rank + 1, 2 * nbUsersPerRank.length);
+			nbUsersPerRank = Arrays.copyOf(nbUsersPerRank, length);
+			pendingDifferencePerRank = Arrays.copyOf(pendingDifferencePerRank, length);
+		}
+		nbUsersPerRank[rank]++;
+		if(rank > worstRank) worstRank = rank;
+	}
+
+	private void decrement(int rank)
+	{
+		nbUsersPerRank[rank]--;
+		while(worstRank >= 0 && nbUsersPerRank[worstRank] == 0)
+			worstRank--;
+	}
+
+	/**
+	 * The histogram with fewer users at the worst rank where they differ is the smaller
+	 */
+	public int compareTo(RankHistogram o)
+	{
+		for(int rank = Integer.max(worstRank, o.worstRank) ; rank >= 0; rank--)
+			if(getNbUsersAt(rank) != o.getNbUsersAt(rank))
+				return Integer.compare(getNbUsersAt(rank), o.getNbUsersAt(rank));
+		return 0;
+	}
+
+	public boolean equals(Object o)
+	{
+		return o instanceof RankHistogram && compareTo((RankHistogram)o) == 0;
+	}
+
+	public int hashCode()
+	{
+		int res = 0;
+		for(int rank = 0 ; rank <= worstRank; rank++)
+			res = 31 * res + nbUsersPerRank[rank];
+		return res;
+	}
+
+	/**
+	 * Same format as a map from the ranks given to users to their number of users
+	 */
+	public String toString()
+	{
+		StringBuilder res = new StringBuilder("{");
+		for(int rank = 0 ; rank <= worstRank; rank++)
+			if(nbUsersPerRank[rank] > 0)
+				res.append(res.length() > 1 ? ", " : "").append(rank).append('=')
+				.append(nbUsersPerRank[rank]);
+		return res.append('}').toString();
+	}
+
+}
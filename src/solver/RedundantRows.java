@@ -0,0 +1,238 @@
+package solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the rows of a LinearModel that the other rows and the column bounds make useless:
+ * --the rows that any point within the column bounds satisfies;
+ * --the duplicates of another row (same terms, up to a factor), whose bounds
+ * are merged into this row;
+ * --the one-sided rows implied by another one-sided row within the column bounds,
+ * e.g. a capacity row by a linking row with a tighter big-M.
+ *
+ * The column bounds may later be tightened (e.g. by branching or by lowering a threshold)
+ * without the removed rows becoming binding.
+ * One-sided rows are compared only with the rows whose positively weighted columns are
+ * the same, once written as a.x <= b.
+ */
+public class RedundantRows {
+
+	private static final double TOLERANCE = 1e-9;
+
+	private final LinearModel lp;
+	private final boolean[] isRemoved;
+	private int nbAlwaysSatisfied = 0;
+	private int nbDuplicates = 0;
+	private int nbDominated = 0;
+
+	private RedundantRows(LinearModel lp) {
+		this.lp = lp;
+		this.isRemoved = new boolean[lp.getNbRows()];
+	}
+
+	/**
+	 * Removes the redundant rows of lp
+	 * @return what was removed
+	 */
+	public static String removeFrom(LinearModel lp)
+	{
+		RedundantRows res = new RedundantRows(lp);
+		int nbRows = lp.getNbRows();
+		res.removeAlwaysSatisfiedRows();
+		res.removeDuplicateRows();
+		res.removeDominatedRows();
+		lp.removeRows(res.isRemoved);
+		return "Redundant rows: "+res.nbAlwaysSatisfied+" always satisfied, "
+		+res.nbDuplicates+" duplicates, "+res.nbDominated+" dominated, "
+		+lp.getNbRows()+" rows left out of "+nbRows;
+	}
+
+	private void removeAlwaysSatisfiedRows()
+	{
+		for(int row = 0 ; row < lp.getNbRows(); row++)
+		{
+			double min = 0, max = 0;
+			for(int nz = lp.getRowStart(row); nz < lp.getRowEnd(row); nz++)
+			{
+				double coefficient = lp.getCoefficientOf(nz);
+				double lower = coefficient * lp.getColumnLowerBound(lp.getColumnOf(nz));
+				double upper = coefficient * lp.getColumnUpperBound(lp.getColumnOf(nz));
+				min += Math.min(lower, upper);
+				max += Math.max(lower, upper);
+			}
+			if(!Double.isNaN(min + max)
+					&& min >= lp.getRowLowerBound(row) - TOLERANCE
+					&& max <= lp.getRowUpperBound(row) + TOLERANCE)
+			{
+				isRemoved[row] = true;
+				nbAlwaysSatisfied++;
+			}
+		}
+	}
+
+	/**
+	 * Rows are compared once scaled so that their first non-zero coefficient is 1
+	 */
+	private void removeDuplicateRows()
+	{
+		Map<Terms, Integer> rowPerTerms = new HashMap<>();
+		double[] scalePerRow = new double[lp.getNbRows()];
+		for(int row = 0 ; row < lp.getNbRows(); row++)
+		{
+			if(isRemoved[row]) continue;
+			Terms key = getSortedTerms(row);
+			double scale = key.getScale();
+			if(scale == 0) continue;
+			for(int i = 0 ; i < key.coefficients.length; i++)
+				key.coefficients[i] = key.coefficients[i] / scale + 0.0;
+			scalePerRow[row] = scale;
+			double lower = (scale > 0 ? lp.getRowLowerBound(row) : lp.getRowUpperBound(row)) / scale;
+			double upper = (scale > 0 ? lp.getRowUpperBound(row) : lp.getRowLowerBound(row)) / scale;
+
+			Integer kept = rowPerTerms.putIfAbsent(key, row);
+			if(kept == null) continue;
+			double keptScale = scalePerRow[kept];
+			lower *= keptScale;
+			upper *= keptScale;
+			lp.setRowBounds(kept,
+					Math.max(lp.getRowLowerBound(kept), keptScale > 0 ? lower : upper),
+					Math.min(lp.getRowUpperBound(kept), keptScale > 0 ? upper : lower));
+			isRemoved[row] = true;
+			nbDuplicates++;
+		}
+	}
+
+	private void removeDominatedRows()
+	{
+		Map<List<Integer>, List<Integer>> rowsPerPositiveColumns = new HashMap<>();
+		for(int row = 0 ; row < lp.getNbRows(); row++)
+		{
+			if(isRemoved[row] || getSign(row) == 0) continue;
+			List<Integer> positiveColumns = new ArrayList<>();
+			for(int nz = lp.getRowStart(row); nz < lp.getRowEnd(row); nz++)
+				if(getSign(row) * lp.getCoefficientOf(nz) > 0)
+					positiveColumns.add(lp.getColumnOf(nz));
+			positiveColumns.sort(null);
+			rowsPerPositiveColumns.computeIfAbsent(positiveColumns, x->new ArrayList<>()).add(row);
+		}
+
+		for(List<Integer> rows: rowsPerPositiveColumns.values())
+			for(int dominated: rows)
+				for(int dominating: rows)
+					if(dominating != dominated && !isRemoved[dominating]
+					&& isImpliedBy(dominated, dominating))
+					{
+						isRemoved[dominated] = true;
+						nbDominated++;
+						break;
+					}
+	}
+
+	/**
+	 * @return 1 if row is sum a.x <= b, -1 if it is sum a.x >= b, 0 if it is two-sided
+	 */
+	private int getSign(int row)
+	{
+		boolean hasLower = lp.getRowLowerBound(row) != Double.NEGATIVE_INFINITY;
+		boolean hasUpper = lp.getRowUpperBound(row) != Double.POSITIVE_INFINITY;
+		if(hasLower == hasUpper) return 0;
+		return hasUpper ? 1 : -1;
+	}
+
+	/**
+	 * Both rows being written as a.x <= b, dominating implies dominated if
+	 * (a_dominated - a_dominating).x <= b_dominated - b_dominating for all x within bounds
+	 */
+	private boolean isImpliedBy(int dominated, int dominating)
+	{
+		Map<Integer, Double> differencePerColumn = new HashMap<>();
+		for(int nz = lp.getRowStart(dominated); nz < lp.getRowEnd(dominated); nz++)
+			differencePerColumn.merge(lp.getColumnOf(nz),
+					getSign(dominated) * lp.getCoefficientOf(nz), Double::sum);
+		for(int nz = lp.getRowStart(dominating); nz < lp.getRowEnd(dominating); nz++)
+			differencePerColumn.merge(lp.getColumnOf(nz),
+					-getSign(dominating) * lp.getCoefficientOf(nz), Double::sum);
+
+		double max = 0;
+		for(Map.Entry<Integer, Double> e: differencePerColumn.entrySet())
+		{
+			double d = e.getValue();
+			if(Math.abs(d) <= TOLERANCE) continue;
+			max += d > 0 ? d * lp.getColumnUpperBound(e.getKey())
+					: d * lp.getColumnLowerBound(e.getKey());
+		}
+		return max <= getRightHandSide(dominated) - getRightHandSide(dominating) + TOLERANCE;
+	}
+
+	private double getRightHandSide(int row)
+	{
+		return getSign(row) > 0 ? lp.getRowUpperBound(row) : -lp.getRowLowerBound(row);
+	}
+
+	/**
+	 * The terms of a row, by increasing column, hashed on their arrays
+	 */
+	private static class Terms {
+		private final int[] columns;
+		private final double[] coefficients;
+
+		private Terms(int[] columns, double[] coefficients) {
+			this.columns = columns;
+			this.coefficients = coefficients;
+		}
+
+		/**
+		 * @return the first non-zero coefficient, 0 if none
+		 */
+		private double getScale()
+		{
+			for(double coefficient: coefficients)
+				if(coefficient != 0) return coefficient;
+			return 0;
+		}
+
+		public int hashCode()
+		{
+			return 31 * Arrays.hashCode(columns) + Arrays.hashCode(coefficients);
+		}
+
+		public boolean equals(Object o)
+		{
+			if(!(o instanceof Terms)) return false;
+			Terms other = (Terms)o;
+			return Arrays.equals(columns, other.columns) && Arrays.equals(coefficients, other.coefficients);
+		}
+	}
+
+	private Terms getSortedTerms(int row)
+	{
+		int start = lp.getRowStart(row);
+		int[] order = new int[lp.getRowEnd(row) - start];
+		for(int i = 0 ; i < order.length; i++)
+			order[i] = start + i;
+		if(!isSortedByColumn(order))
+			order = Arrays.stream(order).boxed()
+			.sorted((x, y)->Integer.compare(lp.getColumnOf(x), lp.getColumnOf(y)))
+			.mapToInt(Integer::intValue).toArray();
+		int[] columns = new int[order.length];
+		double[] coefficients = new double[order.length];
+		for(int i = 0 ; i < order.length; i++)
+		{
+			columns[i] = lp.getColumnOf(order[i]);
+			coefficients[i] = lp.getCoefficientOf(order[i]);
+		}
+		return new Terms(columns, coefficients);
+	}
+
+	private boolean isSortedByColumn(int[] nonZeros)
+	{
+		for(int i = 1 ; i < nonZeros.length; i++)
+			if(lp.getColumnOf(nonZeros[i - 1]) > lp.getColumnOf(nonZeros[i])) return false;
+		return true;
+	}
+
+}
@@ -0,0 +1,19 @@
+package solver;
+
+/**
+ * Outcome of SolverSession.solve
+ */
+public enum SolveStatus {
+	OPTIMAL,//a solution, proven optimal
+	FEASIBLE,//a solution, not proven optimal (e.g. part of the search was given up)
+	INFEASIBLE,//proven to have no solution
+	UNKNOWN;//no solution found, but not proven infeasible either
+	
+	/**
+	 * @return true if the session holds a solution (see SolverSession.getValues)
+	 */
+	public boolean hasSolution()
+	{
+		return this == OPTIMAL || this == FEASIBLE;
+	}
+}
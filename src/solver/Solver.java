@@ -1,25 +1,34 @@
 package solver;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.SortedSet;
+import java.util.TreeMap;
 import java.util.TreeSet;
-import java.util.function.Function;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
-import ilog.concert.IloException;
-import ilog.concert.IloIntExpr;
-import ilog.concert.IloIntVar;
-import ilog.concert.IloNumExpr;
-import ilog.cplex.IloCplex;
-import ilog.cplex.IloCplex.UnknownObjectException;
-import ilog.cplex.IloCplexModeler;
+import java.util.stream.IntStream;
+import input.ModelFormulation;
 import input.ProblemInstance;
 import input.ProblemInstance.OwnerDesire;
+import input.SolveMode;
 import model.ResourceOwner;
+import model.ResourceType;
 import model.User;
-import model.UserGroup;
+import model.UserResourceTypeAllocation;
 import output.Printer;
 
 public class Solver {
@@ -28,208 +37,694 @@ public class Solver {
 		NO_CONSTRAINTS,	MINIMIZE_RESOURCE_CONSUMMED_PER_OWNER;}
 
 
-	public static Optional<Set<UserResourceInstanceAllocation>> 
-	optimizeAccordingToMaxInsatisfaction(
-			int maxInsatisfaction,
-			ProblemInstance inF,
-			int maxNbResourcePerOwner)
-	{
+	/**
+	 * Variables and constraints of the allocation problem, 
+	 * restricted to the allocations of insatisfaction at most maxInsatisfaction.
+	 * The objective is left to the caller. 
+	 * 
+	 * Each allocation of allocToVar is given by its column being set to 1, 
+	 * several allocations possibly sharing a column.
+	 * Only the users of units are given resources (e.g. a Decomposition component).
+	 */
+	private abstract static class AllocationModel {
+		final LinearModel lp = LinearModel.newInstance();
+		final List<List<User>> units;
+		final SortedSet<User> users = new TreeSet<>(Comparator.comparingInt(User::getId));
+		final Map<UserResourceInstanceAllocation, Integer> allocToVar = new HashMap<>();
+		final Set<UserResourceInstanceAllocation> allAdmissibleAllocations = allocToVar.keySet();
+		final Map<ResourceOwner, Integer> varPerOwner = new HashMap<>();
+		final Presolve presolve;
+		
+		private AllocationModel(ProblemInstance inF, List<List<User>> units, int maxInsatisfaction) {
+			this.units = units;
+			units.forEach(users::addAll);
+			presolve = Presolve.newInstance(inF, units, maxInsatisfaction);
+		}
+		
+		/**
+		 * @return the model of the formulation of inF. 
+		 * The TYPE formulation cannot keep the members of a group together, 
+		 * the INSTANCE one is used instead whenever there are groups of several users.
+		 */
+		static AllocationModel newInstance(ProblemInstance inF, List<List<User>> units,
+				int maxInsatisfaction, int maxNbResourcePerOwner)
+		{
+			if(inF.getModelFormulation().equals(ModelFormulation.TYPE))
+			{
+				if(units.stream().allMatch(x->x.size() == 1))
+					return new TypeAllocationModel(inF, units, maxInsatisfaction, maxNbResourcePerOwner);
+				System.out.println("Groups of users cannot be spread over the instances of a type,"
+						+ " using the INSTANCE formulation");
+			}
+			return new InstanceAllocationModel(inF, units, maxInsatisfaction, maxNbResourcePerOwner);
+		}
+		
+		/**
+		 * @param allocation
+		 * @param inF
+		 * @return the value of every column matching allocation, e.g. for a MIP start
+		 */
+		abstract double[] toColumnValues(Set<UserResourceInstanceAllocation> allocation, 
+				ProblemInstance inF);
+		
+		/**
+		 * @param values of the columns of a solution
+		 * @return the allocation of each user
+		 */
+		abstract Set<UserResourceInstanceAllocation> toAllocation(double[] values);
+		
+		abstract void debugPrint(double[] values);
+	}
 	
-		try {
-			IloCplex cplex = new IloCplex();
-			cplex.setOut(null);
-
-			Set<UserResourceInstanceAllocation> allAdmissibleAllocations = 
-					inF.getAllocationsFilteredBy(maxInsatisfaction);
-
-			SortedSet<User> users = 
-					new TreeSet<>((x,y)->x.toString().compareTo(y.toString()));
-			users.addAll(inF.getAllUsers());
-
+	/**
+	 * One column per user and resource instance, plus one column per resource instance 
+	 * telling whether it is allocated.
+	 * 
+	 * Each UserGroup is contracted into a single unit (see FeasibilityOracle.getUnitsOf), 
+	 * with one column per resource instance that all its members accept: 
+	 * the allocations of all the members map to this column, 
+	 * which weighs the size of the group in the capacity rows.
+	 */
+	private static class InstanceAllocationModel extends AllocationModel {
+		private final Map<Integer, List<UserResourceInstanceAllocation>> allocationsPerVar;
+		private final Map<ResourceInstance, Integer> varPerResource;
+		private final Map<ResourceInstance, Integer> jokerPerResource;
+
+		private InstanceAllocationModel(ProblemInstance inF, List<List<User>> units,
+				int maxInsatisfaction, int maxNbResourcePerOwner) {
+			super(inF, units, maxInsatisfaction);
+			
+			allocationsPerVar = generateVariablePerUnitAllocation(lp, inF, units, maxInsatisfaction, 
+					presolve);
+			
+			allocationsPerVar.forEach((var, allocations)->{
+				for(UserResourceInstanceAllocation a: allocations)
+					allocToVar.put(a, var);
+			});
+			
+			SortedMap<ResourceInstance, List<Integer>> varsPerAdmissibleResource = 
+					new TreeMap<>(RESOURCE_INSTANCE_ORDER);
+			allocationsPerVar.forEach((var, allocations)->
+				varsPerAdmissibleResource
+				.computeIfAbsent(allocations.get(0).getResource(), x->new ArrayList<>())
+				.add(var));
 			SortedSet<ResourceInstance> allAdmissibleResourceInstances = 
-					new TreeSet<>((x,y)->x.toString().compareTo(y.toString()));
-
-			allAdmissibleResourceInstances.addAll(
-					allAdmissibleAllocations
-					.stream().map(x->x.getResource())
-					.collect(Collectors.toSet()));
+					new TreeSet<>(RESOURCE_INSTANCE_ORDER);
+			allAdmissibleResourceInstances.addAll(varsPerAdmissibleResource.keySet());
 			
-			Map<UserResourceInstanceAllocation, IloIntVar> allocToVar = 
-					generateVariablePerAllocation(cplex,
-					allAdmissibleAllocations
-					);
+			jokerPerResource = new HashMap<>();
+			for(ResourceInstance ri: allAdmissibleResourceInstances)
+				jokerPerResource.put(ri, 
+						lp.addBinaryColumn("jokerForDiscardingTheMinAllocationConstraint", ri));
+			
+			varPerResource = getVarsPerResource(
+					lp, allAdmissibleResourceInstances);
 			
+			varPerOwner.putAll(getVarsPerOwner(lp,
+					inF, allAdmissibleAllocations
+					));
 			
-			Map<ResourceInstance, IloIntVar> resourceMinLiftingJokerVars = 
-					allAdmissibleResourceInstances.stream().collect(
-							Collectors.toMap(Function.identity(),
-									x->
-									{
-										try {
-											return cplex
-													.boolVar("jokerForDiscardingTheMinAllocationConstraint("+x+")"
-													);
-										} catch (IloException e) {
-											// TODO Auto-generated catch block
-											e.printStackTrace();
-											throw new Error();
-										}
-									}));
+			generateAllocationConstraints(
+					lp,
+					units,
+					allAdmissibleAllocations,
+					allAdmissibleResourceInstances,
+					allocationsPerVar,
+					varsPerAdmissibleResource,
+					allocToVar,
+					varPerResource,
+					varPerOwner,
+					jokerPerResource,
+					inF, maxNbResourcePerOwner,
+					presolve
+					);
+		}
+		
+		double[] toColumnValues(Set<UserResourceInstanceAllocation> allocation, 
+				ProblemInstance inF)
+		{
+			if(inF.isBreakingSymmetries())
+				allocation = renumberByDecreasingLoad(allocation, inF);
+			double[] res = new double[lp.getNbColumns()];
+			for(UserResourceInstanceAllocation a: allocation)
+			{
+				if(!allocToVar.containsKey(a)) continue;
+				ResourceInstance r = a.getResource();
+				res[allocToVar.get(a)] = 1;
+				res[varPerResource.get(r)] = 1;
+				res[varPerOwner.get(inF.getOwner(r))] = 1;
+			}
+			return res;
+		}
+		
+		Set<UserResourceInstanceAllocation> toAllocation(double[] values)
+		{
+			return processCplexResults(values, allocToVar);
+		}
+		
+		void debugPrint(double[] values)
+		{
+			Solver.debugPrint(values, allocToVar, varPerResource, varPerOwner);
+		}
+	}
 	
-			for(User pl:users)
+	/**
+	 * Aggregated formulation: one column per user and resource type, and one integer column 
+	 * per resource type counting its opened instances. 
+	 * The interchangeable instances of a type are never materialized (nor their permutations 
+	 * explored), the min and max numbers of users per instance becoming the range 
+	 * [min x opened, max x opened] of the number of users of the type.
+	 * Instance numbers are given afterwards, by spreading evenly the users of each type 
+	 * over its opened instances.
+	 * 
+	 * The column of a user and a type is keyed in allocToVar by the allocation of the user 
+	 * to the first instance of the type.
+	 * Only for single users, as the members of a group cannot be kept in the same instance.
+	 */
+	private static class TypeAllocationModel extends AllocationModel {
+		private final Map<Integer, UserResourceInstanceAllocation> allocationPerVar = new HashMap<>();
+		private final SortedMap<ResourceType, List<Integer>> varsPerType = 
+				new TreeMap<>(Comparator.comparingInt(ResourceType::getId));
+		private final Map<ResourceType, Integer> nbOpenedVarPerType = new HashMap<>();
+		
+		private TypeAllocationModel(ProblemInstance inF, List<List<User>> units,
+				int maxInsatisfaction, int maxNbResourcePerOwner) {
+			super(inF, units, maxInsatisfaction);
+			
+			for(User u: users)
 			{
-				int worseAllocValue = 1;
-				if(allAdmissibleAllocations.stream()
-						.anyMatch(x-> x.getUser().equals(pl)))
+				List<ResourceType> types = new ArrayList<>();
+				inF.getRanks().forEachResourceTypeWithin(u, maxInsatisfaction, 
+						id->types.add(inF.getRanks().getResourceType(id)));
+				types.sort(Comparator.comparingInt(ResourceType::getId));
+				boolean isForced = presolve.getForcedResourceType(Arrays.asList(u)) != null;
+				for(ResourceType type: types)
 				{
-					UserResourceInstanceAllocation worseAlloc = 
-							allAdmissibleAllocations.stream()
-							.filter(x-> x.getUser().equals(pl))
-							.max((x,y)->inF.getInsatisfactionFor(x)-
-									inF.getInsatisfactionFor(y)).get();
-					worseAllocValue = inF.getInsatisfactionFor(worseAlloc);
+					int var = lp.addColumn(isForced ? 1 : 0, 1, true, 
+							null, UserResourceTypeAllocation.newInstance(u, type));
+					UserResourceInstanceAllocation a = toFirstInstance(u, type);
+					allocToVar.put(a, var);
+					allocationPerVar.put(var, a);
+					varsPerType.computeIfAbsent(type, x->new ArrayList<>()).add(var);
+					lp.addTerm(var, 1);
 				}
-					
-				/*@Deprecated
-				 * for(UserResourceInstanceAllocation a: allAdmissibleAllocations)
-					if(!allAdmissibleAllocations.contains(a) && a.getUser().equals(pl))
-						inF.getAllocations().put(a, worseAllocValue+1);*/
+				lp.addEq(1, "EachUserIsGivenExactlyOneResource", u);
 			}
 			
-			Map<ResourceInstance, IloIntVar> varPerResource = getVarsPerResource(
-					cplex, allAdmissibleResourceInstances);
+			for(ResourceType type: varsPerType.keySet())
+				nbOpenedVarPerType.put(type, 
+						lp.addColumn(0, inF.getAmountOf(type), true, "NbOpenedInstances", type));
 			
-			Map<ResourceOwner, IloIntVar> varPerOwner = getVarsPerOwner(cplex,
-					inF, allAdmissibleAllocations
-					);
+			varPerOwner.putAll(getVarsPerOwner(lp, inF, allAdmissibleAllocations));
 			
-			cplex.addMinimize(
-					Solver.getExpressionToMinimize(
-							cplex, 
-							inF,
-							allAdmissibleAllocations,
-							users,
-							inF.getRelativeInsatisfactionFor(allAdmissibleAllocations),
-							allocToVar, varPerOwner));
+			for(ResourceType type: varsPerType.keySet())
+			{
+				for(int var: varsPerType.get(type))
+					lp.addTerm(var, 1);
+				lp.addTerm(nbOpenedVarPerType.get(type), -inF.getMaxNbUsersPerResource());
+				lp.addLe(0, "EachOpenedInstanceIsAllocatedAtMostKTimes", 
+						Arrays.asList(type, inF.getMaxNbUsersPerResource()));
+				
+				for(int var: varsPerType.get(type))
+					lp.addTerm(var, 1);
+				lp.addTerm(nbOpenedVarPerType.get(type), -inF.getMinNumUsersPerResource());
+				lp.addGe(0, "EachOpenedInstanceIsAllocatedAtLeastKTimes", 
+						Arrays.asList(type, inF.getMinNumUsersPerResource()));
+			}
 			
+			for(ResourceOwner ro: varPerOwner.keySet())
+			{
+				lp.addTerm(varPerOwner.get(ro), 1);
+				for(ResourceType type: inF.getResourcesTypesFrom(ro))
+					if(nbOpenedVarPerType.containsKey(type))
+						lp.addTerm(nbOpenedVarPerType.get(type), -1);
+				lp.addLe(0, "OwnerIsActiveOnlyIfOneOfItsResourcesIs", ro);
+			}
 			
+			for(ResourceOwner rp : inF.getAllResourceOwners())
+			{
+				if(!presolve.hasAdmissibleInstance(rp)) continue;
+				for(ResourceType type: inF.getResourcesTypesFrom(rp))
+					if(nbOpenedVarPerType.containsKey(type))
+						lp.addTerm(nbOpenedVarPerType.get(type), 1);
+				lp.addLe(
+						maxNbResourcePerOwner, 
+						"AllocateResourceFromAllocatorAtMost"+maxNbResourcePerOwner+"Times",
+						Arrays.asList(rp, inF.getMinNumUsersPerResource()));
+			}
 			
-			generateAllocationConstraints(
-					cplex,
-					allAdmissibleAllocations,
-					allAdmissibleResourceInstances,
-					allocToVar,
-					varPerResource,
-					varPerOwner,
-					resourceMinLiftingJokerVars,
-					inF, maxNbResourcePerOwner
-					);
+			for(UserResourceInstanceAllocation hc: getHardConstraintsOf(inF, users))
+			{
+				lp.addTerm(allocToVar.get(
+						toFirstInstance(hc.getUser(), hc.getResource().getResourceType())), 1);
+				lp.addEq(1, "HardConstraint", hc);
+			}
+		}
+		
+		private static UserResourceInstanceAllocation toFirstInstance(User u, ResourceType type)
+		{
+			return UserResourceInstanceAllocation.newInstance(u, ResourceInstance.newInstance(type, 0));
+		}
+		
+		double[] toColumnValues(Set<UserResourceInstanceAllocation> allocation, 
+				ProblemInstance inF)
+		{
+			double[] res = new double[lp.getNbColumns()];
+			Map<ResourceType, Set<ResourceInstance>> instancesPerType = new HashMap<>();
+			for(UserResourceInstanceAllocation a: allocation)
+			{
+				ResourceType type = a.getResource().getResourceType();
+				UserResourceInstanceAllocation key = toFirstInstance(a.getUser(), type);
+				if(!allocToVar.containsKey(key)) continue;
+				res[allocToVar.get(key)] = 1;
+				res[varPerOwner.get(inF.getOwner(type))] = 1;
+				instancesPerType.computeIfAbsent(type, x->new HashSet<>()).add(a.getResource());
+			}
+			instancesPerType.forEach((type, instances)->
+				res[nbOpenedVarPerType.get(type)] = instances.size());
+			return res;
+		}
+		
+		/**
+		 * The users of a type are dealt in turn to its opened instances, 
+		 * hence each of them gets between min and max users
+		 */
+		Set<UserResourceInstanceAllocation> toAllocation(double[] values)
+		{
+			Set<UserResourceInstanceAllocation> res = new HashSet<>();
+			varsPerType.forEach((type, vars)->{
+				int nbOpened = (int)Math.round(values[nbOpenedVarPerType.get(type)]);
+				int nbAllocated = 0;
+				for(int var: vars)
+					if(values[var] > 0.01)
+						res.add(UserResourceInstanceAllocation.newInstance(
+								allocationPerVar.get(var).getUser(), 
+								ResourceInstance.newInstance(type, nbAllocated++ % nbOpened)));
+			});
+			return res;
+		}
+		
+		void debugPrint(double[] values)
+		{
+			System.out.println("Debug print");
 			
-	
-			cplex.exportModel("mipex1.lp");
-	
-			if (! cplex.solve() )
-				return Optional.empty();
-			System.out.println("Solution status = " + cplex.getStatus());
+			allocationPerVar.forEach((var, a)->
+				System.out.println(UserResourceTypeAllocation.newInstance(a)+" "+values[var]));
 			
-			if(inF.isDebugPrint())
-				debugPrint(cplex, allocToVar, varPerResource,varPerOwner);
-			Set<UserResourceInstanceAllocation>s=
-					processCplexResults(cplex, allocToVar);
+			nbOpenedVarPerType.forEach((type, var)->
+				System.out.println(type+" "+values[var]));
 			
+			for(ResourceOwner ro:varPerOwner.keySet())
+				System.out.println(ro+" "+values[varPerOwner.get(ro)]);
 			
+			System.out.println("Debug print end");
+		}
+	}
 	
-			//s.sort((x,y)->roles.indexOf(x.role) - roles.indexOf(y.role));
-			System.out.println("Minimizing the number of least happy people:");
-			cplex.end();
+	/**
+	 * An AllocationModel, built once for the loosest insatisfaction threshold to be tried 
+	 * and loaded once in the solver backend.
+	 * Tighter thresholds are obtained by setting to 0 the upper bound of the allocations 
+	 * above them: moving from one threshold to another only changes bounds, and each 
+	 * solution found is given back to the backend as a start for the next solve.
+	 * Each weighted solve is preceded by the one of its FlowRelaxation, whose bound is
+	 * given to the backend, and whose allocation is the result when the model accepts it.
+	 * The reports on the model (e.g. its Presolve) are printed together when the session 
+	 * is closed, so that those of concurrent sessions (see Decomposition) do not interleave.
+	 */
+	private static class AllocationSession implements AutoCloseable {
+		private final ProblemInstance inF;
+		private final FeasibilityOracle oracle;
+		private final AllocationModel model;
+		private final Map<UserResourceInstanceAllocation, Integer> rankPerAllocation;
+		/**
+		 * the worst rank among the members of the unit of each allocation column
+		 */
+		private final Map<Integer, Integer> rankPerVar;
+		private final SolverSession session;
+		private final ModelExporter exporter;
+		private int maxInsatisfaction;
+		private final List<String> reports = new ArrayList<>();
+		/**
+		 * the outcome of the last solve, see solve(String)
+		 */
+		private SolveStatus status = SolveStatus.UNKNOWN;
+		/**
+		 * false for RedundantRowsCheck, so that the backend solves the model whose rows are
+		 * checked even when the allocation of the FlowRelaxation would do
+		 */
+		private boolean isRelaxedAllocationUsed = true;
+		
+		private AllocationSession(ProblemInstance inF, List<List<User>> units,
+				int loosestMaxInsatisfaction, int maxNbResourcePerOwner, boolean isRedundantRowRemoved) {
+			this.inF = inF;
+			this.oracle = FeasibilityOracle.newInstance(inF, units);
+			this.model = AllocationModel.newInstance(inF, units, 
+					loosestMaxInsatisfaction, maxNbResourcePerOwner);
+			reports.add(model.presolve.toString());
+			if(isRedundantRowRemoved)
+				reports.add(RedundantRows.removeFrom(model.lp));
+			this.rankPerAllocation = inF.getRelativeInsatisfactionFor(model.allAdmissibleAllocations);
+			this.rankPerVar = new HashMap<>();
+			rankPerAllocation.forEach((a, rank)->rankPerVar.merge(model.allocToVar.get(a), rank, Integer::max));
+			this.maxInsatisfaction = loosestMaxInsatisfaction;
+			this.session = SolverBackends.getBackend(inF).open(model.lp);
+			this.exporter = ModelExporter.newInstance(inF.getModelExport());
+		}
+		
+		/**
+		 * Sets the objective both in the model (for exports) and in the session
+		 */
+		private void setObjective(double[] coefficientPerColumn)
+		{
+			for(int column = 0 ; column < coefficientPerColumn.length; column++)
+				model.lp.setObjective(column, coefficientPerColumn[column]);
+			model.lp.setObjectiveConstant(0);
+			session.setObjective(coefficientPerColumn, 0);
+		}
+		
+		private void setColumnUpperBound(int column, double upperBound)
+		{
+			model.lp.setColumnUpperBound(column, upperBound);
+			session.setColumnUpperBound(column, upperBound);
+		}
+		
+		/**
+		 * Adds sum columns <= upperBound, a column counting as many times as it occurs
+		 */
+		private void addLe(List<Integer> columns, double upperBound, String family, Object key)
+		{
+			double[] coefficientPerColumn = getIndicatorOf(model.lp, columns, 1);
+			int[] nonZeros = IntStream.range(0, coefficientPerColumn.length)
+					.filter(x->coefficientPerColumn[x] != 0).toArray();
+			double[] coefficients = new double[nonZeros.length];
+			for(int i = 0 ; i < nonZeros.length; i++)
+			{
+				coefficients[i] = coefficientPerColumn[nonZeros[i]];
+				model.lp.addTerm(nonZeros[i], coefficients[i]);
+			}
+			model.lp.addLe(upperBound, family, key);
+			session.addRow(nonZeros, coefficients, Double.NEGATIVE_INFINITY, upperBound);
+		}
+		
+		private void setMaxInsatisfaction(int maxInsatisfaction)
+		{
+			rankPerVar.forEach((var, rank)->{
+				boolean isAllowed = rank <= maxInsatisfaction;
+				if(isAllowed != rank <= this.maxInsatisfaction)
+					setColumnUpperBound(var, isAllowed ? 1 : 0);
+			});
+			this.maxInsatisfaction = maxInsatisfaction;
+		}
+		
+		private void setStart(Set<UserResourceInstanceAllocation> allocation)
+		{
+			session.setStart(model.toColumnValues(allocation, inF));
+		}
+		
+		private Set<UserResourceInstanceAllocation> getAllowedAllocations()
+		{
+			return model.allAdmissibleAllocations.stream()
+					.filter(x->rankPerVar.get(model.allocToVar.get(x)) <= maxInsatisfaction)
+					.collect(Collectors.toSet());
+		}
+		
+		private Optional<Set<UserResourceInstanceAllocation>> minimizeWeightedInsatisfaction()
+		{
+			for(int column: model.allocToVar.values())
+				model.lp.setObjective(column, 0);
+			Solver.setObjectiveToMinimize(
+					model.lp, 
+					inF,
+					getAllowedAllocations(),
+					model.users,
+					rankPerAllocation,
+					model.allocToVar, model.varPerOwner);
+			session.setObjective(model.lp.getObjectiveCoefficients(), model.lp.getObjectiveConstant());
+			return solve("threshold"+maxInsatisfaction);
+		}
+		
+		/**
+		 * Any allocation within the current threshold, found without objective: 
+		 * for the threshold probes of SOLVE_MODE:LEXIMIN, whose stages optimize with small 
+		 * integer coefficients, the weights of setObjectiveToMinimize (powers of the number 
+		 * of users) are never handed to the backend.
+		 */
+		private Optional<Set<UserResourceInstanceAllocation>> findAllocation()
+		{
+			setObjective(new double[model.lp.getNbColumns()]);
+			return solve("feasibility"+maxInsatisfaction);
+		}
+		
+		/**
+		 * Solves for the current objective, unless the allocation of its FlowRelaxation 
+		 * is optimal; the solution is the start of the next solve.
+		 * The outcome is kept in status: an empty result is only a proof of infeasibility
+		 * when status is INFEASIBLE.
+		 */
+		private Optional<Set<UserResourceInstanceAllocation>> solve(String stage)
+		{
+			exporter.export(model.lp, stage);
+			status = SolveStatus.UNKNOWN;
+			
+			Optional<FlowRelaxation> relaxation = 
+					FlowRelaxation.newInstance(inF, model.units, model.lp, model.allocToVar);
+			Optional<double[]> relaxed = Optional.empty();
+			if(relaxation.isPresent())
+			{
+				reports.add(stage+": "+relaxation.get());
+				double bound = relaxation.get().getLowerBound();
+				if(bound == Double.POSITIVE_INFINITY)
+				{
+					status = SolveStatus.INFEASIBLE;
+					return Optional.empty();
+				}
+				session.setObjectiveLowerBound(bound);
+				relaxed = relaxation.get().getAllocation()
+						.filter(x->isRelaxedAllocationUsed)
+						.map(x->model.toColumnValues(x, inF))
+						.filter(x->model.lp.isFeasible(x, FEASIBILITY_TOLERANCE)
+								&& model.lp.getObjectiveValue(x) 
+								<= bound + FEASIBILITY_TOLERANCE * (1 + Math.abs(bound)));
+				if(relaxed.isPresent())
+					reports.add(stage+": the allocation of the relaxation meets its bound, no solve needed");
+			}
 			
-			return Optional.of(s);
+			status = relaxed.isPresent() ? SolveStatus.OPTIMAL : session.solve();
+			if(!status.hasSolution())
+				return Optional.empty();
+			
+			double[] values = relaxed.isPresent() ? relaxed.get() : session.getValues();
+			session.setStart(values);
+			if(inF.isDebugPrint())
+				model.debugPrint(values);
+			return Optional.of(model.toAllocation(values));
+		}
+		
+		/**
+		 * @return the objective value of allocation for the current objective
+		 */
+		private double getObjectiveValue(Set<UserResourceInstanceAllocation> allocation)
+		{
+			return model.lp.getObjectiveValue(model.toColumnValues(allocation, inF));
+		}
+		
+		public void close()
+		{
+			if(inF.isDebugPrint())
+				System.out.println(String.join(System.lineSeparator(), reports));
+			session.close();
+			exporter.close();
+		}
+	}
 	
+	private static final double FEASIBILITY_TOLERANCE = 1e-6;
+	
+	private static final Comparator<ResourceInstance> RESOURCE_INSTANCE_ORDER = 
+			Comparator
+			.comparingInt((ResourceInstance x)->x.getResourceType().getId())
+			.thenComparingInt(ResourceInstance::getInstanceNumber);
+
+	public static Optional<Set<UserResourceInstanceAllocation>> 
+	optimizeAccordingToMaxInsatisfaction(
+			int maxInsatisfaction,
+			ProblemInstance inF,
+			int maxNbResourcePerOwner)
+	{
+		try(AllocationSession session = 
+				new AllocationSession(inF, FeasibilityOracle.getUnitsOf(inF), 
+						maxInsatisfaction, maxNbResourcePerOwner, true))
+		{
+			return session.minimizeWeightedInsatisfaction();
+		}
+	}
+	
+	/**
+	 * The weighted solve of optimizeAccordingToMaxInsatisfaction, 
+	 * for RedundantRowsCheck: always by the backend
+	 * @param isRedundantRowRemoved false to keep the rows found by RedundantRows in the model
+	 * @return the allocation found, if any, with its objective value
+	 */
+	static Optional<Map.Entry<Double, Set<UserResourceInstanceAllocation>>> 
+	minimizeWeightedInsatisfaction(ProblemInstance inF, int maxInsatisfaction, 
+			boolean isRedundantRowRemoved)
+	{
+		try(AllocationSession session = 
+				new AllocationSession(inF, FeasibilityOracle.getUnitsOf(inF), 
+						maxInsatisfaction, Integer.MAX_VALUE, isRedundantRowRemoved))
+		{
+			session.isRelaxedAllocationUsed = false;
+			return session.minimizeWeightedInsatisfaction()
+					.map(x->new AbstractMap.SimpleImmutableEntry<>(session.getObjectiveValue(x), x));
 		}
-		catch (IloException e) {
-			System.err.println("Concert exception caught '" + e + "' caught");
-			throw new Error();
+	}
+	
+	/**
+	 * Leximin optimization, as a sequence of solves on a single model: 
+	 * from the worst rank down to rank 1, minimizes the number of users given that rank, 
+	 * then bounds this number for the next stages.
+	 * Once all the counts are set, maximizes the number of owners with an allocated 
+	 * resource, if desired.
+	 * Each stage only involves the variables of one rank, each weighted by the number 
+	 * of members of its unit.
+	 * The bounds and rows added by the stages are kept in allocationSession.
+	 * @param allocationSession
+	 * @param maxInsatisfaction
+	 * @return
+	 */
+	private static Set<UserResourceInstanceAllocation> optimizeLexicographically(
+			AllocationSession allocationSession,
+			int maxInsatisfaction)
+	{
+		allocationSession.setMaxInsatisfaction(maxInsatisfaction);
+		AllocationModel model = allocationSession.model;
+		SolverSession session = allocationSession.session;
+		
+		Map<Integer, List<Integer>> varsPerRank = allocationSession.getAllowedAllocations()
+				.stream()
+				.collect(Collectors.groupingBy(x->allocationSession.rankPerAllocation.get(x),
+						Collectors.mapping(x->model.allocToVar.get(x), Collectors.toList())));
+		
+		for(int rank = maxInsatisfaction ; rank > 0 ; rank--)
+		{
+			if(!varsPerRank.containsKey(rank)) continue;
+			List<Integer> columns = varsPerRank.get(rank);
+			allocationSession.setObjective(getIndicatorOf(model.lp, columns, 1));
+			allocationSession.exporter.export(model.lp, "leximinRank"+rank);
+			
+			SolveStatus status = session.solve();
+			if(status.equals(SolveStatus.INFEASIBLE))
+				throw new Error("No allocation found while minimizing the users of rank "+rank);
+			if(!status.hasSolution())
+				throw new Error("The solver gave up while minimizing the users of rank "+rank
+						+" without finding an allocation, although one exists");
+			int nbUsers = (int)Math.round(session.getObjectiveValue());
+			if(status.equals(SolveStatus.OPTIMAL))
+				System.out.println("Minimal number of users given rank "+rank+":"+nbUsers);
+			else System.out.println("Number of users given rank "+rank+":"+nbUsers
+					+" (not proven minimal, the next ranks are optimized given this number)");
+			session.setStart(session.getValues());
+			
+			if(nbUsers == 0)
+				for(int column: columns)
+					allocationSession.setColumnUpperBound(column, 0);
+			else allocationSession.addLe(columns, nbUsers, "NbUsersOfRank", rank);
 		}
+		
+		if(allocationSession.inF.getOwnerAllocationPreferences()
+				.equals(OwnerDesire.AT_LEAST_ONE_INSTANCE_PER_OWNER))
+			allocationSession.setObjective(getIndicatorOf(model.lp, model.varPerOwner.values(), -1));
+		else allocationSession.setObjective(new double[model.lp.getNbColumns()]);
+		allocationSession.exporter.export(model.lp, "leximinOwners");
+		
+		if(!session.solve().hasSolution())
+			throw new Error("No allocation found once the number of users per rank is set");
+		
+		return model.toAllocation(session.getValues());
 	}
 	
+	/**
+	 * @return a dense objective, with coefficient on the given columns 
+	 * (once per occurrence, e.g. once per member of a group) and 0 elsewhere
+	 */
+	private static double[] getIndicatorOf(LinearModel lp, 
+			Collection<Integer> columns, double coefficient)
+	{
+		double[] res = new double[lp.getNbColumns()];
+		for(int column: columns)
+			res[column] += coefficient;
+		return res;
+	}
+
 
-	private static Map<ResourceOwner, IloIntVar> getVarsPerOwner(IloCplex cplex, 
+	private static Map<ResourceOwner, Integer> getVarsPerOwner(LinearModel lp, 
 			ProblemInstance inF,
-			Set<UserResourceInstanceAllocation> allAdmissibleAllocations) throws IloException {
-		Map<ResourceOwner, IloIntVar>res = new HashMap<>();
+			Set<UserResourceInstanceAllocation> allAdmissibleAllocations) {
+		Map<ResourceOwner, Integer>res = new HashMap<>();
 		
 		Set<ResourceOwner> ro = allAdmissibleAllocations.stream()
 		.map(x->inF.getOwner(x.getResource()))
-		.collect(Collectors.toSet());
+		.collect(Collectors.toCollection(()->new TreeSet<>(
+				Comparator.comparingInt(ResourceOwner::getId))));
 		
 		for(ResourceOwner r: ro)
-			res.put(r, cplex
-				.boolVar("ResourceOwnerHasAtLeastOneResourceTaken("+r+")")
+			res.put(r, lp
+				.addBinaryColumn("ResourceOwnerHasAtLeastOneResourceTaken", r)
 				);
 		return res;
 	}
 
 
-	private static Map<ResourceInstance, IloIntVar> getVarsPerResource(
-			IloCplexModeler cplex,
+	private static Map<ResourceInstance, Integer> getVarsPerResource(
+			LinearModel lp,
 			Set<ResourceInstance> allAdmissibleResourceInstances) {
-		Map<ResourceInstance, IloIntVar>res = new HashMap<>();
+		Map<ResourceInstance, Integer>res = new HashMap<>();
 		for(ResourceInstance r: allAdmissibleResourceInstances)
-		{
-			try {
-				res.put(r, cplex
-						.boolVar("ActiveResourceVar("+r+")"
-						));
-			} catch (IloException e) {e.printStackTrace();throw new Error();}
-		}
+			res.put(r, lp.addBinaryColumn("ActiveResourceVar", r));
 		return res;
 	}
 
 
-	private static void debugPrint(IloCplex cplex,
-			Map<UserResourceInstanceAllocation, IloIntVar> allocToVar,
-			Map<ResourceInstance, IloIntVar> varPerResource,
-			Map<ResourceOwner, IloIntVar> varPerOwner) throws UnknownObjectException, IloException {
+	private static void debugPrint(double[] values,
+			Map<UserResourceInstanceAllocation, Integer> allocToVar,
+			Map<ResourceInstance, Integer> varPerResource,
+			Map<ResourceOwner, Integer> varPerOwner) {
 		
 		System.out.println("Debug print");
 		
 		for(UserResourceInstanceAllocation URIAlloc: allocToVar.keySet())
-			System.out.println(URIAlloc+" "+cplex.getValue(allocToVar.get(URIAlloc)));
+			System.out.println(URIAlloc+" "+values[allocToVar.get(URIAlloc)]);
 		
 		for(ResourceInstance ri: varPerResource.keySet())
-			System.out.println(ri+" "+cplex.getValue(varPerResource.get(ri)));
+			System.out.println(ri+" "+values[varPerResource.get(ri)]);
 		
 		for(ResourceOwner ro:varPerOwner.keySet())
-			System.out.println(ro+" "+cplex.getValue(varPerOwner.get(ro)));
+			System.out.println(ro+" "+values[varPerOwner.get(ro)]);
 		
 		System.out.println("Debug print end");
 	}
 
 
 	private static void addConstraintsOnResourceOwners(
-			IloCplex cplex, 
+			LinearModel lp, 
 			SortedSet<ResourceInstance> allAdmissibleResources, 
 			Set<UserResourceInstanceAllocation> allAdmissibleAllocations,
 			ProblemInstance inF, 
 			int maxNbResourcePerOwner, 
-			Map<UserResourceInstanceAllocation, IloIntVar> varPerAlloc,
-			Map<ResourceInstance,IloIntVar> varPerResource) throws IloException {
+			Map<UserResourceInstanceAllocation, Integer> varPerAlloc,
+			Map<ResourceInstance,Integer> varPerResource,
+			Presolve presolve) {
 
 		for(ResourceOwner rp : inF.getAllResourceOwners())
 		{
-			IloNumExpr countResourcesAllocatedForRP = cplex.constant(0);
-
-			for(ResourceInstance r: inF.getResourceInstancesFrom(rp)
-					.stream()
-					.filter(x->allAdmissibleResources.contains(x))
-					.collect(Collectors.toSet()))
-				countResourcesAllocatedForRP = cplex.sum(
-						countResourcesAllocatedForRP, varPerResource.get(r));
-			cplex.addGe(
+			if(!presolve.hasAdmissibleInstance(rp)) continue;
+			for(ResourceInstance r: inF.getResourceInstancesFrom(rp))
+				if(allAdmissibleResources.contains(r))
+					lp.addTerm(varPerResource.get(r), 1);
+			lp.addLe(
 					maxNbResourcePerOwner, 
-					countResourcesAllocatedForRP, 
-					"AllocateResourceFromAllocatorAtMost"+maxNbResourcePerOwner+"Times("
-							+rp+","+inF.getMinNumUsersPerResource()+")");
+					"AllocateResourceFromAllocatorAtMost"+maxNbResourcePerOwner+"Times",
+					Arrays.asList(rp, inF.getMinNumUsersPerResource()));
 		}
 	}
 	
@@ -238,329 +733,377 @@ public class Solver {
 	
 	
 
+	/**
+	 * The units are first split into the components of Decomposition, within the worst 
+	 * rank of the greedy allocation: the components are solved concurrently, 
+	 * each on its own, then their allocations are merged. 
+	 * Each component weights its ranks with powers of its own number of users (and so 
+	 * does the owner term), hence the merged allocation is not the optimum of the weighted
+	 * objective of the whole instance: it is only leximin-optimal up to ties between 
+	 * components (e.g. in the owner term), the worst rank of the merged allocation being 
+	 * the worst among the components.
+	 * The allocation of LocalSearch, if any, bounds the worst rank and is the start of 
+	 * the exact solves; with SOLVE_MODE:HEURISTIC, it is the result, and with SOLVE_MODE:LNS, 
+	 * the start of LargeNeighborhoodSearch.
+	 * When LeximinMatching applies, its allocation is returned if optimal, else it is used instead 
+	 * of the one of LocalSearch when better.
+	 * @param input
+	 * @return
+	 */
 	public static Set<UserResourceInstanceAllocation> getOptimalAllocation(ProblemInstance input) {
 		
-		int maximumInsatisfaction = 
-				SatisfactionMeasure.newInstance(
-						findAllocationWithMinimalWorseInsatisfaction(input),
-						input).getWorseAllocationValue();
+		Optional<Set<UserResourceInstanceAllocation>> matching = LeximinMatching.isApplicable(input) ?
+				LeximinMatching.getAllocation(input) : Optional.empty();
+		if(matching.isPresent() && LeximinMatching.isOptimal(input, matching.get()))
+			return matching.get();
+		List<List<User>> units = FeasibilityOracle.getUnitsOf(input);
+		Optional<Set<UserResourceInstanceAllocation>> greedy = LocalSearch.getAllocation(input);
+		if(matching.isPresent() && (!greedy.isPresent() || RankHistogram.newInstance(matching.get(), input)
+				.compareTo(RankHistogram.newInstance(greedy.get(), input)) < 0))
+			greedy = matching;
+		if(input.getSolveMode().equals(SolveMode.HEURISTIC))
+			return greedy.orElseThrow(()->
+			new Error("No allocation found by the local search, try another SOLVE_MODE"));
+		if(input.getSolveMode().equals(SolveMode.LNS))
+			return LargeNeighborhoodSearch.improve(input, greedy.orElseThrow(()->
+			new Error("No allocation found by the local search, try another SOLVE_MODE")));
+		int max = greedy.isPresent() ? 
+				SatisfactionMeasure.newInstance(greedy.get(), input).getWorseAllocationValue():
+					InsatisfactionBounds.getMaxRank(input);
+		List<List<List<User>>> components = Decomposition.getComponents(input, units, max);
+		if(components.size() == 1)
+			return getOptimalAllocation(input, units, greedy);
 		
-		return getOptimalAllocationMatchingSatisfactionMeasureAndMinimizingResourceOwnerLoad
-				(
-				input,
-				maximumInsatisfaction
-				);
-	
+		int nbThreads = Math.min(components.size(), Runtime.getRuntime().availableProcessors());
+		System.out.println("Solving "+components.size()+" independent components on "
+				+nbThreads+" threads");
+		ExecutorService pool = Executors.newFixedThreadPool(nbThreads);
+		try
+		{
+			List<Future<Set<UserResourceInstanceAllocation>>> allocationPerComponent = 
+					new ArrayList<>();
+			for(List<List<User>> component: components)
+			{
+				Set<User> users = component.stream().flatMap(List::stream).collect(Collectors.toSet());
+				Optional<Set<UserResourceInstanceAllocation>> start = greedy.map(x->x.stream()
+						.filter(y->users.contains(y.getUser()))
+						.collect(Collectors.toSet()));
+				allocationPerComponent.add(pool.submit(()->
+				getOptimalAllocation(input, component, start)));
+			}
+			
+			Set<UserResourceInstanceAllocation> res = new HashSet<>();
+			for(int i = 0 ; i < components.size(); i++)
+			{
+				Set<UserResourceInstanceAllocation> allocation = allocationPerComponent.get(i).get();
+				System.out.println("Component "+(i + 1)+" ("+allocation.size()+" users): "
+						+SatisfactionMeasure.newInstance(allocation, input));
+				res.addAll(allocation);
+			}
+			System.out.println("Merged components: "+SatisfactionMeasure.newInstance(res, input));
+			return res;
+		}
+		catch (InterruptedException | ExecutionException e) {
+			throw new Error(e);
+		}
+		finally
+		{
+			pool.shutdown();
+		}
 	}
-
+	
 	/**
-	 * Just a safety check
-	 * @param optimal
+	 * The bounds on the least satisfaction are computed first, then a single 
+	 * AllocationSession covering them is used for finding the least satisfaction 
+	 * and for the final optimization.
 	 * @param input
+	 * @param units the units to be given resources
+	 * @param greedy if present, an allocation of units
+	 * @return
 	 */
-	private static void checkAllocation(
-			Set<UserResourceInstanceAllocation> optimal,
-			ProblemInstance input) {
-		for(UserGroup ug: input.getUserGroups())
-		{
-			Map<User,ResourceInstance> allocatedResourcesFor=
-					optimal.stream()
-					.filter(x->ug.getUsers().contains(x.getUser()))
-					.collect(Collectors.toMap(x->x.getUser(),
-							x->x.getResource())
+	private static Set<UserResourceInstanceAllocation> getOptimalAllocation(ProblemInstance input,
+			List<List<User>> units, Optional<Set<UserResourceInstanceAllocation>> greedy) {
+		
+		int min = InsatisfactionBounds.getLowerBound(input, FeasibilityOracle.newInstance(input, units));
+		int max = greedy.isPresent() ? 
+				SatisfactionMeasure.newInstance(greedy.get(), input).getWorseAllocationValue():
+					InsatisfactionBounds.getMaxRank(input);
+		System.out.println("Bounds on the least satisfaction rank: ["+min+","+max+"]"
+				+(greedy.isPresent()? " (heuristic allocation found)":""));
+		
+		try(AllocationSession session = new AllocationSession(input, units, max, Integer.MAX_VALUE, true))
+		{
+			if(greedy.isPresent())
+				session.setStart(greedy.get());
+			
+			int maximumInsatisfaction = 
+					SatisfactionMeasure.newInstance(
+							findAllocationWithMinimalWorseInsatisfaction(session, min, max, greedy),
+							input).getWorseAllocationValue();
+
+			if(input.getSolveMode().equals(SolveMode.LEXIMIN))
+				return optimizeLexicographically(session, maximumInsatisfaction);
+
+			return getOptimalAllocationMatchingSatisfactionMeasureAndMinimizingResourceOwnerLoad
+					(
+							session,
+							maximumInsatisfaction
 							);
-			assert(allocatedResourcesFor.values().stream()
-					.collect(Collectors.toSet()).size()==1);
 		}
+	
 	}
 
-
 	/**
 	 * Find a feasible allocation, with a maximal level of insatisfaction of minimum value
 	 * This allocation is not necessarily optimal.
-	 * @param input
+	 * 
+	 * The search is restricted to the interval given by InsatisfactionBounds, 
+	 * the lower bound being tried first as it is usually tight, then bisected.
+	 * @param session
+	 * @param min no allocation exists below min
+	 * @param max
+	 * @param res if present, an allocation within max
 	 * @return
 	 */
-	private static Set<UserResourceInstanceAllocation> findAllocationWithMinimalWorseInsatisfaction(ProblemInstance input)
+	private static Set<UserResourceInstanceAllocation> findAllocationWithMinimalWorseInsatisfaction(
+			AllocationSession session, int min, int max, 
+			Optional<Set<UserResourceInstanceAllocation>> res)
 	{
-		Optional<Set<UserResourceInstanceAllocation>> res = Optional.empty();
-
-		for(int i = 1 ; i <= input.getAllUsers().size()&&!res.isPresent(); i++)
+		//invariant: no allocation below min, unless a solve below min was not proven infeasible
+		//(then unprovenRank is the highest such rank); if present, res is an allocation within max
+		boolean isLowerBoundTried = false;
+		int unprovenRank = -1;
+		while(min < max || !res.isPresent())
 		{
-			System.out.println(
-					"Trying to find an allocation with a maximum "
-							+ "least satisfaction of rank:"+i);
+			if(min > max)
+				throw new Error("No allocation can be found, whatever the insatisfaction");
+			int i = isLowerBoundTried ? (min + max) / 2 : min;
+			isLowerBoundTried = true;
+			
+			Optional<Set<UserResourceInstanceAllocation>> allocation = 
+					findAllocationWithMaxInsatisfaction(session, i);
+			if(allocation.isPresent())
+			{
+				res = allocation;
+				max = i;
+				continue;
+			}
+			if(!session.status.equals(SolveStatus.INFEASIBLE))
+			{
+				System.out.println("No allocation found within rank "+i+", but none was proven "
+						+ "not to exist: searching above it");
+				unprovenRank = i;
+			}
+			min = i + 1;
+		}
+		
+		if(unprovenRank >= 0 && unprovenRank < max)
+			System.out.println("Worst rank "+max+" not proven minimal: the solver gave up within rank "
+					+unprovenRank);
+		return res.get();
+	}
 
-			res= Solver.optimizeAccordingToMaxInsatisfaction(
-					i,
-					input,
-					Integer.MAX_VALUE
-					);
+	/**
+	 * With SOLVE_MODE:LEXIMIN, any allocation within maxInsatisfaction will do
+	 * (see AllocationSession.findAllocation), the stages of optimizeLexicographically
+	 * optimizing it afterwards
+	 */
+	private static Optional<Set<UserResourceInstanceAllocation>> findAllocationWithMaxInsatisfaction(
+			AllocationSession session, int maxInsatisfaction)
+	{
+		System.out.println(
+				"Trying to find an allocation with a maximum "
+						+ "least satisfaction of rank:"+maxInsatisfaction);
+		
+		Optional<InfeasibilityCertificate> certificate = 
+				session.oracle.getInfeasibilityCertificate(maxInsatisfaction);
+		if(certificate.isPresent())
+		{
+			System.out.println("No allocation: "+certificate.get());
+			session.status = SolveStatus.INFEASIBLE;
+			return Optional.empty();
 		}
 
-		return res.get();
+		session.setMaxInsatisfaction(maxInsatisfaction);
+		if(session.inF.getSolveMode().equals(SolveMode.LEXIMIN))
+			return session.findAllocation();
+		return session.minimizeWeightedInsatisfaction();
 	}
 
 
 	/**
 	 * Computes the optimal allocation, using mathematical trickery for the reward function.
 	 * Tries to minimize the maximum number of resource allocated for each owner 
-	 * @param input
+	 * @param session
 	 * @param worseInsatisfactionConsidered
 	 * @return
 	 */
-	private static Set<UserResourceInstanceAllocation> getOptimalAllocationMatchingSatisfactionMeasureAndMinimizingResourceOwnerLoad(ProblemInstance input,
+	private static Set<UserResourceInstanceAllocation> getOptimalAllocationMatchingSatisfactionMeasureAndMinimizingResourceOwnerLoad(AllocationSession session,
 			int worseInsatisfactionConsidered) {	
-	/*	int minAllocationPerOwner = 1;
-		int maxAllocationPerOwner = 1;
-		
-		while(!matchesScore(worseInsatisfactionConsidered, maxAllocationPerOwner, input))
-		{
-			minAllocationPerOwner = maxAllocationPerOwner;
-			maxAllocationPerOwner*=2;
-		}
-		
-		Optional<Set<UserResourceInstanceAllocation>> res = Optional.empty();
-		
-		if(input.isMinimizingTheWorkloadOfTheMostLoaded())
-		while(minAllocationPerOwner < maxAllocationPerOwner)
-		{
-			int i = (maxAllocationPerOwner + minAllocationPerOwner) / 2;
-			System.out.println(
-					"Trying to find an allocation with a maximum "
-					+ "least satisfaction of rank:"+worseInsatisfactionConsidered+
-					" and a maximum number of allocations per owner of:"
-					+i
-					);
-			
-			res= Solver.optimizeAccordingToMaxInsatisfaction(
-					worseInsatisfactionConsidered,
-					input,i);
-			
-			if(res.isPresent())
-				maxAllocationPerOwner = i;
-			else
-				minAllocationPerOwner = i+1;
-		}*/
-		
-		return Solver.optimizeAccordingToMaxInsatisfaction(
-				worseInsatisfactionConsidered,
-				input,Integer.MAX_VALUE).get();
-	}
-
-
-
-	private static boolean matchesScore(int worseInsatisfactionToMeet, int max, ProblemInstance input) {
-		Optional<Set<UserResourceInstanceAllocation>> res = Optional.empty();
-
-		System.out.println(
-				"Trying to find an allocation with a maximum "
-						+ "least satisfaction of rank:"+worseInsatisfactionToMeet+
-						" and a maximum number of allocations per owner of:"
-						+max
-				);
-
-		res= Solver.optimizeAccordingToMaxInsatisfaction(
-				worseInsatisfactionToMeet,
-				input,max);
-
-		return res.isPresent();
+		System.out.println("Minimizing the number of least happy people:");
+		session.setMaxInsatisfaction(worseInsatisfactionConsidered);
+		Optional<Set<UserResourceInstanceAllocation>> res = session.minimizeWeightedInsatisfaction();
+		if(!res.isPresent())
+			throw new Error("No allocation found within rank "+worseInsatisfactionConsidered
+					+" (solve status "+session.status+"), although one was found before");
+		if(!session.status.equals(SolveStatus.OPTIMAL))
+			System.out.println("The allocation found is not proven optimal");
+		return res.get();
 	}
 
-
 	static void generateHardAllocationsConstraints(
-			IloCplex cplex, 
-			Map<UserResourceInstanceAllocation, IloIntVar> varPerAlloc,
-			Set<UserResourceInstanceAllocation> hardConstraints) throws IloException {
+			LinearModel lp, 
+			Map<UserResourceInstanceAllocation, Integer> varPerAlloc,
+			Set<UserResourceInstanceAllocation> hardConstraints) {
 		for(UserResourceInstanceAllocation hc: hardConstraints)
-			cplex.addEq(1,
-					varPerAlloc.get(hc), "HardConstraint("+hc+")");
+		{
+			lp.addTerm(varPerAlloc.get(hc), 1);
+			lp.addEq(1, "HardConstraint", hc);
+		}
 	}
 
 
 
-	static Map<UserResourceInstanceAllocation, IloIntVar> generateVariablePerAllocation(
-			IloCplex cplex,
-			Collection<UserResourceInstanceAllocation> consideredAllocations
-			) throws IloException {
-		Map<UserResourceInstanceAllocation, IloIntVar> varPerAlloc = new HashMap<>();
-		
-		for(UserResourceInstanceAllocation pl : consideredAllocations)
-				varPerAlloc.put(pl,
-						cplex.boolVar(
-						//cplex.numVar(0, 1,
-								pl.toString()));
-		
-		return varPerAlloc;
+	/**
+	 * One column per unit and resource instance accepted by all the members of the unit 
+	 * (as long as the unit fits in an instance). 
+	 * The column of a unit that presolve leaves with a single resource instance is fixed to 1.
+	 * @return the allocations of the members of the unit of each column
+	 */
+	static Map<Integer, List<UserResourceInstanceAllocation>> generateVariablePerUnitAllocation(
+			LinearModel lp,
+			ProblemInstance inF,
+			List<List<User>> units,
+			int maxInsatisfaction,
+			Presolve presolve
+			) {
+		Map<Integer, List<UserResourceInstanceAllocation>> res = new LinkedHashMap<>();
+		for(List<User> unit: units)
+		{
+			if(unit.size() > inF.getMaxNbUsersPerResource()) continue;
+			ResourceType forced = presolve.getForcedResourceType(unit);
+			boolean isForced = forced != null && inF.getAmountOf(forced) == 1;
+			inF.getResouceInstanceAllocationsFor(unit.get(0), maxInsatisfaction)
+			.stream()
+			.map(x->x.getResource())
+			.sorted(RESOURCE_INSTANCE_ORDER)
+			.forEachOrdered(r->{
+				if(!unit.stream().allMatch(u->
+				isWithin(inF.getRanks().getRank(u, r.getResourceType()), maxInsatisfaction)))
+					return;
+				List<UserResourceInstanceAllocation> allocations = unit.stream()
+						.map(u->UserResourceInstanceAllocation.newInstance(u, r))
+						.collect(Collectors.toList());
+				res.put(lp.addColumn(isForced ? 1 : 0, 1, true, null, 
+						allocations.size() == 1 ? allocations.get(0) : allocations), allocations);
+			});
+		}
+		return res;
+	}
+	
+	/**
+	 * @param rank a rank of RankTable, -1 if there is none
+	 */
+	private static boolean isWithin(int rank, int maxInsatisfaction)
+	{
+		return rank >= 0 && rank <= maxInsatisfaction;
 	}
-
-
 
 	static Set<UserResourceInstanceAllocation> processCplexResults(
-			IloCplex cplex, 
-			Map<UserResourceInstanceAllocation, IloIntVar> varPerAlloc) {
+			double[] values, 
+			Map<UserResourceInstanceAllocation, Integer> varPerAlloc) {
 		return varPerAlloc.keySet().stream()
-		.filter(x->{
-			try {
-				return cplex.getValue(varPerAlloc.get(x))>0.01;
-			} catch (IloException e) {
-				e.printStackTrace();
-				throw new Error();
-	
-			}
-		})
+		.filter(x->values[varPerAlloc.get(x)]>0.01)
 		.collect(Collectors.toSet());
 	}
 	
+	/**
+	 * Adds to the pending row the columns of resource, each weighted by the size of its unit 
+	 */
+	private static void addNbUsersOf(LinearModel lp, ResourceInstance resource,
+			Map<ResourceInstance, List<Integer>> varsPerResource,
+			Map<Integer, List<UserResourceInstanceAllocation>> allocationsPerVar)
+	{
+		for(int var: varsPerResource.get(resource))
+			lp.addTerm(var, allocationsPerVar.get(var).size());
+	}
+	
 	public static void generateAllocationConstraints(
-			IloCplex cplex, 
+			LinearModel lp, 
+			List<List<User>> units,
 			Set<UserResourceInstanceAllocation> allAdmissibleAllocations, 
 			SortedSet<ResourceInstance> allAdmissibleResources,
-			Map<UserResourceInstanceAllocation, IloIntVar> varPerAlloc,
-			Map<ResourceInstance, IloIntVar> allocatedResourceVar,
-			Map<ResourceOwner, IloIntVar> varPerActiveOwner, 
-			Map<ResourceInstance, IloIntVar> allocationJoker,
+			Map<Integer, List<UserResourceInstanceAllocation>> allocationsPerVar,
+			Map<ResourceInstance, List<Integer>> varsPerResource,
+			Map<UserResourceInstanceAllocation, Integer> varPerAlloc,
+			Map<ResourceInstance, Integer> allocatedResourceVar,
+			Map<ResourceOwner, Integer> varPerActiveOwner, 
+			Map<ResourceInstance, Integer> allocationJoker,
 			ProblemInstance inF,
-			int maxNbResourcePerOwner
-			)
-					throws IloException{
+			int maxNbResourcePerOwner,
+			Presolve presolve
+			) {
 		
-		connectResourcesAndAllocations(cplex,
-				inF, 
+		connectResourcesAndAllocations(lp,
+				inF,
 				allocatedResourceVar,
-				varPerAlloc
+				varsPerResource, 
+				allocationsPerVar
 				);
 		
-		matchAllocationsOfGroups(cplex, inF, varPerAlloc);
-		
+		allocateExactlyOneResourcePerUnit(lp, units, varPerAlloc);
 		
-		Set<UserResourceInstanceAllocation>validAllocations = varPerAlloc.keySet();
-		
-		allocateExactlyOneResourcePerUser(cplex,inF, validAllocations, varPerAlloc);
-		
-		allocateEachResourceInstanceAtMostKTimes(cplex, 
+		allocateEachResourceInstanceAtMostKTimes(lp, 
 				inF, 
-				varPerAlloc, 
 				allAdmissibleResources,
-				validAllocations);
+				varsPerResource, 
+				allocationsPerVar,
+				presolve);
 		
 		
 		forceResourcesToBeAllocatedAccordingToUserResourceAllocations(
-				cplex,
-				allAdmissibleAllocations, allocatedResourceVar, varPerAlloc);
+				lp,
+				allocationsPerVar, allocatedResourceVar);
 		
 		
 		forceOwnersToBeInactiveActiveIfAllOfTheirResourceAreInactive(
-				cplex, inF,
+				lp, inF,
 				allAdmissibleAllocations, allocatedResourceVar, varPerActiveOwner);
 		
 		for(ResourceInstance resource: allAdmissibleResources)
 		{
-			IloNumExpr countUsersPerResource = cplex.constant(0);
-			for(UserResourceInstanceAllocation s: inF.getAllocationsForResource(resource)
-					.stream()
-					.filter(x->allAdmissibleAllocations.contains(x))
-					.collect(Collectors.toSet()))
-			{
-				countUsersPerResource = cplex.sum(
-						countUsersPerResource, varPerAlloc.get(s));
-			}
+			addNbUsersOf(lp, resource, varsPerResource, allocationsPerVar);
 			
 			//if the resource is not allocated, then the minimum is zero
-			countUsersPerResource = cplex.sum(
-					countUsersPerResource,
-					cplex.prod(-inF.getMaxNbUsersPerResource(),
-							allocatedResourceVar.get(resource)));
-			
-			countUsersPerResource = cplex.sum(
-					countUsersPerResource,
-					cplex.prod(-inF.getMaxNbUsersPerResource(),
-							allocationJoker.get(resource)));
+			lp.addTerm(allocatedResourceVar.get(resource), -inF.getMaxNbUsersPerResource());
+			lp.addTerm(allocationJoker.get(resource), -inF.getMaxNbUsersPerResource());
 					
-			cplex.addLe(
-					countUsersPerResource,
+			lp.addLe(
 					0, 
-					"EachNonAllocatedResourceIsAllocatedAtMost0TimesUnlessTheJokerIsUsed("+resource+")");
+					"EachNonAllocatedResourceIsAllocatedAtMost0TimesUnlessTheJokerIsUsed", resource);
 		}
 		
 		forceAllocatedResourcesToBeAllocatedKTimes(
-				cplex,
-				allAdmissibleResources, inF,allAdmissibleAllocations,varPerAlloc,allocatedResourceVar, allocationJoker);
+				lp,
+				allAdmissibleResources, inF, varsPerResource, allocationsPerVar, allocatedResourceVar);
 		
 		
 		
 		
-		IloNumExpr allJokers = cplex.constant(0);
-		for(IloIntVar joker: allocationJoker.values())
-			allJokers = cplex.sum(allJokers, joker);
-		cplex.addLe(allJokers, 1,
-				"AtMostOneJoker");
+		for(int joker: allocationJoker.values())
+			lp.addTerm(joker, 1);
+		lp.addLe(1,
+				"AtMostOneJoker", null);
 		
-		for(ResourceInstance resource: allAdmissibleResources.stream()
-				.filter(x->allAdmissibleAllocations.contains(x))
-				.collect(Collectors.toSet()))
-		{
-			IloNumExpr countUsersPerResource = cplex.constant(0);
-			for(UserResourceInstanceAllocation s: inF.getAllocationsForResource(resource))
-			{
-				countUsersPerResource = cplex.sum(
-						countUsersPerResource, varPerAlloc.get(s));
-			}
-			
-			//if the resource is not allocated, then the minimum is zero
-			countUsersPerResource = cplex.sum(
-					countUsersPerResource,
-					cplex.prod(-inF.getMinNumUsersPerResource(),
-							allocatedResourceVar.get(resource)));
-					
-			cplex.addGe(
-					0, 
-					countUsersPerResource, 
-					"EachAllocatedResourceIsAllocatedAtLeastKTimes("
-					+resource+","+inF.getMinNumUsersPerResource()+")");
-		}
-		
-		
-
-
-		//ensure pairs
-		for(UserGroup userGroup: inF.getUserGroups())
-			for(ResourceInstance resource: allAdmissibleResources.stream()
-					.filter(x->allAdmissibleAllocations.contains(x))
-					.collect(Collectors.toSet()))
-			{
-				User u0 = userGroup.getUsers().iterator().next();
-				UserResourceInstanceAllocation u0PicksR=
-						UserResourceInstanceAllocation.newInstance(u0, resource);
-				
-				if(!varPerAlloc.containsKey(u0PicksR)) continue;
-
-				for(User u1: userGroup.getUsers())	
-				{
-					UserResourceInstanceAllocation u1PicksR= 
-							UserResourceInstanceAllocation.newInstance(u1, resource);
-
-					IloNumExpr exprUser0PicksR =
-							varPerAlloc.get(u0PicksR);
-
-					IloNumExpr exprUser1PicksR =
-							varPerAlloc.get(u1PicksR);
-
-					cplex.addEq(exprUser0PicksR, 
-							exprUser1PicksR,
-							"PairedUsersMatchTheirDecisions("
-									+u0+","
-									+u1+","+
-									resource+")");
-				}
-			}
+		//groups need no row of their own: each of them is a single unit, 
+		//with one column per resource instance
 		
 		addConstraintsOnResourceOwners(
-				cplex,
+				lp,
 				allAdmissibleResources,
 				allAdmissibleAllocations,
 				inF,
-				maxNbResourcePerOwner, varPerAlloc, allocatedResourceVar);
+				maxNbResourcePerOwner, varPerAlloc, allocatedResourceVar, presolve);
 		
 		
 		//ensure adequate resource consumption
@@ -578,38 +1121,116 @@ public class Solver {
 			cplex.addEq(total, inF.numberOfUsersPerResource, "FullAllocationOfResource("+resource+")");
 		}*/
 		
-		generateHardAllocationsConstraints(cplex, varPerAlloc, inF.getHardConstraints());
-
+		generateHardAllocationsConstraints(lp, varPerAlloc, 
+				getHardConstraintsOf(inF, units.stream()
+						.flatMap(List::stream).collect(Collectors.toSet())));
+		
+		if(inF.isBreakingSymmetries())
+			orderInstancesOfEachResourceType(lp, inF, 
+					allAdmissibleResources, allocatedResourceVar);
 		
 	}
-
-
-	private static void allocateExactlyOneResourcePerUser(IloCplex cplex, ProblemInstance inF, Set<UserResourceInstanceAllocation> validAllocations, Map<UserResourceInstanceAllocation, IloIntVar> varPerAlloc) throws IloException {
-		for(User pl: inF.getAllUsers())
+	
+	private static Set<UserResourceInstanceAllocation> getHardConstraintsOf(ProblemInstance inF, 
+			Set<User> users)
+	{
+		return inF.getHardConstraints().stream()
+				.filter(x->users.contains(x.getUser()))
+				.collect(Collectors.toSet());
+	}
+	
+	private static Set<ResourceType> getResourceTypesOfHardConstraints(ProblemInstance inF)
+	{
+		return inF.getHardConstraints().stream()
+				.map(x->x.getResource().getResourceType())
+				.collect(Collectors.toSet());
+	}
+	
+	/**
+	 * @return allocation, the copies of each resource type being renumbered by decreasing 
+	 * number of users, so that the opened ones come first (as required by 
+	 * orderInstancesOfEachResourceType)
+	 */
+	private static Set<UserResourceInstanceAllocation> renumberByDecreasingLoad(
+			Set<UserResourceInstanceAllocation> allocation, ProblemInstance inF)
+	{
+		Set<ResourceType> constrainedTypes = getResourceTypesOfHardConstraints(inF);
+		Map<ResourceInstance, List<User>> usersPerInstance = allocation.stream()
+				.collect(Collectors.groupingBy(x->x.getResource(), 
+						Collectors.mapping(x->x.getUser(), Collectors.toList())));
+		Map<ResourceType, List<ResourceInstance>> instancesPerType = usersPerInstance.keySet()
+				.stream()
+				.collect(Collectors.groupingBy(x->x.getResourceType()));
+		
+		Set<UserResourceInstanceAllocation> res = new HashSet<>();
+		instancesPerType.forEach((type, instances)->{
+			if(!constrainedTypes.contains(type))
+				instances.sort(Comparator
+						.comparingInt((ResourceInstance x)->-usersPerInstance.get(x).size())
+						.thenComparingInt(ResourceInstance::getInstanceNumber));
+			for(int i = 0 ; i < instances.size(); i++)
+			{
+				ResourceInstance renumbered = constrainedTypes.contains(type) ? 
+						instances.get(i) : ResourceInstance.newInstance(type, i);
+				for(User u: usersPerInstance.get(instances.get(i)))
+					res.add(UserResourceInstanceAllocation.newInstance(u, renumbered));
+			}
+		});
+		return res;
+	}
+	
+	/**
+	 * The copies of a resource type are interchangeable: any allocation can be renumbered 
+	 * so that copy i is opened only if copy i-1 is. 
+	 * Only the renumbered allocations are kept, sparing the solver their permutations.
+	 * Copies named in hard constraints are not interchangeable, hence left unordered.
+	 */
+	private static void orderInstancesOfEachResourceType(
+			LinearModel lp, ProblemInstance inF,
+			SortedSet<ResourceInstance> allAdmissibleResources,
+			Map<ResourceInstance, Integer> allocatedResourceVar) {
+		Set<ResourceType> constrainedTypes = getResourceTypesOfHardConstraints(inF);
+		
+		ResourceInstance previous = null;
+		for(ResourceInstance resource: allAdmissibleResources)
 		{
-			IloNumExpr oneResourcePerUser = 
-					cplex.constant(0);
-			for(UserResourceInstanceAllocation al: inF.getResouceInstanceAllocationsFor(pl))
+			if(previous != null 
+					&& previous.getResourceType().equals(resource.getResourceType())
+					&& !constrainedTypes.contains(resource.getResourceType()))
 			{
-				if(!validAllocations.contains(al))continue;
-				oneResourcePerUser = 
-						cplex.sum(
-						oneResourcePerUser,
-						varPerAlloc.get(al));
+				lp.addTerm(allocatedResourceVar.get(resource), 1);
+				lp.addTerm(allocatedResourceVar.get(previous), -1);
+				lp.addLe(0, "InstanceIsOpenedAfterThePreviousOne", resource);
 			}
-			cplex.addEq(
+			previous = resource;
+		}
+	}
+
+
+	private static void allocateExactlyOneResourcePerUnit(LinearModel lp, List<List<User>> units, 
+			Map<UserResourceInstanceAllocation, Integer> varPerAlloc) {
+		Map<User, List<Integer>> varsPerFirstMember = new HashMap<>();
+		varPerAlloc.forEach((a, var)->{
+			if(!varsPerFirstMember.containsKey(a.getUser()))
+				varsPerFirstMember.put(a.getUser(), new ArrayList<>());
+			varsPerFirstMember.get(a.getUser()).add(var);
+		});
+		for(List<User> unit: units)
+		{
+			varsPerFirstMember.getOrDefault(unit.get(0), new ArrayList<>())
+			.stream().sorted().forEachOrdered(var->lp.addTerm(var, 1));
+			lp.addEq(
 					1,
-					oneResourcePerUser,
-					"EachUserIsGivenExactlyOneResource("+pl+")");
+					"EachUserIsGivenExactlyOneResource", unit.size() == 1 ? unit.get(0) : unit);
 		}
 	}
 
 
 	private static void forceOwnersToBeInactiveActiveIfAllOfTheirResourceAreInactive(
-			IloCplex cplex, ProblemInstance inF,
+			LinearModel lp, ProblemInstance inF,
 			Set<UserResourceInstanceAllocation> allAdmissibleAllocations,
-			Map<ResourceInstance, IloIntVar> allocatedResourceVar, 
-			Map<ResourceOwner, IloIntVar> varPerActiveOwner) throws IloException {
+			Map<ResourceInstance, Integer> allocatedResourceVar, 
+			Map<ResourceOwner, Integer> varPerActiveOwner) {
 		Set<ResourceInstance>instances = allAdmissibleAllocations.stream()
 				.map(x->x.getResource())
 				.collect(Collectors.toSet());
@@ -618,13 +1239,10 @@ public class Solver {
 		
 		for(ResourceOwner ro: activeInstances.keySet())
 		{
-			IloNumExpr sumAllocatedResourceInstances = cplex.constant(0);
+			lp.addTerm(varPerActiveOwner.get(ro), 1);
 			for(ResourceInstance ri: activeInstances.get(ro))
-			{
-				sumAllocatedResourceInstances = cplex.sum(
-						sumAllocatedResourceInstances, allocatedResourceVar.get(ri));
-			}
-			cplex.addLe(varPerActiveOwner.get(ro), sumAllocatedResourceInstances);
+				lp.addTerm(allocatedResourceVar.get(ri), -1);
+			lp.addLe(0, "OwnerIsActiveOnlyIfOneOfItsResourcesIs", ro);
 		}
 		
 		
@@ -632,180 +1250,112 @@ public class Solver {
 
 
 	private static void forceAllocatedResourcesToBeAllocatedKTimes(
-			IloCplexModeler cplex, SortedSet<ResourceInstance> allAdmissibleResources,
-			ProblemInstance inF, Set<UserResourceInstanceAllocation> allAdmissibleAllocations, Map<UserResourceInstanceAllocation, IloIntVar> varPerAlloc, Map<ResourceInstance, IloIntVar> allocatedResourceVar, Map<ResourceInstance, IloIntVar> allocationJoker) throws IloException {
+			LinearModel lp, SortedSet<ResourceInstance> allAdmissibleResources,
+			ProblemInstance inF, 
+			Map<ResourceInstance, List<Integer>> varsPerResource,
+			Map<Integer, List<UserResourceInstanceAllocation>> allocationsPerVar,
+			Map<ResourceInstance, Integer> allocatedResourceVar) {
 		for(ResourceInstance resource: allAdmissibleResources)
 		{
-			IloNumExpr sumAllocatedUsersForResource = cplex.constant(0);
-			for(UserResourceInstanceAllocation ua: inF.getAllocationsForResource(resource).stream()
-					.filter(x->allAdmissibleAllocations.contains(x))
-					.collect(Collectors.toSet()))
-			{
-				sumAllocatedUsersForResource = cplex.sum(
-						sumAllocatedUsersForResource, varPerAlloc.get(ua));
-			}
+			addNbUsersOf(lp, resource, varsPerResource, allocationsPerVar);
 			
 			//if the resource is not allocated, then the minimum is zero else it is
 			//the min number of user per resource
-			IloNumExpr compareAgainst = 			
-			cplex.prod(inF.getMinNumUsersPerResource(), allocatedResourceVar.get(resource));
+			lp.addTerm(allocatedResourceVar.get(resource), -inF.getMinNumUsersPerResource());
 			
-			cplex.addGe(
-					sumAllocatedUsersForResource,
-					compareAgainst, 
-					"EachAllocatedResourceMustBeAllocatedAtLeastKTimes("+resource+")");
+			lp.addGe(
+					0, 
+					"EachAllocatedResourceMustBeAllocatedAtLeastKTimes", resource);
 		}
 	}
 
 
 	private static void forceResourcesToBeAllocatedAccordingToUserResourceAllocations(
-			IloCplexModeler cplex, 
-			Set<UserResourceInstanceAllocation> allAdmissibleAllocations,
-			Map<ResourceInstance, IloIntVar> allocatedResourceVar,
-			Map<UserResourceInstanceAllocation, IloIntVar> varPerAlloc) throws IloException {
-		for(UserResourceInstanceAllocation a:allAdmissibleAllocations)
+			LinearModel lp, 
+			Map<Integer, List<UserResourceInstanceAllocation>> allocationsPerVar,
+			Map<ResourceInstance, Integer> allocatedResourceVar) {
+		allocationsPerVar.forEach((var, allocations)->
 		{
-			cplex.addGe(
-					allocatedResourceVar.get(a.getResource()),
-					varPerAlloc.get(a),
-					"AllocationsEntailResourceAllocations("+a.getResource()+","+a+")");
-		}
+			lp.addTerm(allocatedResourceVar.get(allocations.get(0).getResource()), 1);
+			lp.addTerm(var, -1);
+			lp.addGe(
+					0,
+					"AllocationsEntailResourceAllocations", allocations.get(0));
+		});
 	}
 
 
 	private static void allocateEachResourceInstanceAtMostKTimes(
-			IloCplexModeler cplex, ProblemInstance inF,
-			Map<UserResourceInstanceAllocation, IloIntVar> varPerAlloc,
+			LinearModel lp, ProblemInstance inF,
 			Set<ResourceInstance> allAdmissibleResources,
-			Set<UserResourceInstanceAllocation> allAdmissibleAllocations) throws IloException {
+			Map<ResourceInstance, List<Integer>> varsPerResource,
+			Map<Integer, List<UserResourceInstanceAllocation>> allocationsPerVar,
+			Presolve presolve) {
 		for(ResourceInstance resource: allAdmissibleResources)
 		{
-			IloNumExpr nbOfUsersPerResource = cplex.constant(0);
-			for(UserResourceInstanceAllocation ua: inF.getAllocationsForResource(resource)
-					.stream()
-					.filter(x->allAdmissibleAllocations.contains(x))
-					.collect(Collectors.toSet()))
-			{
-				
-				nbOfUsersPerResource = cplex.sum(
-						nbOfUsersPerResource, varPerAlloc.get(ua));
-			}
-			cplex.addGe(
+			if(presolve.isCapacityNeverBinding(resource.getResourceType())) continue;
+			addNbUsersOf(lp, resource, varsPerResource, allocationsPerVar);
+			lp.addLe(
 					inF.getMaxNbUsersPerResource(), 
-					nbOfUsersPerResource, 
-					"EachResourceIsAllocatedAtMostKTimes("+resource+","+
-					inF.getMaxNbUsersPerResource()+")");
-		}
-	}
-
-
-	private static void matchAllocationsOfGroups(IloCplex cplex, ProblemInstance inF,
-			Map<UserResourceInstanceAllocation, IloIntVar> varPerAlloc
-			) throws IloException {
-		
-		Map<UserGroup,Map<ResourceInstance,IloIntVar>> varPerResourcePerGroup = 
-				new HashMap<>();
-
-		for(UserGroup ug: inF.getUserGroups())
-		{
-			
-			varPerResourcePerGroup.put(ug, new HashMap<>());
-			for(ResourceInstance r: 
-				varPerAlloc.keySet()
-				.stream()
-				.filter(x->ug.getUsers().contains(x.getUser()))
-				.map(x->x.getResource())
-				.collect(Collectors.toSet())
-					)
-			{
-				varPerResourcePerGroup.get(ug).put(r, cplex.boolVar(
-						"isResourceAllocatedToGroup("+
-								r+","+ug+")"));
-			}
-			for(UserResourceInstanceAllocation ua:
-				varPerAlloc.keySet().stream()
-				.filter(x->ug.getUsers().contains(x.getUser()))
-				.collect(Collectors.toSet()))
-			{
-				cplex.addEq(varPerResourcePerGroup.get(ug).get(ua.getResource()),
-						varPerAlloc.get(ua),
-						"allMemberOfUserGroupsMustBeAllocatedTheSameResource("+ua+","+ug+")"
-						);
-			}
+					"EachResourceIsAllocatedAtMostKTimes", 
+					Arrays.asList(resource, inF.getMaxNbUsersPerResource()));
 		}
 	}
 
 
-	private static void connectResourcesAndAllocations(IloCplex cplex, ProblemInstance inF,
-			Map<ResourceInstance, IloIntVar> allocatedResourceVar, 
-			Map<UserResourceInstanceAllocation, IloIntVar> varPerAlloc) throws IloException 
+	/**
+	 * The big-M is the most users an instance may host. 
+	 * If no more users may be given the instance, the row is the sum of the 
+	 * AllocationsEntailResourceAllocations rows of the instance, which are tighter: 
+	 * it is left out.
+	 */
+	private static void connectResourcesAndAllocations(LinearModel lp, 
+			ProblemInstance inF,
+			Map<ResourceInstance, Integer> allocatedResourceVar, 
+			Map<ResourceInstance, List<Integer>> varsPerResource,
+			Map<Integer, List<UserResourceInstanceAllocation>> allocationsPerVar) 
 	{
 		for(ResourceInstance r: allocatedResourceVar.keySet())
 		{
-			IloNumExpr allAllocations = cplex.constant(0);
+			int nbCandidateUsers = varsPerResource.get(r).stream()
+					.mapToInt(x->allocationsPerVar.get(x).size()).sum();
+			if(nbCandidateUsers <= inF.getMaxNbUsersPerResource()) continue;
 			
-			Set<UserResourceInstanceAllocation> allocationsForResource = 
-					varPerAlloc.keySet()
-					.stream()
-					.filter(x->x.getResource().equals(r))
-					.collect(Collectors.toSet());
-					
-			for(UserResourceInstanceAllocation ua:allocationsForResource)
-				allAllocations = cplex.sum(allAllocations, varPerAlloc.get(ua));
+			addNbUsersOf(lp, r, varsPerResource, allocationsPerVar);
 			
-			IloNumExpr resource = 
-					cplex.prod(allocationsForResource.size(), allocatedResourceVar.get(r));
+			lp.addTerm(allocatedResourceVar.get(r), -inF.getMaxNbUsersPerResource());
 			
-			cplex.addLe(allAllocations, resource,
-					"AllocationsMakeResourceConsummed("+r+")");
+			lp.addLe(0,
+					"AllocationsMakeResourceConsummed", r);
 		}
 	}
 
 
-	public static IloNumExpr getExpressionToMinimize(
-			IloCplex cplex, 
+	public static void setObjectiveToMinimize(
+			LinearModel lp, 
 			ProblemInstance inF, 
 			Set<UserResourceInstanceAllocation> allowedAllocations, 
 			Set<User> users,
 			Map<UserResourceInstanceAllocation, Integer> prefsPerAllocation,
-			Map<UserResourceInstanceAllocation, IloIntVar> varPerAlloc, 
-			Map<ResourceOwner, IloIntVar> varPerOwner
-			) throws IloException {
-		IloNumExpr exprToOptimize =  cplex.constant(0);
-		for(UserResourceInstanceAllocation a:allowedAllocations)
-		{
-			exprToOptimize = 
-					cplex.sum(
-							exprToOptimize,
-							cplex.prod(
-									Math.pow(users.size(), prefsPerAllocation.get(a))+1,
-									varPerAlloc.get(a)));
-		}
-		IloNumExpr[] weightedAllocations = new IloIntExpr[prefsPerAllocation.size()];
-
-		int i = 0;
-		for(UserResourceInstanceAllocation a: varPerAlloc.keySet())
-		{
-			weightedAllocations[i] = cplex.prod(
-					varPerAlloc.get(a),
-					prefsPerAllocation.get(a));
-			i++;
-		}
-
+			Map<UserResourceInstanceAllocation, Integer> varPerAlloc, 
+			Map<ResourceOwner, Integer> varPerOwner
+			) {
+		double factor = 1;
 		if(inF.getOwnerAllocationPreferences()
 				.equals(OwnerDesire.AT_LEAST_ONE_INSTANCE_PER_OWNER))
 		{
-			exprToOptimize = cplex.prod(varPerOwner.size()+1,
-					exprToOptimize);
-			
-			IloNumExpr ownerInterest = cplex.constant(0);
+			factor = varPerOwner.size()+1;
 			
 			for(ResourceOwner ro:varPerOwner.keySet())
-				ownerInterest = cplex.sum(cplex.prod(-1,varPerOwner.get(ro)), ownerInterest);
-			
-			exprToOptimize = cplex.sum(ownerInterest, exprToOptimize);	
+				lp.setObjective(varPerOwner.get(ro), -1);
 		}
-		return exprToOptimize;
+		
+		//the members of a group share a column, which sums their coefficients
+		Map<Integer, Double> coefficientPerVar = new HashMap<>();
+		for(UserResourceInstanceAllocation a:allowedAllocations)
+			coefficientPerVar.merge(varPerAlloc.get(a), 
+					factor * (Math.pow(users.size(), prefsPerAllocation.get(a))+1), Double::sum);
+		coefficientPerVar.forEach(lp::setObjective);
 	}
 
 
@@ -0,0 +1,33 @@
+package solver;
+
+/**
+ * A mixed integer linear programming engine, able to solve a LinearModel.
+ * Implementations are discovered through ServiceLoader (see module-info.java),
+ * so that engines depending on native libraries (e.g. CPLEX) remain optional.
+ */
+public interface SolverBackend {
+
+	/**
+	 * @return the name used for selecting this backend (SOLVER_BACKEND parameter)
+	 */
+	String getName();
+
+	/**
+	 * @return the preference for this backend when none is selected explicitly,
+	 * the higher the better
+	 */
+	int getPriority();
+
+	/**
+	 * @return true if this backend can run on this JVM (e.g. its native library is found)
+	 */
+	boolean isAvailable();
+
+	/**
+	 * Loads model. Later changes to model are not seen by the session.
+	 * @param model
+	 * @return a session, to be closed once solved
+	 */
+	SolverSession open(LinearModel model);
+
+}
@@ -0,0 +1,70 @@
+package solver;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.stream.Collectors;
+
+import input.ProblemInstance;
+
+/**
+ * Selection of the SolverBackend, among the ones provided to ServiceLoader.
+ */
+public class SolverBackends {
+
+	public static final String AUTO = "AUTO";
+
+	private static List<SolverBackend> backends = null;
+
+	private SolverBackends() {
+	}
+
+	/**
+	 * @return all the backends that could be instantiated, available or not
+	 */
+	public static synchronized List<SolverBackend> getAllBackends()
+	{
+		if(backends == null)
+		{
+			List<SolverBackend> res = new ArrayList<>();
+			Iterator<SolverBackend> it = ServiceLoader.load(SolverBackend.class).iterator();
+			while(true)
+			{
+				//a provider failing to load does not prevent the next ones from loading
+				try {
+					if(!it.hasNext()) break;
+					res.add(it.next());
+				}
+				catch(ServiceConfigurationError | LinkageError e) {
+					System.out.println("Solver backend not loaded: "+e);
+				}
+			}
+			res.sort(Comparator.comparingInt(SolverBackend::getPriority).reversed());
+			backends = res;
+		}
+		return backends;
+	}
+
+	/**
+	 * @param name the name of a backend, or AUTO for the available one of highest priority
+	 * @return
+	 */
+	public static SolverBackend getBackend(String name)
+	{
+		for(SolverBackend b: getAllBackends())
+			if((name.equals(AUTO) || b.getName().equalsIgnoreCase(name)) && b.isAvailable())
+				return b;
+		throw new Error("No available solver backend named "+name+" among "
+				+getAllBackends().stream().map(x->x.getName()+(x.isAvailable()?"":" (unavailable)"))
+				.collect(Collectors.toList()));
+	}
+
+	public static SolverBackend getBackend(ProblemInstance input)
+	{
+		return getBackend(input.getSolverBackend());
+	}
+
+}
@@ -0,0 +1,72 @@
+package solver;
+
+/**
+ * A model loaded in a SolverBackend, that can be modified and solved again
+ * (each solve starting from what was learned during the previous ones).
+ * Columns and rows keep the ids they have in the LinearModel.
+ */
+public interface SolverSession extends AutoCloseable {
+
+	/**
+	 * @return OPTIMAL or INFEASIBLE once proven. A backend that gives up on part of the 
+	 * search (e.g. numerical trouble) returns FEASIBLE if it holds a solution, UNKNOWN 
+	 * otherwise: neither proves anything on the solutions it did not find.
+	 */
+	SolveStatus solve();
+
+	/**
+	 * @return the value of each column in the last solution, 
+	 * if the last solve has one (see SolveStatus.hasSolution)
+	 */
+	double[] getValues();
+
+	double getObjectiveValue();
+
+	/**
+	 * Replaces the objective (to be minimized)
+	 * @param coefficientPerColumn
+	 * @param constant
+	 */
+	void setObjective(double[] coefficientPerColumn, double constant);
+
+	/**
+	 * Adds lowerBound <= sum coefficients[i] x columns[i] <= upperBound
+	 * @return the id of the new row
+	 */
+	int addRow(int[] columns, double[] coefficients, double lowerBound, double upperBound);
+
+	void setColumnUpperBound(int column, double upperBound);
+
+	/**
+	 * Suggests a solution to start the next solves from (MIP start), replacing the 
+	 * previous one.
+	 * It may be infeasible for the current bounds and rows, in which case it is ignored.
+	 * @param valuePerColumn
+	 */
+	void setStart(double[] valuePerColumn);
+
+	/**
+	 * Tells that no solution has an objective value below lowerBound (e.g. the one of a
+	 * relaxation), so that the next solves may stop as soon as a solution reaches it.
+	 * Forgotten when the objective is replaced.
+	 * @param lowerBound
+	 */
+	void setObjectiveLowerBound(double lowerBound);
+
+	/**
+	 * Limits the wall-clock time of each of the next solves (unlimited by default):
+	 * a solve that reaches it returns FEASIBLE or UNKNOWN, unless proven before
+	 * @param seconds
+	 */
+	void setTimeLimit(double seconds);
+
+	/**
+	 * Turns on or off the messages printed by the next solves (on by default),
+	 * e.g. for the many small solves of LargeNeighborhoodSearch
+	 * @param isVerbose
+	 */
+	void setVerbose(boolean isVerbose);
+
+	void close();
+
+}
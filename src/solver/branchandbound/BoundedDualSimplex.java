@@ -0,0 +1,626 @@
+package solver.branchandbound;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import solver.LinearModel;
+
+/**
+ * Dense tableau dual simplex for bounded variables,
+ * minimizing cost.x such that rowLower <= A.x <= rowUpper and lower <= x <= upper.
+ *
+ * Each row r gets a slack variable s_r = A_r.x bounded by [rowLower, rowUpper], so that
+ * the slacks form a first basis and every basic variable is a linear combination of the
+ * nonbasic ones: x_B[i] = - sum_k tableau[i][k] x_N[k].
+ * Infinite bounds are replaced by +/-BIG, so that every nonbasic variable can sit at
+ * the bound matching the sign of its reduced cost: the basis is always dual feasible,
+ * hence bounds, rows and costs can change between two solves without starting over.
+ * A solution with a nonbasic variable at such an artificial bound means the problem
+ * is unbounded.
+ * When degenerate pivots pile up (e.g. with a zero objective, where every ratio ties),
+ * the costs of the nonbasic variables are slightly perturbed until the next optimal basis,
+ * and perturbed again whenever degenerate pivots pile up anew (Bland's rule, which accepts
+ * tiny pivots, cycles under rounding errors).
+ * If the pivot limit is reached anyway, the solve gives up (NOT_CONVERGED) and the next one
+ * starts over from the slack basis.
+ * The tableau is updated in place by each pivot: it is recomputed from the original rows
+ * whenever the rounding errors it accumulates show in the row activities, and before
+ * concluding that the problem is infeasible.
+ */
+class BoundedDualSimplex {
+
+	enum Status{OPTIMAL, INFEASIBLE, UNBOUNDED, NOT_CONVERGED}
+
+	private static final double BIG = 1e7;
+	private static final double FEASIBILITY_TOLERANCE = 1e-7;
+	private static final double OPTIMALITY_TOLERANCE = 1e-9;
+	private static final double PIVOT_TOLERANCE = 1e-9;
+	private static final int REFRESH_PERIOD = 100;
+	private static final int MAX_DEGENERATE_PIVOTS = 50;
+	private static final double PERTURBATION = 1e-7;
+	private static final double RESIDUAL_TOLERANCE = 1e-6;
+	private static final long MAX_TABLEAU_SIZE = 50_000_000L;
+
+	private final int nbColumns;
+	private int nbRows;
+	private int nbVariables;
+
+	//per variable (columns first, then slacks)
+	private double[] lower;
+	private double[] upper;
+	private boolean[] isLowerArtificial;
+	private boolean[] isUpperArtificial;
+	private double[] cost;
+	private double[] value;
+	/**
+	 * row of the variable if basic, -(slot + 1) if nonbasic
+	 */
+	private int[] position;
+	private boolean[] isAtUpper;
+
+	/**
+	 * the original rows, for refactorization
+	 */
+	private final List<int[]> columnsPerRow = new ArrayList<>();
+	private final List<double[]> coefficientsPerRow = new ArrayList<>();
+
+	private double[][] tableau;
+	private int[] basicPerRow;
+	private final int[] nonbasicPerSlot;
+	private final double[] reducedCostPerSlot;
+
+	private int nbPivotsSinceRefresh = 0;
+	private int nbPivotsSinceFactorization = 0;
+	/**
+	 * the costs to restore once the perturbed problem is solved, null if not perturbed
+	 */
+	private double[] unperturbedCost = null;
+	private final Random random = new Random(0);
+
+	BoundedDualSimplex(LinearModel model) {
+		nbColumns = model.getNbColumns();
+		nbRows = model.getNbRows();
+		nbVariables = nbColumns + nbRows;
+		if((long)nbRows * nbColumns > MAX_TABLEAU_SIZE)
+			throw new Error("Model too large for a dense tableau: "+model);
+
+		lower = new double[nbVariables];
+		upper = new double[nbVariables];
+		isLowerArtificial = new boolean[nbVariables];
+		isUpperArtificial = new boolean[nbVariables];
+		cost = new double[nbVariables];
+		value = new double[nbVariables];
+		position = new int[nbVariables];
+		isAtUpper = new boolean[nbVariables];
+		for(int j = 0 ; j < nbColumns; j++)
+		{
+			setWorkingBounds(j, model.getColumnLowerBound(j), model.getColumnUpperBound(j));
+			cost[j] = model.getObjective(j);
+		}
+		for(int r = 0 ; r < nbRows; r++)
+			setWorkingBounds(nbColumns + r, model.getRowLowerBound(r), model.getRowUpperBound(r));
+
+		tableau = new double[nbRows][nbColumns];
+		basicPerRow = new int[nbRows];
+		nonbasicPerSlot = new int[nbColumns];
+		reducedCostPerSlot = new double[nbColumns];
+		for(int r = 0 ; r < nbRows; r++)
+		{
+			basicPerRow[r] = nbColumns + r;
+			position[nbColumns + r] = r;
+			int[] columns = new int[model.getRowEnd(r) - model.getRowStart(r)];
+			double[] coefficients = new double[columns.length];
+			for(int nz = model.getRowStart(r); nz < model.getRowEnd(r); nz++)
+			{
+				columns[nz - model.getRowStart(r)] = model.getColumnOf(nz);
+				coefficients[nz - model.getRowStart(r)] = model.getCoefficientOf(nz);
+				tableau[r][model.getColumnOf(nz)] -= model.getCoefficientOf(nz);
+			}
+			columnsPerRow.add(columns);
+			coefficientsPerRow.add(coefficients);
+		}
+		for(int j = 0 ; j < nbColumns; j++)
+		{
+			nonbasicPerSlot[j] = j;
+			position[j] = -(j + 1);
+		}
+		refreshReducedCosts();
+		placeNonbasicVariables();
+		refreshBasicValues();
+	}
+
+	private void setWorkingBounds(int variable, double lowerBound, double upperBound)
+	{
+		isLowerArtificial[variable] = lowerBound == Double.NEGATIVE_INFINITY;
+		isUpperArtificial[variable] = upperBound == Double.POSITIVE_INFINITY;
+		lower[variable] = isLowerArtificial[variable] ? -BIG : lowerBound;
+		upper[variable] = isUpperArtificial[variable] ? BIG : upperBound;
+	}
+
+	/**
+	 * Changes the bounds of a column, the current basis being kept.
+	 * A nonbasic column goes to the bound matching its reduced cost, which may have
+	 * any sign if the column was fixed so far (fixed columns never enter the basis).
+	 */
+	void setColumnBounds(int column, double lowerBound, double upperBound)
+	{
+		setWorkingBounds(column, lowerBound, upperBound);
+		if(position[column] >= 0) return;
+		double d = reducedCostPerSlot[-position[column] - 1];
+		if(d > OPTIMALITY_TOLERANCE) isAtUpper[column] = false;
+		else if(d < -OPTIMALITY_TOLERANCE) isAtUpper[column] = true;
+		moveNonbasic(column, isAtUpper[column] ? upper[column] : lower[column]);
+	}
+
+	double getColumnLowerBound(int column)
+	{
+		return isLowerArtificial[column] ? Double.NEGATIVE_INFINITY : lower[column];
+	}
+
+	double getColumnUpperBound(int column)
+	{
+		return isUpperArtificial[column] ? Double.POSITIVE_INFINITY : upper[column];
+	}
+
+	/**
+	 * Replaces the costs of the columns; nonbasic variables are moved to the bound
+	 * matching their new reduced cost
+	 */
+	void setCosts(double[] costPerColumn)
+	{
+		System.arraycopy(costPerColumn, 0, cost, 0, nbColumns);
+		refreshReducedCosts();
+		placeNonbasicVariables();
+		refreshBasicValues();
+	}
+
+	/**
+	 * Adds lowerBound <= sum coefficients[i] x columns[i] <= upperBound,
+	 * its slack being basic
+	 */
+	void addRow(int[] columns, double[] coefficients, double lowerBound, double upperBound)
+	{
+		columnsPerRow.add(columns.clone());
+		coefficientsPerRow.add(coefficients.clone());
+		double[] row = new double[nbColumns];
+		for(int i = 0 ; i < columns.length; i++)
+		{
+			int p = position[columns[i]];
+			if(p < 0)
+				row[-p - 1] -= coefficients[i];
+			else
+				for(int k = 0 ; k < nbColumns; k++)
+					row[k] += coefficients[i] * tableau[p][k];
+		}
+
+		int slack = nbVariables++;
+		lower = Arrays.copyOf(lower, nbVariables);
+		upper = Arrays.copyOf(upper, nbVariables);
+		isLowerArtificial = Arrays.copyOf(isLowerArtificial, nbVariables);
+		isUpperArtificial = Arrays.copyOf(isUpperArtificial, nbVariables);
+		cost = Arrays.copyOf(cost, nbVariables);
+		value = Arrays.copyOf(value, nbVariables);
+		position = Arrays.copyOf(position, nbVariables);
+		isAtUpper = Arrays.copyOf(isAtUpper, nbVariables);
+		setWorkingBounds(slack, lowerBound, upperBound);
+
+		tableau = Arrays.copyOf(tableau, nbRows + 1);
+		tableau[nbRows] = row;
+		basicPerRow = Arrays.copyOf(basicPerRow, nbRows + 1);
+		basicPerRow[nbRows] = slack;
+		position[slack] = nbRows;
+		nbRows++;
+		refreshBasicValues();
+	}
+
+	/**
+	 * Dual simplex iterations from the current basis
+	 */
+	Status solve()
+	{
+		long maxNbPivots = 50L * (nbRows + nbColumns) + 10_000;
+		int nbDegeneratePivots = 0;
+		for(long pivot = 0 ; pivot < maxNbPivots; pivot++)
+		{
+			if(nbDegeneratePivots > MAX_DEGENERATE_PIVOTS)
+			{
+				perturbCosts();
+				nbDegeneratePivots = 0;
+			}
+			int row = chooseLeavingRow();
+			if(row < 0 && unperturbedCost != null)
+			{
+				//optimal for the perturbed costs, usually a few pivots away from the true optimum
+				restoreCosts();
+				nbDegeneratePivots = 0;
+				row = chooseLeavingRow();
+			}
+			if(row < 0)
+				return isUnbounded() ? Status.UNBOUNDED : Status.OPTIMAL;
+
+			int leaving = basicPerRow[row];
+			boolean toLower = value[leaving] < lower[leaving];
+			int slot = chooseEnteringSlot(row, toLower);
+			if(slot < 0 && nbPivotsSinceFactorization > 0)
+			{
+				//the row may only look infeasible because of rounding errors
+				refactorize();
+				refreshReducedCosts();
+				placeNonbasicVariables();
+				refreshBasicValues();
+				continue;
+			}
+			if(slot < 0)
+			{
+				if(unperturbedCost != null) restoreCosts();
+				return Status.INFEASIBLE;
+			}
+
+			double ratio = Math.abs(reducedCostPerSlot[slot] / tableau[row][slot]);
+			nbDegeneratePivots = ratio < OPTIMALITY_TOLERANCE ? nbDegeneratePivots + 1 : 0;
+			pivot(row, slot, toLower ? lower[leaving] : upper[leaving], toLower);
+		}
+		if(unperturbedCost != null) restoreCosts();
+		resetToSlackBasis();
+		return Status.NOT_CONVERGED;
+	}
+	
+	/**
+	 * Moves the cost of each nonbasic variable away from zero reduced cost, 
+	 * in the direction that keeps the basis dual feasible 
+	 * (on top of the previous perturbations, if the costs are not restored yet)
+	 */
+	private void perturbCosts()
+	{
+		if(unperturbedCost == null)
+			unperturbedCost = cost.clone();
+		for(int k = 0 ; k < nbColumns; k++)
+		{
+			int j = nonbasicPerSlot[k];
+			if(lower[j] == upper[j]) continue;
+			double delta = PERTURBATION * (1 + random.nextDouble()) * (1 + Math.abs(cost[j]));
+			if(isAtUpper[j]) delta = -delta;
+			cost[j] += delta;
+			reducedCostPerSlot[k] += delta;
+		}
+	}
+	
+	private void restoreCosts()
+	{
+		cost = unperturbedCost;
+		unperturbedCost = null;
+		refreshReducedCosts();
+		placeNonbasicVariables();
+		refreshBasicValues();
+	}
+
+	/**
+	 * @return the row of the most infeasible basic variable
+	 */
+	private int chooseLeavingRow()
+	{
+		int res = -1;
+		double worst = 0;
+		for(int r = 0 ; r < nbRows; r++)
+		{
+			int b = basicPerRow[r];
+			double violation = Math.max(lower[b] - value[b], value[b] - upper[b]);
+			if(violation <= FEASIBILITY_TOLERANCE * (1 + Math.abs(value[b]))) continue;
+			if(violation > worst)
+			{
+				worst = violation;
+				res = r;
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Ratio test: among the nonbasic variables that can move the leaving one towards
+	 * its violated bound, the one whose reduced cost reaches zero first,
+	 * ties being broken by the largest pivot.
+	 */
+	private int chooseEnteringSlot(int row, boolean toLower)
+	{
+		double[] line = tableau[row];
+		int res = -1;
+		double bestRatio = Double.POSITIVE_INFINITY;
+		for(int k = 0 ; k < nbColumns; k++)
+		{
+			double alpha = line[k];
+			if(Math.abs(alpha) <= PIVOT_TOLERANCE) continue;
+			int j = nonbasicPerSlot[k];
+			if(lower[j] == upper[j]) continue;
+			//x_leaving moves by -alpha per unit of x_j
+			boolean isIncreasing = toLower ? alpha < 0 : alpha > 0;
+			if(isIncreasing ? isAtUpper[j] : !isAtUpper[j]) continue;
+
+			double ratio = Math.abs(reducedCostPerSlot[k]) / Math.abs(alpha);
+			if(res < 0 || ratio < bestRatio - OPTIMALITY_TOLERANCE)
+			{
+				res = k;
+				bestRatio = ratio;
+			}
+			else if(ratio <= bestRatio + OPTIMALITY_TOLERANCE && Math.abs(alpha) > Math.abs(line[res]))
+			{
+				res = k;
+				bestRatio = Math.min(ratio, bestRatio);
+			}
+		}
+		return res;
+	}
+
+	private void pivot(int row, int slot, double leavingValue, boolean isLeavingAtLower)
+	{
+		int leaving = basicPerRow[row];
+		int entering = nonbasicPerSlot[slot];
+		double[] pivotLine = tableau[row];
+		double alpha = pivotLine[slot];
+
+		//primal update
+		double delta = (leavingValue - value[leaving]) / -alpha;
+		value[entering] += delta;
+		for(int r = 0 ; r < nbRows; r++)
+			value[basicPerRow[r]] -= tableau[r][slot] * delta;
+		value[leaving] = leavingValue;
+
+		//tableau update
+		for(int k = 0 ; k < nbColumns; k++)
+			pivotLine[k] /= alpha;
+		pivotLine[slot] = 1 / alpha;
+		for(int r = 0 ; r < nbRows; r++)
+		{
+			if(r == row) continue;
+			double[] line = tableau[r];
+			double factor = line[slot];
+			if(factor == 0) continue;
+			for(int k = 0 ; k < nbColumns; k++)
+				line[k] -= factor * pivotLine[k];
+			line[slot] = -factor / alpha;
+		}
+
+		//reduced costs update
+		double d = reducedCostPerSlot[slot];
+		for(int k = 0 ; k < nbColumns; k++)
+			reducedCostPerSlot[k] -= d * pivotLine[k];
+		reducedCostPerSlot[slot] = -d / alpha;
+
+		basicPerRow[row] = entering;
+		position[entering] = row;
+		nonbasicPerSlot[slot] = leaving;
+		position[leaving] = -(slot + 1);
+		isAtUpper[leaving] = !isLeavingAtLower;
+
+		nbPivotsSinceFactorization++;
+		if(++nbPivotsSinceRefresh >= REFRESH_PERIOD)
+		{
+			refreshBasicValues();
+			if(getResidual() > RESIDUAL_TOLERANCE)
+				refactorize();
+			refreshReducedCosts();
+		}
+	}
+	
+	/**
+	 * @return the largest gap between the activity of a row and the value of its slack
+	 */
+	private double getResidual()
+	{
+		double res = 0;
+		for(int r = 0 ; r < nbRows; r++)
+		{
+			int[] columns = columnsPerRow.get(r);
+			double[] coefficients = coefficientsPerRow.get(r);
+			double activity = 0;
+			for(int i = 0 ; i < columns.length; i++)
+				activity += coefficients[i] * value[columns[i]];
+			res = Math.max(res, Math.abs(activity - value[nbColumns + r]) / (1 + Math.abs(activity)));
+		}
+		return res;
+	}
+	
+	/**
+	 * Recomputes the tableau of the current basis from the original rows.
+	 * The basic columns are given by the rows whose slack is nonbasic (as many as them): 
+	 * solving these rows gives the lines of the basic columns, 
+	 * the lines of the basic slacks follow by substitution in their rows.
+	 */
+	private void refactorize()
+	{
+		nbPivotsSinceFactorization = 0;
+		int[] basicColumns = Arrays.stream(basicPerRow).filter(x->x < nbColumns).toArray();
+		int[] rowsOfBasicColumns = new int[basicColumns.length];
+		int size = 0;
+		for(int k = 0 ; k < nbColumns; k++)
+			if(nonbasicPerSlot[k] >= nbColumns)
+				rowsOfBasicColumns[size++] = nonbasicPerSlot[k] - nbColumns;
+		
+		//[matrix | rhs]: the basic columns and the nonbasic variables in these rows
+		double[][] matrix = new double[size][size];
+		double[][] rhs = new double[size][nbColumns];
+		int[] indexPerBasicColumn = new int[nbColumns];
+		Arrays.fill(indexPerBasicColumn, -1);
+		for(int i = 0 ; i < size; i++)
+			indexPerBasicColumn[basicColumns[i]] = i;
+		for(int i = 0 ; i < size; i++)
+		{
+			int r = rowsOfBasicColumns[i];
+			int[] columns = columnsPerRow.get(r);
+			double[] coefficients = coefficientsPerRow.get(r);
+			for(int nz = 0 ; nz < columns.length; nz++)
+			{
+				int p = position[columns[nz]];
+				if(p >= 0) matrix[i][indexPerBasicColumn[columns[nz]]] += coefficients[nz];
+				else rhs[i][-p - 1] += coefficients[nz];
+			}
+			rhs[i][-position[nbColumns + r] - 1] -= 1;
+		}
+		
+		//Gaussian elimination with partial pivoting
+		for(int c = 0 ; c < size; c++)
+		{
+			int pivotRow = c;
+			for(int i = c + 1 ; i < size; i++)
+				if(Math.abs(matrix[i][c]) > Math.abs(matrix[pivotRow][c])) pivotRow = i;
+			if(Math.abs(matrix[pivotRow][c]) <= PIVOT_TOLERANCE)
+			{
+				//the basis drifted too far to be recovered: restarting from the slacks
+				resetToSlackBasis();
+				return;
+			}
+			double[] swap = matrix[c]; matrix[c] = matrix[pivotRow]; matrix[pivotRow] = swap;
+			swap = rhs[c]; rhs[c] = rhs[pivotRow]; rhs[pivotRow] = swap;
+			for(int i = 0 ; i < size; i++)
+			{
+				if(i == c || matrix[i][c] == 0) continue;
+				double factor = matrix[i][c] / matrix[c][c];
+				for(int j = c ; j < size; j++)
+					matrix[i][j] -= factor * matrix[c][j];
+				for(int k = 0 ; k < nbColumns; k++)
+					rhs[i][k] -= factor * rhs[c][k];
+			}
+		}
+		for(int c = 0 ; c < size; c++)
+		{
+			double[] line = tableau[position[basicColumns[c]]];
+			for(int k = 0 ; k < nbColumns; k++)
+				line[k] = rhs[c][k] / matrix[c][c];
+		}
+		
+		//slack = activity of its row, with x_B = - tableau x_N for the basic columns
+		for(int r = 0 ; r < nbRows; r++)
+		{
+			if(position[nbColumns + r] < 0) continue;
+			double[] line = tableau[position[nbColumns + r]];
+			Arrays.fill(line, 0);
+			int[] columns = columnsPerRow.get(r);
+			double[] coefficients = coefficientsPerRow.get(r);
+			for(int nz = 0 ; nz < columns.length; nz++)
+			{
+				int p = position[columns[nz]];
+				if(p < 0)
+					line[-p - 1] -= coefficients[nz];
+				else
+				{
+					double[] basicLine = tableau[p];
+					for(int k = 0 ; k < nbColumns; k++)
+						line[k] += coefficients[nz] * basicLine[k];
+				}
+			}
+		}
+		refreshBasicValues();
+	}
+
+	/**
+	 * Back to the first basis, each slack being basic: always dual feasible,
+	 * the nonbasic columns being placed at the bound matching their cost
+	 */
+	private void resetToSlackBasis()
+	{
+		for(int r = 0 ; r < nbRows; r++)
+		{
+			double[] line = tableau[r];
+			Arrays.fill(line, 0);
+			int[] columns = columnsPerRow.get(r);
+			double[] coefficients = coefficientsPerRow.get(r);
+			for(int nz = 0 ; nz < columns.length; nz++)
+				line[columns[nz]] -= coefficients[nz];
+			basicPerRow[r] = nbColumns + r;
+			position[nbColumns + r] = r;
+		}
+		for(int j = 0 ; j < nbColumns; j++)
+		{
+			nonbasicPerSlot[j] = j;
+			position[j] = -(j + 1);
+		}
+		refreshReducedCosts();
+		placeNonbasicVariables();
+		refreshBasicValues();
+	}
+
+	private void moveNonbasic(int variable, double newValue)
+	{
+		int slot = -position[variable] - 1;
+		double delta = newValue - value[variable];
+		if(delta == 0) return;
+		value[variable] = newValue;
+		for(int r = 0 ; r < nbRows; r++)
+			value[basicPerRow[r]] -= tableau[r][slot] * delta;
+	}
+
+	/**
+	 * Puts each nonbasic variable at the bound matching the sign of its reduced cost
+	 */
+	private void placeNonbasicVariables()
+	{
+		for(int k = 0 ; k < nbColumns; k++)
+		{
+			int j = nonbasicPerSlot[k];
+			if(reducedCostPerSlot[k] > OPTIMALITY_TOLERANCE) isAtUpper[j] = false;
+			else if(reducedCostPerSlot[k] < -OPTIMALITY_TOLERANCE) isAtUpper[j] = true;
+			else if(isAtUpper[j] ? isUpperArtificial[j] : isLowerArtificial[j])
+				isAtUpper[j] = isLowerArtificial[j] && !isUpperArtificial[j];
+			value[j] = isAtUpper[j] ? upper[j] : lower[j];
+		}
+	}
+
+	private void refreshBasicValues()
+	{
+		nbPivotsSinceRefresh = 0;
+		for(int r = 0 ; r < nbRows; r++)
+		{
+			double[] line = tableau[r];
+			double v = 0;
+			for(int k = 0 ; k < nbColumns; k++)
+				v -= line[k] * value[nonbasicPerSlot[k]];
+			value[basicPerRow[r]] = v;
+		}
+	}
+
+	private void refreshReducedCosts()
+	{
+		for(int k = 0 ; k < nbColumns; k++)
+			reducedCostPerSlot[k] = cost[nonbasicPerSlot[k]];
+		for(int r = 0 ; r < nbRows; r++)
+		{
+			double c = cost[basicPerRow[r]];
+			if(c == 0) continue;
+			double[] line = tableau[r];
+			for(int k = 0 ; k < nbColumns; k++)
+				reducedCostPerSlot[k] -= c * line[k];
+		}
+	}
+
+	private boolean isUnbounded()
+	{
+		for(int k = 0 ; k < nbColumns; k++)
+		{
+			int j = nonbasicPerSlot[k];
+			if(Math.abs(reducedCostPerSlot[k]) > OPTIMALITY_TOLERANCE
+					&& (isAtUpper[j] ? isUpperArtificial[j] : isLowerArtificial[j]))
+				return true;
+		}
+		return false;
+	}
+
+	int getNbRows()
+	{
+		return nbRows;
+	}
+
+	double getValue(int column)
+	{
+		return value[column];
+	}
+
+	double getObjectiveValue()
+	{
+		double res = 0;
+		for(int j = 0 ; j < nbColumns; j++)
+			res += cost[j] * value[j];
+		return res;
+	}
+
+}
@@ -0,0 +1,29 @@
+package solver.branchandbound;
+
+import solver.LinearModel;
+import solver.SolverBackend;
+import solver.SolverSession;
+
+/**
+ * Pure Java backend, always available but only meant for small instances
+ * (the relaxations are solved on a dense tableau)
+ */
+public class BranchAndBoundBackend implements SolverBackend {
+
+	public String getName() {
+		return "BRANCH_AND_BOUND";
+	}
+
+	public int getPriority() {
+		return 0;
+	}
+
+	public boolean isAvailable() {
+		return true;
+	}
+
+	public SolverSession open(LinearModel model) {
+		return BranchAndBoundSession.newInstance(model);
+	}
+
+}
@@ -0,0 +1,318 @@
+package solver.branchandbound;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import solver.LinearModel;
+import solver.SolveStatus;
+import solver.SolverSession;
+
+/**
+ * Depth-first branch and bound over the LP relaxation solved by BoundedDualSimplex.
+ * Each node only records the bound it changes and its parent, the relaxation
+ * being warm-started from the basis left by the previously explored node.
+ * Branching on the most fractional integer column, the child closest to the
+ * relaxation being explored first.
+ * A start given by setStart is the first incumbent, if feasible.
+ * The search stops once the incumbent reaches the bound given by setObjectiveLowerBound.
+ * The nodes whose relaxation does not converge are given up, as are the nodes left once
+ * the time limit is reached: the incumbent, if any, is then not proven optimal (FEASIBLE),
+ * and without incumbent, the model is not proven infeasible (UNKNOWN).
+ */
+class BranchAndBoundSession implements SolverSession {
+
+	private static final double INTEGRALITY_TOLERANCE = 1e-6;
+	private static final double PRUNING_TOLERANCE = 1e-6;
+	private static final double FEASIBILITY_TOLERANCE = 1e-6;
+
+	private final LinearModel model;
+	private final int nbModelRows;
+	private final List<int[]> columnsPerAddedRow = new ArrayList<>();
+	private final List<double[]> coefficientsPerAddedRow = new ArrayList<>();
+	private final List<double[]> boundsPerAddedRow = new ArrayList<>();
+	private final BoundedDualSimplex relaxation;
+	private final boolean[] isInteger;
+	private final int nbColumns;
+	private final double[] rootLowerBound;
+	private final double[] rootUpperBound;
+	private final double[] objective;
+	private double objectiveConstant;
+	private double objectiveLowerBound = Double.NEGATIVE_INFINITY;
+
+	private double[] start = null;
+	private boolean isVerbose = true;
+	private double timeLimit = Double.POSITIVE_INFINITY;
+	private double[] incumbent = null;
+	private double incumbentValue = Double.POSITIVE_INFINITY;
+
+	private static class Node {
+		private final Node parent;
+		private final int column;
+		private final double lowerBound;
+		private final double upperBound;
+		private final double parentRelaxationValue;
+
+		private Node(Node parent, int column, double lowerBound, double upperBound,
+				double parentRelaxationValue) {
+			this.parent = parent;
+			this.column = column;
+			this.lowerBound = lowerBound;
+			this.upperBound = upperBound;
+			this.parentRelaxationValue = parentRelaxationValue;
+		}
+	}
+
+	private BranchAndBoundSession(LinearModel model) {
+		this.model = model;
+		nbModelRows = model.getNbRows();
+		relaxation = new BoundedDualSimplex(model);
+		nbColumns = model.getNbColumns();
+		isInteger = new boolean[nbColumns];
+		rootLowerBound = new double[nbColumns];
+		rootUpperBound = new double[nbColumns];
+		objective = new double[nbColumns];
+		for(int column = 0 ; column < nbColumns; column++)
+		{
+			isInteger[column] = model.isInteger(column);
+			rootLowerBound[column] = model.getColumnLowerBound(column);
+			rootUpperBound[column] = model.getColumnUpperBound(column);
+			objective[column] = model.getObjective(column);
+		}
+		objectiveConstant = model.getObjectiveConstant();
+	}
+
+	static BranchAndBoundSession newInstance(LinearModel model)
+	{
+		return new BranchAndBoundSession(model);
+	}
+
+	public SolveStatus solve() {
+		incumbent = null;
+		incumbentValue = Double.POSITIVE_INFINITY;
+		if(start != null && isFeasible(start))
+		{
+			incumbent = start.clone();
+			incumbentValue = 0;
+			for(int column = 0 ; column < nbColumns; column++)
+				incumbentValue += objective[column] * start[column];
+		}
+		boolean isObjectiveIntegral = isObjectiveIntegral();
+		double deadline = System.currentTimeMillis() + 1000 * timeLimit;
+
+		Deque<Node> toExplore = new ArrayDeque<>();
+		toExplore.push(new Node(null, -1, 0, 0, Double.NEGATIVE_INFINITY));
+		List<Integer> changedColumns = new ArrayList<>();
+		long nbNodes = 0;
+		long nbNodesGivenUp = 0;
+		while(!toExplore.isEmpty() && !isLowerBoundReached())
+		{
+			if(System.currentTimeMillis() >= deadline)
+			{
+				nbNodesGivenUp += toExplore.size();
+				toExplore.clear();
+				break;
+			}
+			Node node = toExplore.pop();
+			if(isPruned(node.parentRelaxationValue, isObjectiveIntegral)) continue;
+			nbNodes++;
+			if(nbNodes % 1000 == 0 && isVerbose)
+				System.out.println("Branch and bound: "+nbNodes+" nodes explored, "+toExplore.size()
+				+" left, best solution "+(incumbent == null ? "none" : getObjectiveValue()));
+
+			for(int column: changedColumns)
+				relaxation.setColumnBounds(column, rootLowerBound[column], rootUpperBound[column]);
+			changedColumns.clear();
+			applyBoundsOf(node, changedColumns);
+
+			BoundedDualSimplex.Status status = relaxation.solve();
+			if(status == BoundedDualSimplex.Status.INFEASIBLE) continue;
+			if(status == BoundedDualSimplex.Status.NOT_CONVERGED)
+			{
+				nbNodesGivenUp++;
+				continue;
+			}
+			if(status == BoundedDualSimplex.Status.UNBOUNDED)
+				throw new Error("Unbounded relaxation, all the columns of an allocation model are bounded");
+
+			double value = relaxation.getObjectiveValue();
+			if(isPruned(value, isObjectiveIntegral)) continue;
+
+			int branchingColumn = -1;
+			double mostFractional = INTEGRALITY_TOLERANCE;
+			for(int column = 0 ; column < nbColumns; column++)
+			{
+				if(!isInteger[column]) continue;
+				double x = relaxation.getValue(column);
+				double fractionality = Math.min(x - Math.floor(x), Math.ceil(x) - x);
+				if(fractionality > mostFractional)
+				{
+					mostFractional = fractionality;
+					branchingColumn = column;
+				}
+			}
+
+			if(branchingColumn < 0)
+			{
+				incumbentValue = value;
+				incumbent = new double[nbColumns];
+				for(int column = 0 ; column < nbColumns; column++)
+					incumbent[column] = isInteger[column] ?
+							Math.rint(relaxation.getValue(column)) : relaxation.getValue(column);
+				continue;
+			}
+
+			double x = relaxation.getValue(branchingColumn);
+			double lower = relaxation.getColumnLowerBound(branchingColumn);
+			double upper = relaxation.getColumnUpperBound(branchingColumn);
+			Node down = new Node(node, branchingColumn, lower, Math.floor(x), value);
+			Node up = new Node(node, branchingColumn, Math.ceil(x), upper, value);
+			//the last pushed is explored first
+			if(x - Math.floor(x) < 0.5)
+			{
+				toExplore.push(up);
+				toExplore.push(down);
+			}
+			else
+			{
+				toExplore.push(down);
+				toExplore.push(up);
+			}
+		}
+		for(int column: changedColumns)
+			relaxation.setColumnBounds(column, rootLowerBound[column], rootUpperBound[column]);
+
+		if(isVerbose)
+			System.out.println("Branch and bound: "+nbNodes+" nodes explored"
+					+(incumbent == null ? ", no solution" : ", objective "+getObjectiveValue())
+					+(isLowerBoundReached() ? " (lower bound reached)" : "")
+					+(nbNodesGivenUp > 0 ? ", "+nbNodesGivenUp
+							+" nodes given up as their relaxation did not converge or the time limit "
+							+ "was reached (not proven "
+							+(incumbent == null ? "infeasible)" : "optimal)") : ""));
+		if(nbNodesGivenUp > 0 && !isLowerBoundReached())
+			return incumbent == null ? SolveStatus.UNKNOWN : SolveStatus.FEASIBLE;
+		return incumbent == null ? SolveStatus.INFEASIBLE : SolveStatus.OPTIMAL;
+	}
+
+	/**
+	 * Sets the bounds of the path from the root to node, the deepest bound on a column
+	 * being the tightest
+	 */
+	private void applyBoundsOf(Node node, List<Integer> changedColumns)
+	{
+		for(Node n = node; n.parent != null; n = n.parent)
+		{
+			if(changedColumns.contains(n.column)) continue;
+			changedColumns.add(n.column);
+			relaxation.setColumnBounds(n.column, n.lowerBound, n.upperBound);
+		}
+	}
+
+	private boolean isFeasible(double[] x)
+	{
+		for(int column = 0 ; column < nbColumns; column++)
+			if(x[column] < rootLowerBound[column] - FEASIBILITY_TOLERANCE
+					|| x[column] > rootUpperBound[column] + FEASIBILITY_TOLERANCE
+					|| (isInteger[column] && Math.abs(x[column] - Math.rint(x[column])) > FEASIBILITY_TOLERANCE))
+				return false;
+		for(int row = 0 ; row < nbModelRows; row++)
+		{
+			double value = 0;
+			for(int nz = model.getRowStart(row); nz < model.getRowEnd(row); nz++)
+				value += model.getCoefficientOf(nz) * x[model.getColumnOf(nz)];
+			if(!isWithin(value, model.getRowLowerBound(row), model.getRowUpperBound(row)))
+				return false;
+		}
+		for(int row = 0 ; row < columnsPerAddedRow.size(); row++)
+		{
+			double value = 0;
+			for(int i = 0 ; i < columnsPerAddedRow.get(row).length; i++)
+				value += coefficientsPerAddedRow.get(row)[i] * x[columnsPerAddedRow.get(row)[i]];
+			if(!isWithin(value, boundsPerAddedRow.get(row)[0], boundsPerAddedRow.get(row)[1]))
+				return false;
+		}
+		return true;
+	}
+
+	private static boolean isWithin(double value, double lowerBound, double upperBound)
+	{
+		return value >= lowerBound - FEASIBILITY_TOLERANCE && value <= upperBound + FEASIBILITY_TOLERANCE;
+	}
+
+	private boolean isPruned(double relaxationValue, boolean isObjectiveIntegral)
+	{
+		if(incumbent == null) return false;
+		double tolerance = PRUNING_TOLERANCE * (1 + Math.abs(incumbentValue));
+		if(isObjectiveIntegral)
+			return relaxationValue > incumbentValue - 1 + tolerance;
+		return relaxationValue > incumbentValue - tolerance;
+	}
+
+	private boolean isLowerBoundReached()
+	{
+		return incumbent != null && getObjectiveValue() <= objectiveLowerBound 
+				+ PRUNING_TOLERANCE * (1 + Math.abs(objectiveLowerBound));
+	}
+
+	/**
+	 * @return true if the objective can only take integer values, hence nodes can be pruned
+	 * as soon as they cannot improve the incumbent by one
+	 */
+	private boolean isObjectiveIntegral()
+	{
+		for(int column = 0 ; column < nbColumns; column++)
+			if(objective[column] != 0 && (!isInteger[column] || objective[column] != Math.rint(objective[column])))
+				return false;
+		return true;
+	}
+
+	public double[] getValues() {
+		return incumbent.clone();
+	}
+
+	public double getObjectiveValue() {
+		return incumbentValue + objectiveConstant;
+	}
+
+	public void setObjective(double[] coefficientPerColumn, double constant) {
+		System.arraycopy(coefficientPerColumn, 0, objective, 0, nbColumns);
+		objectiveConstant = constant;
+		objectiveLowerBound = Double.NEGATIVE_INFINITY;
+		relaxation.setCosts(coefficientPerColumn);
+	}
+
+	public int addRow(int[] columns, double[] coefficients, double lowerBound, double upperBound) {
+		relaxation.addRow(columns, coefficients, lowerBound, upperBound);
+		columnsPerAddedRow.add(columns.clone());
+		coefficientsPerAddedRow.add(coefficients.clone());
+		boundsPerAddedRow.add(new double[]{lowerBound, upperBound});
+		return relaxation.getNbRows() - 1;
+	}
+
+	public void setColumnUpperBound(int column, double upperBound) {
+		rootUpperBound[column] = upperBound;
+		relaxation.setColumnBounds(column, rootLowerBound[column], upperBound);
+	}
+
+	public void setStart(double[] valuePerColumn) {
+		start = valuePerColumn.clone();
+	}
+
+	public void setObjectiveLowerBound(double lowerBound) {
+		objectiveLowerBound = lowerBound;
+	}
+
+	public void setTimeLimit(double seconds) {
+		this.timeLimit = seconds;
+	}
+
+	public void setVerbose(boolean isVerbose) {
+		this.isVerbose = isVerbose;
+	}
+
+	public void close() {
+	}
+
+}
@@ -0,0 +1,42 @@
+package solver.cplex;
+
+import solver.LinearModel;
+import solver.SolverBackend;
+import solver.SolverSession;
+
+/**
+ * Backend relying on CPLEX, available if the cplex module and its native library are found
+ * (e.g. --add-modules cplex -Djava.library.path=.../cplex/bin/x86-64_linux).
+ * The CPLEX classes are only referred to from CplexSession, so that this class
+ * can be loaded without them.
+ */
+public class CplexBackend implements SolverBackend {
+
+	private Boolean isAvailable = null;
+
+	public String getName() {
+		return "CPLEX";
+	}
+
+	public int getPriority() {
+		return 10;
+	}
+
+	public synchronized boolean isAvailable() {
+		if(isAvailable == null)
+		{
+			try {
+				isAvailable = CplexSession.isCplexAvailable();
+			}
+			catch(LinkageError e) {
+				isAvailable = false;
+			}
+		}
+		return isAvailable;
+	}
+
+	public SolverSession open(LinearModel model) {
+		return CplexSession.newInstance(model);
+	}
+
+}
@@ -0,0 +1,213 @@
+package solver.cplex;
+
+import ilog.concert.IloException;
+import ilog.concert.IloLPMatrix;
+import ilog.concert.IloNumVar;
+import ilog.concert.IloNumVarType;
+import ilog.concert.IloObjective;
+import ilog.concert.IloRange;
+import ilog.cplex.IloCplex;
+import solver.LinearModel;
+import solver.SolveStatus;
+import solver.SolverSession;
+
+/**
+ * The bound of setObjectiveLowerBound is a row objective >= bound: CPLEX has no limit for 
+ * stopping a minimization at a given value, but with this row, the gap closes as soon as 
+ * a solution reaches the bound.
+ */
+class CplexSession implements SolverSession {
+
+	private final IloCplex cplex;
+	private final IloNumVar[] vars;
+	private final IloLPMatrix matrix;
+	private final IloObjective objective;
+	private IloRange objectiveLowerBound = null;
+	private boolean isVerbose = true;
+
+	private CplexSession(IloCplex cplex, IloNumVar[] vars, IloLPMatrix matrix, IloObjective objective) {
+		this.cplex = cplex;
+		this.vars = vars;
+		this.matrix = matrix;
+		this.objective = objective;
+	}
+
+	static boolean isCplexAvailable()
+	{
+		try {
+			new IloCplex().end();
+			return true;
+		}
+		catch(IloException e) {
+			return false;
+		}
+	}
+
+	static CplexSession newInstance(LinearModel lp)
+	{
+		try {
+			return load(lp);
+		} catch (IloException e) {
+			throw toError(e);
+		}
+	}
+
+	/**
+	 * Loads lp in cplex in bulk: one array of variables, one matrix, one objective
+	 */
+	private static CplexSession load(LinearModel lp) throws IloException
+	{
+		IloCplex cplex = new IloCplex();
+		cplex.setOut(null);
+		
+		int nbColumns = lp.getNbColumns();
+		double[] lowerBounds = new double[nbColumns];
+		double[] upperBounds = new double[nbColumns];
+		double[] objective = new double[nbColumns];
+		IloNumVarType[] types = new IloNumVarType[nbColumns];
+		for(int column = 0 ; column < nbColumns; column++)
+		{
+			lowerBounds[column] = lp.getColumnLowerBound(column);
+			upperBounds[column] = lp.getColumnUpperBound(column);
+			objective[column] = lp.getObjective(column);
+			types[column] = lp.isInteger(column) ? 
+					(lowerBounds[column] == 0 && upperBounds[column] == 1 ? 
+							IloNumVarType.Bool : IloNumVarType.Int)
+					: IloNumVarType.Float;
+		}
+		IloNumVar[] vars = cplex.numVarArray(nbColumns, lowerBounds, upperBounds, types);
+		
+		int nbRows = lp.getNbRows();
+		double[] rowLowerBounds = new double[nbRows];
+		double[] rowUpperBounds = new double[nbRows];
+		int[][] columnsPerRow = new int[nbRows][];
+		double[][] coefficientsPerRow = new double[nbRows][];
+		for(int row = 0 ; row < nbRows; row++)
+		{
+			rowLowerBounds[row] = lp.getRowLowerBound(row);
+			rowUpperBounds[row] = lp.getRowUpperBound(row);
+			int length = lp.getRowEnd(row) - lp.getRowStart(row);
+			columnsPerRow[row] = new int[length];
+			coefficientsPerRow[row] = new double[length];
+			for(int i = 0 ; i < length; i++)
+			{
+				columnsPerRow[row][i] = lp.getColumnOf(lp.getRowStart(row) + i);
+				coefficientsPerRow[row][i] = lp.getCoefficientOf(lp.getRowStart(row) + i);
+			}
+		}
+		IloLPMatrix matrix = cplex.addLPMatrix();
+		matrix.addCols(vars);
+		matrix.addRows(rowLowerBounds, rowUpperBounds, columnsPerRow, coefficientsPerRow);
+		
+		IloObjective res = cplex.addMinimize(
+				cplex.sum(lp.getObjectiveConstant(), cplex.scalProd(vars, objective)));
+		return new CplexSession(cplex, vars, matrix, res);
+	}
+
+	public SolveStatus solve() {
+		try {
+			cplex.solve();
+			IloCplex.Status status = cplex.getStatus();
+			if(isVerbose)
+				System.out.println("Solution status = " + status);
+			if(status.equals(IloCplex.Status.Optimal)) return SolveStatus.OPTIMAL;
+			if(status.equals(IloCplex.Status.Feasible)) return SolveStatus.FEASIBLE;
+			//allocation models are bounded
+			if(status.equals(IloCplex.Status.Infeasible) 
+					|| status.equals(IloCplex.Status.InfeasibleOrUnbounded))
+				return SolveStatus.INFEASIBLE;
+			return SolveStatus.UNKNOWN;
+		} catch (IloException e) {
+			throw toError(e);
+		}
+	}
+
+	public double[] getValues() {
+		try {
+			return cplex.getValues(vars);
+		} catch (IloException e) {
+			throw toError(e);
+		}
+	}
+
+	public double getObjectiveValue() {
+		try {
+			return cplex.getObjValue();
+		} catch (IloException e) {
+			throw toError(e);
+		}
+	}
+
+	public void setObjective(double[] coefficientPerColumn, double constant) {
+		try {
+			objective.setExpr(cplex.sum(constant, cplex.scalProd(vars, coefficientPerColumn)));
+			if(objectiveLowerBound != null)
+			{
+				cplex.remove(objectiveLowerBound);
+				objectiveLowerBound = null;
+			}
+		} catch (IloException e) {
+			throw toError(e);
+		}
+	}
+
+	public int addRow(int[] columns, double[] coefficients, double lowerBound, double upperBound) {
+		try {
+			return matrix.addRow(lowerBound, upperBound, columns, coefficients);
+		} catch (IloException e) {
+			throw toError(e);
+		}
+	}
+
+	public void setColumnUpperBound(int column, double upperBound) {
+		try {
+			vars[column].setUB(upperBound);
+		} catch (IloException e) {
+			throw toError(e);
+		}
+	}
+
+	public void setStart(double[] valuePerColumn) {
+		try {
+			//a single start, replaced from stage to stage
+			if(cplex.getNMIPStarts() > 0)
+				cplex.changeMIPStart(0, vars, valuePerColumn);
+			else cplex.addMIPStart(vars, valuePerColumn);
+		} catch (IloException e) {
+			throw toError(e);
+		}
+	}
+
+	public void setObjectiveLowerBound(double lowerBound) {
+		try {
+			if(objectiveLowerBound == null)
+				objectiveLowerBound = cplex.addGe(objective.getExpr(), lowerBound);
+			else objectiveLowerBound.setLB(lowerBound);
+		} catch (IloException e) {
+			throw toError(e);
+		}
+	}
+
+	public void setTimeLimit(double seconds) {
+		try {
+			cplex.setParam(IloCplex.DoubleParam.TiLim, seconds);
+		} catch (IloException e) {
+			throw toError(e);
+		}
+	}
+
+	public void setVerbose(boolean isVerbose) {
+		this.isVerbose = isVerbose;
+	}
+
+	public void close() {
+		cplex.end();
+	}
+
+	private static Error toError(IloException e)
+	{
+		System.err.println("Concert exception caught '" + e + "' caught");
+		return new Error(e);
+	}
+
+}
@@ -0,0 +1,115 @@
+package solver;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import input.ProblemInstance;
+
+/**
+ * Regression check of RedundantRows: the weighted solve of Solver, at the worst rank of
+ * the LocalSearch allocation, is run with and without the removal of the redundant rows,
+ * which must give the same objective value and the same RankHistogram.
+ *
+ * The allocation of the FlowRelaxation is not used, so that the backend always solves.
+ *
+ * Without arguments, checks the bundled instances (from the root of the project):
+ * --input/example_pairs, with pairs of users, in instances of 2 users (duplicate rows)
+ * and of 2 to 4 users (dominated rows);
+ * --test.csv, with a group;
+ * --input.csv, with nb_proj.csv and projects_by_tutor.csv, only when CPLEX is available 
+ * (the weighted objective of its 124 users is out of reach of the branch and bound backend).
+ * Otherwise, checks the instance given by the arguments, as those of main.Main.
+ * Throws an AssertionError on the first difference.
+ * 
+ * Lies in the test source folder, in package solver for reaching the package-private 
+ * Solver.minimizeWeightedInsatisfaction, and is not part of the module.
+ */
+class RedundantRowsCheck {
+
+	private static final double TOLERANCE = 1e-6;
+
+	private static final String[][] SMALL_INSTANCES = {
+			{
+				"PREFERENCE_FILE:input/example_pairs/file_of_preferences.txt",
+				"MIN_NB_USER_PER_RESOURCE:2", "MAX_NB_USER_PER_RESOURCE:2",
+				"RESOURCE_DUPLICATE_MODE:FILE_BASED(input/example_pairs/all_projects.csv,0,4)",
+				"RESOURCE_OWNERSHIP_MODE:DISABLED",
+				"PREFERENCE_MEANING:PERSONAL_INSATISFACTION", "OUTPUT_MODE:CONSOLE_PRINT"
+			},
+			{
+				"PREFERENCE_FILE:input/example_pairs/file_of_preferences.txt",
+				"MIN_NB_USER_PER_RESOURCE:2", "MAX_NB_USER_PER_RESOURCE:4",
+				"RESOURCE_DUPLICATE_MODE:FILE_BASED(input/example_pairs/all_projects.csv,0,4)",
+				"RESOURCE_OWNERSHIP_MODE:DISABLED",
+				"PREFERENCE_MEANING:PERSONAL_INSATISFACTION", "OUTPUT_MODE:CONSOLE_PRINT"
+			},
+			{
+				"PREFERENCE_FILE:test.csv",
+				"MIN_NB_USER_PER_RESOURCE:1", "MAX_NB_USER_PER_RESOURCE:5",
+				"RESOURCE_DUPLICATE_MODE:ONE_OF_EACH",
+				"RESOURCE_OWNERSHIP_MODE:DISABLED",
+				"PREFERENCE_MEANING:PERSONAL_INSATISFACTION", "OUTPUT_MODE:CONSOLE_PRINT"
+			}
+	};
+
+	private static final String[] LARGE_INSTANCE = {
+			"PREFERENCE_FILE:input.csv",
+			"MIN_NB_USER_PER_RESOURCE:3", "MAX_NB_USER_PER_RESOURCE:4",
+			"RESOURCE_DUPLICATE_MODE:FILE_BASED(nb_proj.csv,0,1)",
+			"RESOURCE_OWNERSHIP_MODE:FILE_BASED(projects_by_tutor.csv)",
+			"PREFERENCE_MEANING:PERSONAL_INSATISFACTION", "OUTPUT_MODE:CONSOLE_PRINT",
+			"SOLVER_BACKEND:CPLEX"
+	};
+
+	public static void main(String[] args)
+	{
+		if(args.length > 0)
+		{
+			check(args);
+			return;
+		}
+		for(String[] instance: SMALL_INSTANCES)
+			check(instance);
+		if(SolverBackends.getAllBackends().stream()
+				.anyMatch(x->x.getName().equals("CPLEX") && x.isAvailable()))
+			check(LARGE_INSTANCE);
+		else System.out.println("input.csv not checked: CPLEX is not available");
+	}
+
+	private static void check(String[] args)
+	{
+		ProblemInstance input = ProblemInstance.newInstance(args);
+		int maxInsatisfaction = LocalSearch.getAllocation(input)
+				.map(x->SatisfactionMeasure.newInstance(x, input).getWorseAllocationValue())
+				.orElse(InsatisfactionBounds.getMaxRank(input));
+
+		Optional<Map.Entry<Double, Set<UserResourceInstanceAllocation>>> reduced =
+				Solver.minimizeWeightedInsatisfaction(input, maxInsatisfaction, true);
+		Optional<Map.Entry<Double, Set<UserResourceInstanceAllocation>>> full =
+				Solver.minimizeWeightedInsatisfaction(input, maxInsatisfaction, false);
+
+		if(reduced.isPresent() != full.isPresent())
+			throw new AssertionError("An allocation within rank "+maxInsatisfaction+" is found "
+					+(reduced.isPresent() ? "only with" : "only without")+" the redundant rows removed");
+		if(!reduced.isPresent())
+		{
+			System.out.println("No allocation within rank "+maxInsatisfaction+", with or without the redundant rows");
+			return;
+		}
+
+		double objective = reduced.get().getKey();
+		double fullObjective = full.get().getKey();
+		if(Math.abs(objective - fullObjective) > TOLERANCE * (1 + Math.abs(fullObjective)))
+			throw new AssertionError("Objective "+objective+" with the redundant rows removed, "
+					+fullObjective+" without");
+		RankHistogram histogram = RankHistogram.newInstance(reduced.get().getValue(), input);
+		RankHistogram fullHistogram = RankHistogram.newInstance(full.get().getValue(), input);
+		if(!histogram.equals(fullHistogram))
+			throw new AssertionError("Histogram "+histogram+" with the redundant rows removed, "
+					+fullHistogram+" without");
+		System.out.println("Same allocations with and without the redundant rows: objective "
+				+objective+", histogram "+histogram);
+	}
+
+}